@@ -0,0 +1,364 @@
+package communitydetection;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jgrapht.alg.drawing.FRLayoutAlgorithm2D;
+import org.jgrapht.alg.drawing.model.Box2D;
+import org.jgrapht.alg.drawing.model.MapLayoutModel2D;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.algorithm.FastFruchtermanReingold;
+import communitydetection.algorithm.Louvain;
+import communitydetection.graphmanagement.DrawableView;
+import communitydetection.graphmanagement.FastDrawGraph;
+import communitydetection.graphmanagement.TestGraphCreator;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+import communitydetection.graphnodes.SimpleNode;
+
+/**
+ * <p>
+ * A non-interactive benchmark of the project. For every size of the
+ * communities it generates graphs with <code>TestGraphCreator</code>, detects
+ * their communities with <code>Louvain</code>, lays them out with the
+ * Fruchterman-Reingold algorithm of jgrapht and with
+ * <code>FastFruchtermanReingold</code> and renders them, first a few times to
+ * warm the JVM up and then measuring every stage. The results, with the peak
+ * of the heap and the quality of the communities found, are written as JSON
+ * or CSV.
+ * </p>
+ * <p>
+ * Parameters are read from a properties file given with
+ * <code>--config file</code> and from arguments <code>key=value</code>, which
+ * take precedence:
+ * </p>
+ * <ul>
+ * <li><code>communities</code> the number of communities, 10 by default</li>
+ * <li><code>sizes</code> the numbers of nodes of each community, separated by
+ * commas, 50,100,200 by default</li>
+ * <li><code>zIn</code> and <code>zOut</code> the expected number of edges of
+ * every node inside and outside its community, 8 and 2 by default</li>
+ * <li><code>louvainIterations</code> the repetitions of Louvain's algorithm, 1
+ * by default</li>
+ * <li><code>frIterations</code> the final iterations of
+ * <code>FastFruchtermanReingold</code>, 5 by default</li>
+ * <li><code>imageSize</code> the side of the rendered image, 1000 by
+ * default</li>
+ * <li><code>stages</code> the stages to run among generation, louvain, fr,
+ * fastfr and render, all by default</li>
+ * <li><code>warmups</code> and <code>runs</code> the number of runs not
+ * measured and measured, 2 and 5 by default</li>
+ * <li><code>format</code> json or csv, json by default</li>
+ * <li><code>output</code> the file receiving the results, the standard output
+ * by default</li>
+ * </ul>
+ *
+ * @author Filippo Bragato
+ */
+public class Benchmark {
+
+    private static final String[] STAGES = { "generation", "louvain", "fr", "fastfr", "render" };
+
+    private Properties parameters;
+    private List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+    /**
+     * Constructor that reads the parameters.
+     *
+     * @param parameters The parameters, missing ones take the default value
+     */
+    public Benchmark(Properties parameters) {
+        this.parameters = parameters;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                heapPools.add(pool);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Properties parameters = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config") && i + 1 < args.length) {
+                try (Reader reader = new FileReader(args[++i])) {
+                    parameters.load(reader);
+                }
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config")) {
+                i++;
+            } else {
+                int eq = args[i].indexOf('=');
+                if (eq <= 0)
+                    throw new IllegalArgumentException("expected key=value, found " + args[i]);
+                parameters.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        System.setProperty("java.awt.headless", "true");
+        new Benchmark(parameters).run();
+    }
+
+    /**
+     * Runs the benchmark and writes the results.
+     *
+     * @throws IOException If the results cannot be written
+     */
+    public void run() throws IOException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String size : get("sizes", "50,100,200").split(",")) {
+            results.addAll(measure(Integer.parseInt(size.trim())));
+        }
+        String output = get("output", "-");
+        try (PrintWriter out = output.equals("-") ? new PrintWriter(new OutputStreamWriter(System.out))
+                : new PrintWriter(new FileWriter(output))) {
+            if (get("format", "json").equals("csv"))
+                writeCsv(out, results);
+            else
+                writeJson(out, results);
+        }
+    }
+
+    /**
+     * Runs the stages on graphs with communities of the given size.
+     *
+     * @param g The number of nodes of each community
+     * @return A row of results for each stage
+     */
+    private List<Map<String, Object>> measure(int g) {
+        int l = Integer.parseInt(get("communities", "10"));
+        double zIn = Double.parseDouble(get("zIn", "8"));
+        double zOut = Double.parseDouble(get("zOut", "2"));
+        int louvainIterations = Integer.parseInt(get("louvainIterations", "1"));
+        int frIterations = Integer.parseInt(get("frIterations", "5"));
+        int imageSize = Integer.parseInt(get("imageSize", "1000"));
+        int warmups = Integer.parseInt(get("warmups", "2"));
+        int runs = Integer.parseInt(get("runs", "5"));
+        List<String> stages = Arrays.asList(get("stages", String.join(",", STAGES)).split(","));
+
+        Map<String, long[]> times = new LinkedHashMap<>();
+        for (String stage : STAGES) {
+            if (stages.contains(stage))
+                times.put(stage, new long[runs]);
+        }
+        long peak = 0;
+        double modularity = 0;
+        double error = 0;
+        long edges = 0;
+        for (int run = -warmups; run < runs; run++) {
+            resetPeaks();
+            long[] t = new long[STAGES.length];
+
+            long start = System.nanoTime();
+            DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(l, g, zIn, zOut)
+                    .lpartition();
+            t[0] = System.nanoTime() - start;
+            edges = network.edgeSet().size();
+
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> commNet = null;
+            if (stages.contains("louvain")) {
+                start = System.nanoTime();
+                commNet = new Louvain(louvainIterations).apply(network);
+                t[1] = System.nanoTime() - start;
+            }
+            if (stages.contains("fr")) {
+                start = System.nanoTime();
+                new FRLayoutAlgorithm2D<Node, DefaultWeightedEdge>().layout(network,
+                        new MapLayoutModel2D<Node>(new Box2D(1000, 1000)));
+                t[2] = System.nanoTime() - start;
+            }
+            DrawableView view = null;
+            if (stages.contains("fastfr") || stages.contains("render")) {
+                start = System.nanoTime();
+                view = new FastFruchtermanReingold(frIterations).applyView(network);
+                t[3] = System.nanoTime() - start;
+            }
+            if (stages.contains("render")) {
+                start = System.nanoTime();
+                new FastDrawGraph(imageSize, imageSize, 10).draw(view);
+                t[4] = System.nanoTime() - start;
+            }
+
+            if (run < 0)
+                continue;
+            for (int s = 0; s < STAGES.length; s++) {
+                if (times.containsKey(STAGES[s]))
+                    times.get(STAGES[s])[run] = t[s];
+            }
+            peak = Math.max(peak, peakHeap());
+            if (commNet != null) {
+                modularity += modularity(network, commNet) / runs;
+                error += relativeError(commNet, l, g) / runs;
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<String, long[]> stage : times.entrySet()) {
+            long[] t = stage.getValue();
+            Arrays.sort(t);
+            double mean = 0;
+            for (long x : t) {
+                mean += x / 1e6 / t.length;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("stage", stage.getKey());
+            row.put("communitySize", g);
+            row.put("nodes", l * g);
+            row.put("edges", edges);
+            row.put("runs", runs);
+            row.put("meanMs", mean);
+            row.put("minMs", t.length == 0 ? 0 : t[0] / 1e6);
+            row.put("medianMs", t.length == 0 ? 0 : t[t.length / 2] / 1e6);
+            row.put("maxMs", t.length == 0 ? 0 : t[t.length - 1] / 1e6);
+            row.put("peakHeapBytes", peak);
+            row.put("modularity", times.containsKey("louvain") ? modularity : Double.NaN);
+            row.put("relativeError", times.containsKey("louvain") ? error : Double.NaN);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private String get(String key, String defaultValue) {
+        return parameters.getProperty(key, defaultValue).trim();
+    }
+
+    private void resetPeaks() {
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * Sums the peak usage of the heap pools since the last reset; the pools do
+     * not reach their peak at the same time, so it is an upper bound.
+     */
+    private long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Calculates the modularity of a partition, according to the null model of
+     * Newman and Girvan.
+     */
+    private static double modularity(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network,
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> commNet) {
+        IdentityHashMap<Node, Integer> communityOf = new IdentityHashMap<>();
+        int nOfComm = 0;
+        for (Community community : commNet.vertexSet()) {
+            for (Node node : community.getNodes()) {
+                communityOf.put(node, nOfComm);
+            }
+            nOfComm++;
+        }
+        double m = 0;
+        double[] internal = new double[nOfComm];
+        double[] degree = new double[nOfComm];
+        for (DefaultWeightedEdge e : network.edgeSet()) {
+            double w = network.getEdgeWeight(e);
+            int s = communityOf.get(network.getEdgeSource(e));
+            int t = communityOf.get(network.getEdgeTarget(e));
+            m += w;
+            degree[s] += w;
+            degree[t] += w;
+            if (s == t)
+                internal[s] += w;
+        }
+        if (m == 0)
+            return 0;
+        double q = 0;
+        for (int c = 0; c < nOfComm; c++) {
+            q += internal[c] / m - degree[c] * degree[c] / (4 * m * m);
+        }
+        return q;
+    }
+
+    /**
+     * Calculates the fraction of nodes that are not in the community of the
+     * majority of their planted community, as <code>Demo</code> does.
+     */
+    private static double relativeError(DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> commNet, int l,
+            int g) {
+        double fails = 0;
+        Set<Community> communities = commNet.vertexSet();
+        for (Community community : communities) {
+            int[] c = new int[Math.max(l, communities.size())];
+            for (Node node : community.getNodes()) {
+                c[((SimpleNode) node).getId() / g]++;
+            }
+            int max = 0;
+            for (int k = 0; k < c.length; k++) {
+                if (c[k] > max) {
+                    fails += max;
+                    max = c[k];
+                } else {
+                    fails += c[k];
+                }
+            }
+        }
+        return l > 1 ? fails / ((l - 1) * g) : 0;
+    }
+
+    private static void writeCsv(PrintWriter out, List<Map<String, Object>> rows) {
+        if (rows.isEmpty())
+            return;
+        out.println(String.join(",", rows.get(0).keySet()));
+        for (Map<String, Object> row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (Object value : row.values()) {
+                if (line.length() > 0)
+                    line.append(',');
+                line.append(format(value));
+            }
+            out.println(line);
+        }
+    }
+
+    private static void writeJson(PrintWriter out, List<Map<String, Object>> rows) {
+        out.println("[");
+        for (int i = 0; i < rows.size(); i++) {
+            StringBuilder line = new StringBuilder("  {");
+            for (Map.Entry<String, Object> field : rows.get(i).entrySet()) {
+                if (line.length() > 3)
+                    line.append(", ");
+                line.append('"').append(field.getKey()).append("\": ");
+                Object value = field.getValue();
+                if (value instanceof String)
+                    line.append('"').append(value).append('"');
+                else if (value instanceof Double && ((Double) value).isNaN())
+                    line.append("null");
+                else
+                    line.append(format(value));
+            }
+            out.println(line.append(i + 1 < rows.size() ? "}," : "}"));
+        }
+        out.println("]");
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double)
+            return String.format(Locale.ROOT, "%.6g", (Double) value);
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,217 @@
+package communitydetection.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.DrawableView;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * Runs an algorithm, such as <code>Louvain</code> or
+ * <code>FastFruchtermanReingold</code>, on many small graphs on a fixed number
+ * of threads.
+ * </p>
+ * <p>
+ * Every thread creates its own instance of the algorithm the first time it
+ * needs it and reuses it for all the following graphs. The instances created
+ * by <code>louvain</code> and <code>layout</code> also keep the buffers of the
+ * detection of the communities, which belong to their thread, so that small
+ * graphs do not pay their allocation at every call. The results are returned
+ * in the order of the graphs or passed to a consumer as soon as they are
+ * ready.
+ * </p>
+ *
+ * <pre>
+ * try (BatchExecutor&lt;DefaultUndirectedWeightedGraph&lt;Node, DefaultWeightedEdge&gt;, DrawableView&gt; batch = BatchExecutor
+ *         .layout(4, 5)) {
+ *     List&lt;DrawableView&gt; views = batch.applyAll(graphs);
+ * }
+ * </pre>
+ *
+ * @param <T> The type of the graphs
+ * @param <R> The type of the results
+ * @author Filippo Bragato
+ */
+public class BatchExecutor<T, R> implements AutoCloseable {
+
+    private int nThreads;
+    private ExecutorService executor;
+    private ThreadLocal<Function<? super T, ? extends R>> algorithm;
+
+    /**
+     * Constructor that starts the threads.
+     *
+     * @param nThreads The number of threads
+     * @param factory  Creates the instance of the algorithm used by a thread;
+     *                 called once per thread
+     */
+    public BatchExecutor(int nThreads, Supplier<? extends Function<? super T, ? extends R>> factory) {
+        if (nThreads < 1)
+            throw new IllegalArgumentException("nThreads must be positive");
+        this.nThreads = nThreads;
+        this.executor = Executors.newFixedThreadPool(nThreads);
+        this.algorithm = ThreadLocal.withInitial(factory);
+    }
+
+    /**
+     * Creates an executor detecting the communities with <code>Louvain</code>,
+     * every thread reusing the buffers of its local moving phase.
+     *
+     * @param nThreads       The number of threads
+     * @param nOfItereations The number of times original Louvain's algorithm
+     *                       will be repeated on every graph
+     * @return The executor
+     */
+    public static BatchExecutor<AbstractGraph<Node, DefaultWeightedEdge>, DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>> louvain(
+            int nThreads, int nOfItereations) {
+        return new BatchExecutor<>(nThreads, () -> new Louvain(nOfItereations, new LocalMerging(0)));
+    }
+
+    /**
+     * Creates an executor laying out the graphs with
+     * <code>FastFruchtermanReingold</code>, every thread reusing the buffers of
+     * the detection of the communities.
+     *
+     * @param nThreads       The number of threads
+     * @param finalIteration The number of final iteration of the layout
+     * @return The executor
+     */
+    public static BatchExecutor<DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge>, DrawableView> layout(
+            int nThreads, int finalIteration) {
+        return new BatchExecutor<>(nThreads,
+                () -> new FastFruchtermanReingold(finalIteration, new LocalMerging(0))::applyView);
+    }
+
+    /**
+     * Runs the algorithm on every graph of a collection.
+     *
+     * @param graphs The graphs
+     * @return The result of each graph, in the order of the collection
+     * @throws IllegalStateException If the current thread is interrupted
+     */
+    public List<R> applyAll(Collection<? extends T> graphs) {
+        List<Future<R>> futures = new ArrayList<>(graphs.size());
+        for (T graph : graphs) {
+            futures.add(executor.submit(() -> algorithm.get().apply(graph)));
+        }
+        List<R> results = new ArrayList<>(graphs.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Runs the algorithm on every graph of a sequence, passing each result to a
+     * consumer as soon as it is ready. Graphs are taken from the iterator only
+     * when a thread is about to be free, so the sequence can be longer than
+     * what fits in memory. The consumer is called by the current thread.
+     *
+     * @param graphs   The graphs
+     * @param consumer The receiver of the results, with the position of their
+     *                 graph in the sequence
+     * @throws IllegalStateException If the current thread is interrupted
+     */
+    public void applyAll(Iterator<? extends T> graphs, ResultConsumer<? super R> consumer) {
+        CompletionService<Indexed<R>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Indexed<R>>> pending = new ArrayList<>();
+        // a few graphs more than the threads, so that no thread waits for the consumer
+        int maxPending = 2 * nThreads;
+        int submitted = 0;
+        int completed = 0;
+        try {
+            while (true) {
+                while (submitted - completed < maxPending && graphs.hasNext()) {
+                    T graph = graphs.next();
+                    int index = submitted++;
+                    pending.add(completion.submit(() -> new Indexed<R>(index, algorithm.get().apply(graph))));
+                }
+                if (completed == submitted)
+                    return;
+                Future<Indexed<R>> done = completion.take();
+                pending.remove(done);
+                completed++;
+                Indexed<R> result = done.get();
+                consumer.accept(result.index, result.value);
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            for (Future<Indexed<R>> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads, interrupting the graphs that are still running.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static RuntimeException rethrow(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException)
+            return (RuntimeException) e.getCause();
+        if (e.getCause() instanceof Error)
+            throw (Error) e.getCause();
+        return new IllegalStateException(e.getCause());
+    }
+
+    /**
+     * Receives the results of <code>applyAll</code> as soon as they are ready.
+     *
+     * @param <R> The type of the results
+     */
+    public interface ResultConsumer<R> {
+
+        /**
+         * Receives a result.
+         *
+         * @param index  The position of the graph in the sequence
+         * @param result The result of the graph
+         */
+        public void accept(int index, R result);
+    }
+
+    private static class Indexed<R> {
+        private int index;
+        private R value;
+
+        private Indexed(int index, R value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+}
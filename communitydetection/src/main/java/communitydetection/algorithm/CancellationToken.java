@@ -0,0 +1,29 @@
+package communitydetection.algorithm;
+
+/**
+ * A flag that can be shared between the thread running an algorithm and the
+ * threads that want to stop it. Algorithms check the token between their
+ * iterations and, once it has been cancelled, return the best result found so
+ * far.
+ *
+ * @author Filippo Bragato
+ */
+public class CancellationToken {
+    private volatile boolean cancelled = false;
+
+    /**
+     * Asks the algorithms observing this token to stop as soon as possible.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Checks whether this token has been cancelled.
+     *
+     * @return <code>true</code> if <code>cancel()</code> has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,117 @@
+package communitydetection.algorithm;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.PartitionSnapshot;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * Answers queries about the communities of a graph while its partition is
+ * periodically recomputed.
+ * </p>
+ * <p>
+ * The current partition is an immutable <code>PartitionSnapshot</code>; a new
+ * partition is indexed in a new snapshot, which then replaces the current one
+ * with a single atomic swap. Readers never take locks and never wait for a
+ * detection in progress; a reader that needs several consistent answers gets
+ * the snapshot once with <code>getSnapshot</code> and queries it.
+ * </p>
+ *
+ * @see PartitionSnapshot
+ * @author Filippo Bragato
+ */
+public class CommunityQueryService {
+
+    private AtomicReference<PartitionSnapshot> current = new AtomicReference<>(null);
+
+    /**
+     * Gets the current partition.
+     *
+     * @return The current snapshot, <code>null</code> if no partition has been
+     *         published yet
+     */
+    public PartitionSnapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * Indexes a partition and makes it the current one. Writers are serialized,
+     * readers are not blocked.
+     *
+     * @param network      The graph
+     * @param communityNet The graph of the communities of network
+     * @return The new snapshot, whose epoch follows the one of the previous
+     *         snapshot
+     */
+    public synchronized PartitionSnapshot publish(AbstractGraph<? extends Node, DefaultWeightedEdge> network,
+            AbstractGraph<Community, DefaultWeightedEdge> communityNet) {
+        PartitionSnapshot previous = current.get();
+        PartitionSnapshot snapshot = new PartitionSnapshot(network, communityNet,
+                previous == null ? 0 : previous.getEpoch() + 1);
+        current.set(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Detects the communities of a graph in the background and publishes them.
+     * The graph must not change and the detector must not be used elsewhere
+     * until the result is complete.
+     *
+     * @param network  The graph
+     * @param detector The algorithm finding the communities
+     * @param executor The executor running the detection
+     * @return The new snapshot, once published
+     */
+    public CompletableFuture<PartitionSnapshot> recompute(AbstractGraph<Node, DefaultWeightedEdge> network,
+            Louvain detector, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> publish(network, detector.apply(network)), executor);
+    }
+
+    /**
+     * Gets the community of a node in the current partition.
+     *
+     * @param node The node
+     * @return The index of its community, -1 if the node is unknown or no
+     *         partition has been published
+     */
+    public int communityOf(Node node) {
+        PartitionSnapshot snapshot = current.get();
+        return snapshot == null ? -1 : snapshot.communityOf(node);
+    }
+
+    /**
+     * Gets the nodes in the same community of a node in the current partition.
+     *
+     * @param node The node
+     * @return The members of its community, including the node, empty if the
+     *         node is unknown
+     */
+    public List<Node> sameCommunity(Node node) {
+        PartitionSnapshot snapshot = current.get();
+        int c = snapshot == null ? -1 : snapshot.communityOf(node);
+        return c == -1 ? Collections.emptyList() : snapshot.getMembers(c);
+    }
+
+    /**
+     * Gets the communities with the heaviest links to the community of a node
+     * in the current partition.
+     *
+     * @param node The node
+     * @param k    The maximum number of neighbouring communities
+     * @return Their indices in the current snapshot, from the heaviest link
+     */
+    public int[] topNeighbours(Node node, int k) {
+        PartitionSnapshot snapshot = current.get();
+        int c = snapshot == null ? -1 : snapshot.communityOf(node);
+        return c == -1 ? new int[0] : snapshot.topNeighbours(c, k);
+    }
+}
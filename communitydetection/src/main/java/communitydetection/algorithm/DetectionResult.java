@@ -0,0 +1,86 @@
+package communitydetection.algorithm;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphnodes.Community;
+
+/**
+ * The result of one call to an algorithm that divides a graph in communities:
+ * the community of every vertex, the modularity of the partition and whether
+ * the algorithm converged. Since all of them belong to the call, the same
+ * instance of an algorithm can run on several threads at once.
+ *
+ * @author Filippo Bragato
+ */
+public class DetectionResult {
+
+    private int[] community;
+    private double modularity;
+    private boolean converged;
+    private CompactGraph graph;
+    private DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet = null;
+
+    /**
+     * Constructor of a result.
+     *
+     * @param community  The community of every vertex
+     * @param modularity The modularity of the partition
+     * @param converged  <code>false</code> if the algorithm was stopped before
+     *                   converging
+     * @param graph      The graph divided in communities, <code>null</code> if
+     *                   its vertices are not known
+     */
+    DetectionResult(int[] community, double modularity, boolean converged, CompactGraph graph) {
+        this.community = community;
+        this.modularity = modularity;
+        this.converged = converged;
+        this.graph = graph;
+    }
+
+    /**
+     * Gets the community of every vertex, in the order of the vertices of the
+     * graph that was divided: two vertices are in the same community if and
+     * only if they have the same value.
+     *
+     * @return The community of every vertex
+     */
+    public int[] getCommunities() {
+        return community;
+    }
+
+    /**
+     * Gets the modularity of the partition.
+     *
+     * @return The modularity, scaled by the resolution in its null model term
+     */
+    public double getModularity() {
+        return modularity;
+    }
+
+    /**
+     * Tells whether the algorithm converged, rather than being stopped by a
+     * limit on the iterations, by a time budget or by a cancellation token.
+     *
+     * @return <code>true</code> if the algorithm converged
+     */
+    public boolean hasConverged() {
+        return converged;
+    }
+
+    /**
+     * Gets the graph of the communities, building it the first time.
+     *
+     * @return The graph representing the communities
+     * @throws IllegalStateException If the vertices of the graph that was
+     *                               divided are not known
+     */
+    public synchronized DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> getCommunityGraph() {
+        if (graph == null)
+            throw new IllegalStateException("the vertices of the graph are not known");
+        if (communityNet == null)
+            communityNet = graph.toCommunityGraph(community);
+        return communityNet;
+    }
+}
@@ -0,0 +1,729 @@
+package communitydetection.algorithm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+
+/**
+ * <p>
+ * Implementation of the standard Louvain's algorithm split among workers that
+ * communicate only through a <code>Transport</code>, so that they can run in
+ * different processes.
+ * </p>
+ * <p>
+ * The vertices are split in contiguous shards, one for each worker. A worker
+ * reads only the rows of its own vertices and keeps a ghost copy of the
+ * community of every vertex of another shard adjacent to its own. The first
+ * level proceeds in rounds: every worker moves its vertices as in
+ * <code>LocalMoving</code>, using the ghosts and the total degree of the
+ * communities as they were at the end of the previous round, then sends to
+ * all the others the new communities of its boundary vertices and the changes
+ * of the degree and of the size of the communities. To avoid vertices of
+ * different shards swapping their communities forever, such as the two halves
+ * of a clique cut by the shards, a vertex moves to a community seen through a
+ * ghost only if this has a smaller id than its own in even rounds, a larger
+ * one in odd rounds, so that one side of a swap always waits. Longer cycles
+ * among several communities can still keep the number of moves from
+ * decreasing; from then on a vertex also takes such a move only in the rounds
+ * picked by a hash of the vertex and of the round, about one in two, so that
+ * the vertices of a cycle stop moving in step.
+ * </p>
+ * <p>
+ * When the moves stop, every worker sends the edges between the communities of
+ * its shard to the worker of rank 0, which builds the graph of the communities
+ * in memory, completes the detection on it and sends the result to all the
+ * others. Besides its shard and its ghosts, each worker keeps the degree, the
+ * size and a few marks only of the communities its vertices and its ghosts
+ * belong to; a ghost moving to a community the worker does not know brings its
+ * degree and size along. Only the result, and the numbering of the
+ * communities on the worker of rank 0, take an entry for every vertex of the
+ * graph.
+ * </p>
+ *
+ * @see Transport
+ * @author Filippo Bragato
+ */
+public class DistributedLouvain implements Function<AdjacencyGraph, int[]> {
+
+    private int nWorkers;
+    private int maxRounds = 32;
+    private double resolution = 1;
+
+    /**
+     * Constructor that sets the number of workers used by <code>apply</code>.
+     *
+     * @param nWorkers The number of workers, each one running on its own thread
+     */
+    public DistributedLouvain(int nWorkers) {
+        this.nWorkers = Math.max(1, nWorkers);
+    }
+
+    /**
+     * Sets the resolution of the null model.
+     *
+     * @param resolution The resolution, 1 for the modularity of Newman and
+     *                   Girvan.
+     */
+    public void setResolution(double resolution) {
+        if (!(resolution > 0))
+            throw new IllegalArgumentException("resolution must be positive");
+        this.resolution = resolution;
+    }
+
+    /**
+     * Sets the maximum number of rounds of the distributed level.
+     *
+     * @param maxRounds The maximum number of rounds
+     */
+    public void setMaxRounds(int maxRounds) {
+        this.maxRounds = Math.max(1, maxRounds);
+    }
+
+    /**
+     * Divides the given graph in communities running all the workers in this
+     * JVM, connected by a <code>LoopbackTransport</code>.
+     *
+     * @param graph The graph
+     * @return The community of every vertex, numbered from 0
+     */
+    @Override
+    public int[] apply(AdjacencyGraph graph) {
+        return detect(graph).getCommunities();
+    }
+
+    /**
+     * Divides the given graph in communities as <code>apply</code> does,
+     * telling also the modularity of the partition and whether the distributed
+     * level stopped before the maximum number of rounds.
+     *
+     * @param graph The graph
+     * @return The community of every vertex, numbered from 0, with the
+     *         modularity scaled by the resolution in its null model term
+     */
+    public DetectionResult detect(AdjacencyGraph graph) {
+        LoopbackTransport[] transports = LoopbackTransport.connect(nWorkers);
+        int n = graph.getVertexCount();
+        // the workers block on each other, each one needs its own thread
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        CompletionService<DetectionResult> completion = new ExecutorCompletionService<>(executor);
+        try {
+            Future<DetectionResult> coordinator = null;
+            for (int rank = 0; rank < nWorkers; rank++) {
+                int from = (int) ((long) n * rank / nWorkers);
+                int to = (int) ((long) n * (rank + 1) / nWorkers);
+                Transport transport = transports[rank];
+                Future<DetectionResult> result = completion.submit(() -> runWorker(graph, from, to, transport));
+                if (rank == 0)
+                    coordinator = result;
+            }
+            // the others wait forever for a failed worker, so the first failure is rethrown as soon as it happens
+            for (int k = 0; k < nWorkers; k++) {
+                completion.take().get();
+            }
+            return coordinator.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw new UncheckedIOException((IOException) e.getCause());
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            // interrupts the workers still waiting for a message
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a worker. Every worker must call this method with its own shard;
+     * the shards must be contiguous, in the order of the ranks, and cover all
+     * the vertices.
+     *
+     * @param graph     The graph; only the rows of the vertices of the shard
+     *                  are read
+     * @param from      The first vertex of the shard
+     * @param to        The vertex after the last one of the shard
+     * @param transport The transport of the worker
+     * @return The community of every vertex of the graph, numbered from 0,
+     *         with the modularity of the partition; every worker receives the
+     *         same result from the worker of rank 0
+     * @throws IOException If a message cannot be exchanged
+     */
+    public DetectionResult runWorker(AdjacencyGraph graph, int from, int to, Transport transport)
+            throws IOException {
+        Worker worker = new Worker(graph, from, to, transport);
+        return worker.finish(worker.distributedLevel());
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The state of a worker. The communities are kept in slots, allocated only
+     * for those of the owned vertices and of the ghosts and released when no
+     * such vertex is left in them, so every array has about as many entries as
+     * the shard and its ghosts.
+     */
+    private class Worker {
+        private Transport transport;
+        private int n;
+        private int from;
+        private int owned;
+        private int[] ghosts;
+        private int[] offsets;
+        private int[] targets;
+        private double[] weights;
+        private double[] degree;
+        private boolean[] boundary;
+        private int[] community;
+
+        private double totalWeight;
+        private HashMap<Integer, Integer> slotOf = new HashMap<>();
+        private int nSlots = 0;
+        private int[] freeSlots = new int[16];
+        private int nFree = 0;
+        private int[] emptied = new int[16];
+        private int nEmptied = 0;
+
+        private int[] slotCommunity;
+        private int[] members;
+        private double[] communityDegree;
+        private int[] communitySize;
+        private int[] learntFrom;
+
+        private double[] neighbourWeight;
+        private int[] mark;
+        private int[] remoteMark;
+        private int[] touched;
+        private int epoch = 0;
+
+        private double[] deltaDegree;
+        private int[] deltaSize;
+        private int[] changed;
+        private int nChanged = 0;
+
+        /**
+         * Loads the shard: the rows of the vertices from <code>from</code> to
+         * <code>to - 1</code>, with the neighbours numbered locally, first the
+         * owned vertices and then the ghosts.
+         */
+        private Worker(AdjacencyGraph graph, int from, int to, Transport transport) {
+            this.transport = transport;
+            this.n = graph.getVertexCount();
+            this.from = from;
+            this.owned = to - from;
+            AdjacencyGraph.Cursor cursor = graph.cursor();
+
+            offsets = new int[owned + 1];
+            int[] outside = new int[16];
+            int nOutside = 0;
+            for (int i = 0; i < owned; i++) {
+                cursor.moveTo(from + i);
+                int length = 0;
+                while (cursor.next()) {
+                    int t = cursor.getTarget();
+                    if (t < from || t >= to) {
+                        if (nOutside == outside.length)
+                            outside = Arrays.copyOf(outside, 2 * nOutside);
+                        outside[nOutside++] = t;
+                    }
+                    length++;
+                }
+                offsets[i + 1] = offsets[i] + length;
+            }
+            ghosts = Arrays.stream(outside, 0, nOutside).sorted().distinct().toArray();
+
+            targets = new int[offsets[owned]];
+            weights = new double[offsets[owned]];
+            degree = new double[owned];
+            boundary = new boolean[owned];
+            int maxLength = 0;
+            for (int i = 0; i < owned; i++) {
+                cursor.moveTo(from + i);
+                int k = offsets[i];
+                while (cursor.next()) {
+                    int t = cursor.getTarget();
+                    if (t < from || t >= to) {
+                        targets[k] = owned + Arrays.binarySearch(ghosts, t);
+                        boundary[i] = true;
+                    } else {
+                        targets[k] = t - from;
+                    }
+                    weights[k] = cursor.getWeight();
+                    degree[i] += weights[k];
+                    k++;
+                }
+                maxLength = Math.max(maxLength, k - offsets[i]);
+            }
+
+            int capacity = Math.max(16, owned + ghosts.length);
+            slotCommunity = new int[capacity];
+            members = new int[capacity];
+            communityDegree = new double[capacity];
+            communitySize = new int[capacity];
+            learntFrom = new int[capacity];
+            neighbourWeight = new double[capacity];
+            mark = new int[capacity];
+            remoteMark = new int[capacity];
+            deltaDegree = new double[capacity];
+            deltaSize = new int[capacity];
+            touched = new int[maxLength];
+            changed = new int[16];
+            community = new int[owned + ghosts.length];
+            for (int i = 0; i < community.length; i++) {
+                community[i] = allocate(globalOf(i));
+                members[community[i]] = 1;
+            }
+        }
+
+        private int globalOf(int local) {
+            return local < owned ? from + local : ghosts[local - owned];
+        }
+
+        /**
+         * Allocates an empty slot for a community.
+         *
+         * @param c The id of the community
+         * @return The slot
+         */
+        private int allocate(int c) {
+            int slot;
+            if (nFree > 0) {
+                slot = freeSlots[--nFree];
+            } else {
+                if (nSlots == slotCommunity.length)
+                    grow();
+                slot = nSlots++;
+            }
+            slotCommunity[slot] = c;
+            members[slot] = 0;
+            communityDegree[slot] = 0;
+            communitySize[slot] = 0;
+            learntFrom[slot] = -1;
+            slotOf.put(c, slot);
+            return slot;
+        }
+
+        private void grow() {
+            int capacity = 2 * slotCommunity.length;
+            slotCommunity = Arrays.copyOf(slotCommunity, capacity);
+            members = Arrays.copyOf(members, capacity);
+            communityDegree = Arrays.copyOf(communityDegree, capacity);
+            communitySize = Arrays.copyOf(communitySize, capacity);
+            learntFrom = Arrays.copyOf(learntFrom, capacity);
+            neighbourWeight = Arrays.copyOf(neighbourWeight, capacity);
+            mark = Arrays.copyOf(mark, capacity);
+            remoteMark = Arrays.copyOf(remoteMark, capacity);
+            deltaDegree = Arrays.copyOf(deltaDegree, capacity);
+            deltaSize = Arrays.copyOf(deltaSize, capacity);
+        }
+
+        /**
+         * Moves a local vertex, owned or ghost, to the community in a slot.
+         */
+        private void setCommunity(int i, int slot) {
+            int old = community[i];
+            if (--members[old] == 0) {
+                if (nEmptied == emptied.length)
+                    emptied = Arrays.copyOf(emptied, 2 * nEmptied);
+                emptied[nEmptied++] = old;
+            }
+            members[slot]++;
+            community[i] = slot;
+        }
+
+        /**
+         * Releases the slots of the communities left without owned vertices
+         * and ghosts; their changes must have been sent already.
+         */
+        private void releaseEmptied() {
+            for (int j = 0; j < nEmptied; j++) {
+                int slot = emptied[j];
+                // a slot can be listed twice, or filled again in the meantime
+                if (members[slot] != 0 || slotOf.get(slotCommunity[slot]) != slot)
+                    continue;
+                slotOf.remove(slotCommunity[slot]);
+                if (nFree == freeSlots.length)
+                    freeSlots = Arrays.copyOf(freeSlots, 2 * nFree);
+                freeSlots[nFree++] = slot;
+            }
+            nEmptied = 0;
+        }
+
+        /**
+         * Moves the vertices in rounds until no worker moves any of them.
+         *
+         * @return <code>false</code> if the maximum number of rounds was
+         *         reached first
+         */
+        private boolean distributedLevel() throws IOException {
+            // the first exchange publishes the degree of the vertices that are ghosts of other workers
+            double shardWeight = 0;
+            for (int i = 0; i < owned; i++) {
+                shardWeight += degree[i];
+                if (boundary[i]) {
+                    change(community[i], degree[i], 1);
+                } else {
+                    communityDegree[community[i]] = degree[i];
+                    communitySize[community[i]] = 1;
+                }
+            }
+            exchange(0, new int[0], 0);
+            totalWeight = sum(shardWeight);
+            if (totalWeight == 0)
+                return true;
+
+            int[] moves = new int[16];
+            int last = Integer.MAX_VALUE;
+            boolean damped = false;
+            for (int round = 0; round < maxRounds; round++) {
+                int moved = 0;
+                int nMoves = 0;
+                for (int i = 0; i < owned; i++) {
+                    if (moveVertex(i, round, damped)) {
+                        moved++;
+                        if (boundary[i]) {
+                            if (nMoves == moves.length)
+                                moves = Arrays.copyOf(moves, 2 * nMoves);
+                            moves[nMoves++] = i;
+                        }
+                    }
+                }
+                // every worker receives the same total, so they all stop and damp at the same round
+                int total = exchange(moved, moves, nMoves);
+                if (total == 0)
+                    return true;
+                if (total >= last)
+                    damped = true;
+                last = total;
+            }
+            return false;
+        }
+
+        /**
+         * Sums a value over all the workers.
+         */
+        private double sum(double value) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeDouble(value);
+            out.flush();
+            byte[] message = bytes.toByteArray();
+            for (int w = 0; w < transport.getSize(); w++) {
+                if (w != transport.getRank())
+                    transport.send(w, message);
+            }
+            double total = value;
+            for (int w = 0; w < transport.getSize(); w++) {
+                if (w != transport.getRank())
+                    total += new DataInputStream(new ByteArrayInputStream(transport.receive(w))).readDouble();
+            }
+            return total;
+        }
+
+        private boolean moveVertex(int i, int round, boolean damped) {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(mark, 0);
+                Arrays.fill(remoteMark, 0);
+                epoch = 1;
+            }
+            int own = community[i];
+            mark[own] = epoch;
+            neighbourWeight[own] = 0;
+            int nTouched = 0;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (targets[k] == i)
+                    continue;
+                int c = community[targets[k]];
+                if (mark[c] != epoch) {
+                    mark[c] = epoch;
+                    neighbourWeight[c] = 0;
+                    touched[nTouched++] = c;
+                }
+                neighbourWeight[c] += weights[k];
+                if (targets[k] >= owned)
+                    remoteMark[c] = epoch;
+            }
+            double k_i = degree[i];
+            double scale = resolution * k_i / totalWeight;
+            double ownDegree = communityDegree[own] - k_i;
+            int best = own;
+            double bestGain = neighbourWeight[own] - scale * ownDegree;
+            for (int t = 0; t < nTouched; t++) {
+                int c = touched[t];
+                // the ghosts are one round old, their vertices may be moving to the own community right now
+                if (c == own || (remoteMark[c] == epoch
+                        && ((slotCommunity[c] > slotCommunity[own]) == (round % 2 == 0)
+                                || (damped && (mix((long) round << 32 | globalOf(i)) & 1) != 0))))
+                    continue;
+                double gain = neighbourWeight[c] - scale * communityDegree[c];
+                if (gain > bestGain) {
+                    best = c;
+                    bestGain = gain;
+                }
+            }
+            if (best == own)
+                return false;
+            change(own, -k_i, -1);
+            change(best, k_i, 1);
+            setCommunity(i, best);
+            return true;
+        }
+
+        /**
+         * Applies a change to the community in a slot and remembers it for the
+         * next exchange.
+         */
+        private void change(int slot, double dDegree, int dSize) {
+            communityDegree[slot] += dDegree;
+            communitySize[slot] += dSize;
+            if (deltaDegree[slot] == 0 && deltaSize[slot] == 0) {
+                if (nChanged == changed.length)
+                    changed = Arrays.copyOf(changed, 2 * nChanged);
+                changed[nChanged++] = slot;
+            }
+            deltaDegree[slot] += dDegree;
+            deltaSize[slot] += dSize;
+        }
+
+        /**
+         * Sends to every other worker the moves of the boundary vertices and the
+         * changes of the communities of this round, then applies the ones
+         * received.
+         * <p>
+         * A worker knows the degree and the size only of the communities in its
+         * slots, so a move carries also those of the new community as seen by
+         * the sender, including its own changes; when a ghost enters a
+         * community without a slot, it is created from these values, and the
+         * changes of the same round from all the other workers are added.
+         * </p>
+         *
+         * @return The number of vertices moved by all the workers
+         */
+        private int exchange(int moved, int[] moves, int nMoves) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(moved);
+            out.writeInt(nMoves);
+            for (int m = 0; m < nMoves; m++) {
+                int slot = community[moves[m]];
+                out.writeInt(globalOf(moves[m]));
+                out.writeInt(slotCommunity[slot]);
+                out.writeDouble(communityDegree[slot]);
+                out.writeInt(communitySize[slot]);
+            }
+            // a community can be listed twice if its changes cancelled out in between
+            ByteArrayOutputStream deltaBytes = new ByteArrayOutputStream();
+            DataOutputStream deltas = new DataOutputStream(deltaBytes);
+            int nDeltas = 0;
+            for (int j = 0; j < nChanged; j++) {
+                int slot = changed[j];
+                if (deltaDegree[slot] != 0 || deltaSize[slot] != 0) {
+                    deltas.writeInt(slotCommunity[slot]);
+                    deltas.writeDouble(deltaDegree[slot]);
+                    deltas.writeInt(deltaSize[slot]);
+                    nDeltas++;
+                }
+                deltaDegree[slot] = 0;
+                deltaSize[slot] = 0;
+            }
+            deltas.flush();
+            out.writeInt(nDeltas);
+            deltaBytes.writeTo(out);
+            nChanged = 0;
+            out.flush();
+            byte[] message = bytes.toByteArray();
+            for (int w = 0; w < transport.getSize(); w++) {
+                if (w != transport.getRank())
+                    transport.send(w, message);
+            }
+
+            // first the moves of all the workers, which may create slots, then the changes
+            int total = moved;
+            DataInputStream[] in = new DataInputStream[transport.getSize()];
+            int[] learnt = new int[16];
+            int nLearnt = 0;
+            for (int w = 0; w < transport.getSize(); w++) {
+                if (w == transport.getRank())
+                    continue;
+                in[w] = new DataInputStream(new ByteArrayInputStream(transport.receive(w)));
+                total += in[w].readInt();
+                int count = in[w].readInt();
+                for (int m = 0; m < count; m++) {
+                    int v = in[w].readInt();
+                    int c = in[w].readInt();
+                    double cDegree = in[w].readDouble();
+                    int cSize = in[w].readInt();
+                    int g = Arrays.binarySearch(ghosts, v);
+                    if (g < 0)
+                        continue;
+                    Integer slot = slotOf.get(c);
+                    if (slot == null) {
+                        slot = allocate(c);
+                        communityDegree[slot] = cDegree;
+                        communitySize[slot] = cSize;
+                        learntFrom[slot] = w;
+                        if (nLearnt == learnt.length)
+                            learnt = Arrays.copyOf(learnt, 2 * nLearnt);
+                        learnt[nLearnt++] = slot;
+                    }
+                    setCommunity(owned + g, slot);
+                }
+            }
+            for (int w = 0; w < transport.getSize(); w++) {
+                if (w == transport.getRank())
+                    continue;
+                int count = in[w].readInt();
+                for (int d = 0; d < count; d++) {
+                    Integer slot = slotOf.get(in[w].readInt());
+                    double dDegree = in[w].readDouble();
+                    int dSize = in[w].readInt();
+                    if (slot != null && learntFrom[slot] != w) {
+                        communityDegree[slot] += dDegree;
+                        communitySize[slot] += dSize;
+                    }
+                }
+            }
+            for (int l = 0; l < nLearnt; l++) {
+                learntFrom[learnt[l]] = -1;
+            }
+            releaseEmptied();
+            return total;
+        }
+
+        /**
+         * Sends the edges between the communities of the shard to the worker of
+         * rank 0, which completes the detection and sends the result back.
+         *
+         * @param converged <code>false</code> if the distributed level stopped
+         *                  at the maximum number of rounds
+         * @return The community of every vertex, with the modularity
+         */
+        private DetectionResult finish(boolean converged) throws IOException {
+            HashMap<Long, Double> links = new HashMap<>();
+            for (int i = 0; i < owned; i++) {
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    long key = (long) slotCommunity[community[i]] << 32 | slotCommunity[community[targets[k]]];
+                    links.merge(key, weights[k], Double::sum);
+                }
+            }
+            if (transport.getRank() != 0) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(owned);
+                for (int i = 0; i < owned; i++) {
+                    out.writeInt(slotCommunity[community[i]]);
+                }
+                writeLinks(out, links);
+                out.flush();
+                transport.send(0, bytes.toByteArray());
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(transport.receive(0)));
+                int[] membership = new int[in.readInt()];
+                for (int v = 0; v < membership.length; v++) {
+                    membership[v] = in.readInt();
+                }
+                double modularity = in.readDouble();
+                return new DetectionResult(membership, modularity, in.readBoolean(), null);
+            }
+
+            int[] membership = new int[n];
+            for (int i = 0; i < owned; i++) {
+                membership[i] = slotCommunity[community[i]];
+            }
+            int filled = owned;
+            for (int w = 1; w < transport.getSize(); w++) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(transport.receive(w)));
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    membership[filled++] = in.readInt();
+                }
+                int nLinks = in.readInt();
+                for (int l = 0; l < nLinks; l++) {
+                    long key = in.readLong();
+                    links.merge(key, in.readDouble(), Double::sum);
+                }
+            }
+
+            // communities numbered from 0 and their graph, row by row
+            int[] id = new int[n];
+            Arrays.fill(id, -1);
+            int nOfComm = 0;
+            for (int v = 0; v < n; v++) {
+                if (id[membership[v]] == -1)
+                    id[membership[v]] = nOfComm++;
+            }
+            int[] rowStart = new int[nOfComm + 1];
+            for (long key : links.keySet()) {
+                rowStart[id[(int) (key >>> 32)] + 1]++;
+            }
+            for (int c = 0; c < nOfComm; c++) {
+                rowStart[c + 1] += rowStart[c];
+            }
+            int[] next = Arrays.copyOf(rowStart, nOfComm);
+            int[] rowTargets = new int[links.size()];
+            double[] rowWeights = new double[links.size()];
+            for (Map.Entry<Long, Double> link : links.entrySet()) {
+                int c = id[(int) (link.getKey() >>> 32)];
+                int pos = next[c]++;
+                rowTargets[pos] = id[(int) (long) link.getKey()];
+                rowWeights[pos] = link.getValue();
+            }
+            // the rest is small enough for one process, the in-memory path of the out-of-core version
+            OutOfCoreLouvain local = new OutOfCoreLouvain(null, Long.MAX_VALUE);
+            local.setResolution(resolution);
+            DetectionResult result = local.detect(new CompactGraph(rowStart, rowTargets, rowWeights));
+            int[] inner = result.getCommunities();
+            converged &= result.hasConverged();
+            for (int v = 0; v < n; v++) {
+                membership[v] = inner[id[membership[v]]];
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(n);
+            for (int v = 0; v < n; v++) {
+                out.writeInt(membership[v]);
+            }
+            out.writeDouble(result.getModularity());
+            out.writeBoolean(converged);
+            out.flush();
+            byte[] message = bytes.toByteArray();
+            for (int w = 1; w < transport.getSize(); w++) {
+                transport.send(w, message);
+            }
+            return new DetectionResult(membership, result.getModularity(), converged, null);
+        }
+
+        private void writeLinks(DataOutputStream out, HashMap<Long, Double> links) throws IOException {
+            out.writeInt(links.size());
+            for (Map.Entry<Long, Double> link : links.entrySet()) {
+                out.writeLong(link.getKey());
+                out.writeDouble(link.getValue());
+            }
+        }
+    }
+}
@@ -1,22 +1,17 @@
 package communitydetection.algorithm;
 
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Random;
-import java.util.function.BiFunction;
 import java.util.function.Function;
 
-import org.jgrapht.alg.drawing.FRLayoutAlgorithm2D;
-import org.jgrapht.alg.drawing.FRLayoutAlgorithm2D.TemperatureModel;
-import org.jgrapht.alg.drawing.model.Box2D;
-import org.jgrapht.alg.drawing.model.LayoutModel2D;
-import org.jgrapht.alg.drawing.model.MapLayoutModel2D;
-import org.jgrapht.alg.drawing.model.Point2D;
-import org.jgrapht.graph.AbstractGraph;
-import org.jgrapht.graph.AsSubgraph;
 import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
+import communitydetection.graphmanagement.CompactGraph;
 import communitydetection.graphmanagement.DrawGraph;
+import communitydetection.graphmanagement.DrawableView;
+import communitydetection.graphmanagement.VertexReordering;
 import communitydetection.graphnodes.Community;
 import communitydetection.graphnodes.GraficNode;
 import communitydetection.graphnodes.Node;
@@ -29,7 +24,13 @@ import communitydetection.graphnodes.Node;
 public class FastFruchtermanReingold implements
         Function<DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge>, DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge>> {
 
+    // the frame and the iterations of the first two phases, as in jgrapht
+    private static final double SIDE = 1000;
+    private static final int ITERATIONS = 100;
+
     private int finalIteration = 5;
+    private VertexReordering reordering = null;
+    private LocalMerging kernel = null;
 
     /**
      * Constructor that sets the number of final iteration of the algorithm.
@@ -43,6 +44,32 @@ public class FastFruchtermanReingold implements
         this.finalIteration = finalIteration;
     }
 
+    /**
+     * Constructor that makes the detection of the communities reuse the buffers
+     * of the given local moving phase; the instance must then be used by one
+     * thread at a time.
+     * 
+     * @param finalIteration The number of final iteration
+     * @param kernel         The local moving phase used by <code>Louvain</code>
+     * @see BatchExecutor#layout(int, int)
+     */
+    FastFruchtermanReingold(int finalIteration, LocalMerging kernel) {
+        this.finalIteration = finalIteration;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Sets the strategy used to renumber the vertices before the detection of
+     * the communities and before the layout of every community.
+     * 
+     * @param reordering The strategy, <code>null</code> to keep the order of the
+     *                   vertex set.
+     * @see Louvain#setReordering(VertexReordering)
+     */
+    public void setReordering(VertexReordering reordering) {
+        this.reordering = reordering;
+    }
+
     /**
      * Creates a drawable graph, representing the given one, in which vertices are set according to Fruchterman-Reingold algorithm.
      * @param net The graph that will be represented
@@ -53,97 +80,181 @@ public class FastFruchtermanReingold implements
             DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net) {
 
         DrawGraph drawer = new DrawGraph(500, 500, 10);
-        Louvain lou = new Louvain();
+        Louvain lou = new Louvain(1, kernel);
+        lou.setReordering(reordering);
 
         DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet = lou.apply(net);
 
         DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge> drNet = drawer.makeDrawable(net, communityNet);
 
-        FRLayoutAlgorithm2D<Community, DefaultWeightedEdge> frLay = new FRLayoutAlgorithm2D<Community, DefaultWeightedEdge>();
-        Box2D commBox = new Box2D(1000, 1000);
-        LayoutModel2D<Community> commMap = new MapLayoutModel2D<Community>(commBox);
-        frLay.layout(communityNet, commMap);
-
-        Box2D graphBox = new Box2D(1000, 1000);
-        LayoutModel2D<Node> graphMap = new MapLayoutModel2D<Node>(graphBox);
-
-        for (Community community : communityNet.vertexSet()) {
-            AbstractGraph<Node, DefaultWeightedEdge> subG = new AsSubgraph<Node, DefaultWeightedEdge>(net,
-                    new HashSet<Node>(community.getNodes()));
-
-            FRLayoutAlgorithm2D<Node, DefaultWeightedEdge> fr = new FRLayoutAlgorithm2D<Node, DefaultWeightedEdge>();
-            Box2D box = new Box2D(1000 / Math.sqrt(communityNet.vertexSet().size()),
-                    1000 / Math.sqrt(communityNet.vertexSet().size()));
-            LayoutModel2D<Node> map = new MapLayoutModel2D<Node>(box);
-            fr.layout(subG, map);
-
-            double offsetX = commMap.get(community).getX();
-            double offsetY = commMap.get(community).getY();
-
-            for (Node node : subG.vertexSet()) {
-                Point2D point = new Point2D(offsetX + map.get(node).getX(), offsetY + map.get(node).getY());
-                graphMap.put(node, point);
-            }
-        }
-        FRLayoutAlgorithm2D<Node, DefaultWeightedEdge> fr = new FRLayoutAlgorithm2D<Node, DefaultWeightedEdge>(
-                finalIteration, 0.5, new TemperatureModelSupplier<>(), new Random());
-
-        fr.setInitializer(new Keep<Node>(graphMap));
-
-        fr.layout(net, graphMap);
+        int n = net.vertexSet().size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        layout(net, communityNet, x, y);
 
+        int i = 0;
         for (Node node : net.vertexSet()) {
-            node.getGrafical().setX(graphMap.get(node).getX());
-            node.getGrafical().setY(graphMap.get(node).getY());
+            node.getGrafical().setX(x[i]);
+            node.getGrafical().setY(y[i]);
+            i++;
         }
         return drNet;
     }
 
-    private class Keep<V> implements Function<V, Point2D> {
+    /**
+     * Creates a drawable view of the given graph, in which vertices are set
+     * according to Fruchterman-Reingold algorithm, without copying the graph.
+     * 
+     * @param net The graph that will be represented
+     * @return The drawable view of the given graph
+     * @see DrawableView
+     */
+    public DrawableView applyView(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net) {
+        Louvain lou = new Louvain(1, kernel);
+        lou.setReordering(reordering);
+        return applyView(net, lou.apply(net));
+    }
 
-        private LayoutModel2D<V> map;
+    /**
+     * Creates a drawable view of the given graph, whose communities have
+     * already been found, in which vertices are set according to
+     * Fruchterman-Reingold algorithm.
+     * 
+     * @param net          The graph that will be represented
+     * @param communityNet The graph of the communities of net
+     * @return The drawable view of the given graph
+     * @see Louvain
+     */
+    public DrawableView applyView(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net,
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet) {
+        DrawableView view = new DrawableView(net, communityNet);
 
-        public Keep(LayoutModel2D<V> map) {
-            this.map = map;
-        }
+        // the view numbers the vertices in the order of the vertex set, as the
+        // layout does
+        layout(net, communityNet, view.getX(), view.getY());
+        return view;
+    }
 
-        @Override
-        public Point2D apply(V v) {
-            return map.get(v);
-        }
+    /**
+     * Places the vertices of the given graph with <code>ForceLayout</code>:
+     * first the communities are placed, then the vertices inside each
+     * community, in a frame around the position of the community, and finally
+     * a few iterations on the whole graph, with a low temperature, refine the
+     * result. As in the original algorithm, the weights of the edges are
+     * ignored.
+     * 
+     * @param net          The graph that will be represented
+     * @param communityNet The graph of the communities of net
+     * @param x            Receives the x of every vertex, in the order of the
+     *                     vertex set
+     * @param y            Receives the y of every vertex, in the order of the
+     *                     vertex set
+     */
+    private void layout(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net,
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet, double[] x, double[] y) {
+        CompactGraph graph = new CompactGraph(net);
+        int n = graph.getVertexCount();
+        CompactGraph communityGraph = new CompactGraph(communityNet);
+        int nOfComm = communityGraph.getVertexCount();
+        double[][] commPos = new ForceLayout(ITERATIONS, SIDE, SIDE).apply(unweighted(communityGraph));
 
-    }
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            index.put(graph.getVertex(i), i);
+        }
+        int[] label = new int[n];
+        Arrays.fill(label, -1);
+        for (int c = 0; c < nOfComm; c++) {
+            for (Node node : ((Community) communityGraph.getVertex(c)).getNodes()) {
+                Integer i = index.get(node);
+                if (i != null)
+                    label[i] = c;
+            }
+        }
 
-    private class InverseLinearTemperatureModel implements TemperatureModel {
-        private double a;
-        private double b;
-
-        /**
-         * Create a new inverse linear temperature model.
-         * 
-         * @param a a
-         * @param b b
-         */
-        public InverseLinearTemperatureModel(double a, double b) {
-            this.a = a;
-            this.b = b;
+        // the members of every community, in the order of the reordering
+        int[] visit = new int[n];
+        if (reordering == null) {
+            for (int i = 0; i < n; i++) {
+                visit[i] = i;
+            }
+        } else {
+            CompactGraph ordered = reordering.apply(graph);
+            for (int i = 0; i < n; i++) {
+                visit[i] = index.get(ordered.getVertex(i));
+            }
+        }
+        int[] start = new int[nOfComm + 1];
+        for (int v = 0; v < n; v++) {
+            if (label[v] >= 0)
+                start[label[v] + 1]++;
+        }
+        for (int c = 0; c < nOfComm; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] members = new int[start[nOfComm]];
+        int[] local = new int[n];
+        int[] next = Arrays.copyOf(start, nOfComm);
+        for (int v : visit) {
+            if (label[v] >= 0) {
+                local[v] = next[label[v]] - start[label[v]];
+                members[next[label[v]]++] = v;
+            }
         }
 
-        @Override
-        public double temperature(int iteration, int maxIterations) {
-            if (iteration >= maxIterations - 1) {
-                return 0.0;
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double side = SIDE / Math.sqrt(Math.max(1, nOfComm));
+        ForceLayout inside = new ForceLayout(ITERATIONS, side, side);
+        for (int c = 0; c < nOfComm; c++) {
+            int size = start[c + 1] - start[c];
+            int[] subOffsets = new int[size + 1];
+            for (int p = 0; p < size; p++) {
+                int v = members[start[c] + p];
+                subOffsets[p + 1] = subOffsets[p];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    if (label[targets[e]] == c)
+                        subOffsets[p + 1]++;
+                }
+            }
+            int[] subTargets = new int[subOffsets[size]];
+            int k = 0;
+            for (int p = 0; p < size; p++) {
+                int v = members[start[c] + p];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    if (label[targets[e]] == c)
+                        subTargets[k++] = local[targets[e]];
+                }
+            }
+            double[] ones = new double[subTargets.length];
+            Arrays.fill(ones, 1);
+            double[][] pos = inside.apply(new CompactGraph(subOffsets, subTargets, ones));
+            for (int p = 0; p < size; p++) {
+                int v = members[start[c] + p];
+                x[v] = commPos[0][c] + pos[0][p];
+                y[v] = commPos[1][c] + pos[1][p];
+            }
+        }
+        // the vertices missing from the communities start anywhere
+        Random rng = new Random();
+        for (int v = 0; v < n; v++) {
+            if (label[v] < 0) {
+                x[v] = rng.nextDouble() * SIDE;
+                y[v] = rng.nextDouble() * SIDE;
             }
-            return a * iteration + b;
         }
 
+        ForceLayout refinement = new ForceLayout(finalIteration, SIDE, SIDE);
+        refinement.setInitialTemperature(finalIteration);
+        refinement.layout(unweighted(graph), x, y);
     }
 
-    private class TemperatureModelSupplier<V> implements BiFunction<LayoutModel2D<V>, Integer, TemperatureModel> {
-
-        @Override
-        public TemperatureModel apply(LayoutModel2D<V> lay, Integer i) {
-            return new InverseLinearTemperatureModel(-1, i);
-        }
+    /**
+     * Creates a graph with the rows of the given one and all the weights 1.
+     */
+    private static CompactGraph unweighted(CompactGraph graph) {
+        double[] ones = new double[(int) graph.getEntryCount()];
+        Arrays.fill(ones, 1);
+        return new CompactGraph(graph.getOffsets(), graph.getTargets(), ones);
     }
 }
@@ -0,0 +1,98 @@
+package communitydetection.algorithm;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <p>
+ * Measures the repulsion and the attraction of <code>ForceLayout</code>: the
+ * scalar loops against the ones actually used, which is the Vector API one when the multi-release
+ * jar runs on Java 17 or later with
+ * <code>--add-modules jdk.incubator.vector</code>, for example
+ * </p>
+ *
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp communitydetection-1.0.jar:jgrapht-core-1.5.0.jar communitydetection.algorithm.ForceKernelBenchmark 4000 20
+ * </pre>
+ * <p>
+ * The arguments are the number of vertices, 2000 by default, and the number of
+ * measured calls, 20 by default; as many calls warm the JVM up first. The
+ * attraction is measured on a random graph with 16 neighbours per vertex.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+public class ForceKernelBenchmark {
+
+    private ForceKernelBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark and prints the results.
+     *
+     * @param args The number of vertices and the number of measured calls
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        double side = 1000;
+        double k2 = side * side / n;
+        Random random = new Random(0);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * side;
+            y[i] = random.nextDouble() * side;
+        }
+        double[] sdx = new double[n], sdy = new double[n];
+        double[] vdx = new double[n], vdy = new double[n];
+
+        System.out.println("vector repulsion " + (VectorKernels.AVAILABLE ? "available" : "not available"));
+        double scalar = time(runs, () -> ForceKernels.scalarRepulsion(x, y, sdx, sdy, n, k2));
+        double used = time(runs, () -> ForceKernels.repulsion(x, y, vdx, vdy, n, k2));
+        double error = 0;
+        for (int i = 0; i < n; i++) {
+            error = Math.max(error, Math.hypot(sdx[i] - vdx[i], sdy[i] - vdy[i]) / Math.hypot(sdx[i], sdy[i]));
+        }
+        System.out.println(String.format(Locale.ROOT, "scalar %.3f ms, used %.3f ms, speedup %.2fx", scalar, used,
+                scalar / used));
+        System.out.println(String.format(Locale.ROOT, "max relative difference %.3g", error));
+
+        int degree = 16;
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[n * degree];
+        double[] weights = new double[n * degree];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + degree;
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                targets[e] = random.nextInt(n);
+                weights[e] = random.nextDouble();
+            }
+        }
+        double k = Math.sqrt(k2);
+        double[] sax = new double[n], say = new double[n];
+        double[] vax = new double[n], vay = new double[n];
+        double scalarAttraction = time(runs,
+                () -> ForceKernels.scalarAttraction(offsets, targets, weights, x, y, sax, say, n, k));
+        double usedAttraction = time(runs,
+                () -> ForceKernels.attraction(offsets, targets, weights, x, y, vax, vay, n, k));
+        error = 0;
+        for (int i = 0; i < n; i++) {
+            error = Math.max(error, Math.hypot(sax[i] - vax[i], say[i] - vay[i]) / Math.hypot(sax[i], say[i]));
+        }
+        System.out.println(String.format(Locale.ROOT, "attraction: scalar %.3f ms, used %.3f ms, speedup %.2fx",
+                scalarAttraction, usedAttraction, scalarAttraction / usedAttraction));
+        System.out.println(String.format(Locale.ROOT, "max relative difference %.3g", error));
+    }
+
+    private static double time(int runs, Runnable kernel) {
+        for (int r = 0; r < runs; r++) {
+            kernel.run();
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < runs; r++) {
+            kernel.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / runs;
+    }
+}
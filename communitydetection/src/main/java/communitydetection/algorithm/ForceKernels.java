@@ -0,0 +1,172 @@
+package communitydetection.algorithm;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+
+/**
+ * <p>
+ * The force computations of <code>ForceLayout</code>, on coordinates stored as
+ * a structure of arrays: the x and the y of every vertex in two arrays, and
+ * the displacement of every vertex in two more.
+ * </p>
+ * <p>
+ * The repulsion, which takes almost all the time, and the attraction along
+ * the rows of a <code>CompactGraph</code> use <code>VectorKernels</code> when
+ * the Vector API is available, that is when the multi-release jar runs on
+ * Java 17 or later with <code>--add-modules jdk.incubator.vector</code>;
+ * otherwise they use the scalar loops of this class. The attraction along rows
+ * read through a cursor and the displacement, which is limited by the memory,
+ * are always scalar.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+class ForceKernels {
+
+    /**
+     * Avoids dividing by zero when two vertices are in the same place.
+     */
+    static final double EPSILON = 1e-9;
+
+    private ForceKernels() {
+    }
+
+    /**
+     * Adds to the displacement of every vertex the repulsion of all the others,
+     * of magnitude <code>k * k / d</code> at distance <code>d</code>.
+     *
+     * @param x  The x of every vertex
+     * @param y  The y of every vertex
+     * @param dx The x of the displacement of every vertex
+     * @param dy The y of the displacement of every vertex
+     * @param n  The number of vertices
+     * @param k2 The square of the ideal distance between two vertices
+     */
+    static void repulsion(double[] x, double[] y, double[] dx, double[] dy, int n, double k2) {
+        if (VectorKernels.AVAILABLE)
+            VectorKernels.repulsion(x, y, dx, dy, n, k2);
+        else
+            scalarRepulsion(x, y, dx, dy, n, k2);
+    }
+
+    /**
+     * The scalar version of <code>repulsion</code>.
+     */
+    static void scalarRepulsion(double[] x, double[] y, double[] dx, double[] dy, int n, double k2) {
+        for (int i = 0; i < n; i++) {
+            double xi = x[i];
+            double yi = y[i];
+            double sx = 0;
+            double sy = 0;
+            for (int j = 0; j < n; j++) {
+                double ddx = xi - x[j];
+                double ddy = yi - y[j];
+                double f = k2 / (ddx * ddx + ddy * ddy + EPSILON);
+                sx += ddx * f;
+                sy += ddy * f;
+            }
+            dx[i] += sx;
+            dy[i] += sy;
+        }
+    }
+
+    /**
+     * Adds to the displacement of every vertex the attraction of its
+     * neighbours, of magnitude <code>w * d * d / k</code> at distance
+     * <code>d</code> for an edge of weight <code>w</code>.
+     *
+     * @param cursor A cursor of the graph
+     * @param x      The x of every vertex
+     * @param y      The y of every vertex
+     * @param dx     The x of the displacement of every vertex
+     * @param dy     The y of the displacement of every vertex
+     * @param n      The number of vertices
+     * @param k      The ideal distance between two vertices
+     */
+    static void attraction(AdjacencyGraph.Cursor cursor, double[] x, double[] y, double[] dx, double[] dy, int n,
+            double k) {
+        for (int v = 0; v < n; v++) {
+            double sx = 0;
+            double sy = 0;
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                int t = cursor.getTarget();
+                double ddx = x[v] - x[t];
+                double ddy = y[v] - y[t];
+                double f = cursor.getWeight() * Math.sqrt(ddx * ddx + ddy * ddy) / k;
+                sx += ddx * f;
+                sy += ddy * f;
+            }
+            dx[v] -= sx;
+            dy[v] -= sy;
+        }
+    }
+
+    /**
+     * Adds to the displacement of every vertex the attraction of its
+     * neighbours, reading the rows from the arrays of a
+     * <code>CompactGraph</code>.
+     *
+     * @param offsets The start of the row of every vertex
+     * @param targets The neighbours of all the vertices, row after row
+     * @param weights The weights of the entries of <code>targets</code>
+     * @param x       The x of every vertex
+     * @param y       The y of every vertex
+     * @param dx      The x of the displacement of every vertex
+     * @param dy      The y of the displacement of every vertex
+     * @param n       The number of vertices
+     * @param k       The ideal distance between two vertices
+     * @see #attraction(AdjacencyGraph.Cursor, double[], double[], double[],
+     *      double[], int, double)
+     */
+    static void attraction(int[] offsets, int[] targets, double[] weights, double[] x, double[] y, double[] dx,
+            double[] dy, int n, double k) {
+        if (VectorKernels.AVAILABLE)
+            VectorKernels.attraction(offsets, targets, weights, x, y, dx, dy, n, k);
+        else
+            scalarAttraction(offsets, targets, weights, x, y, dx, dy, n, k);
+    }
+
+    /**
+     * The scalar version of <code>attraction</code> on the arrays of the rows.
+     */
+    static void scalarAttraction(int[] offsets, int[] targets, double[] weights, double[] x, double[] y,
+            double[] dx, double[] dy, int n, double k) {
+        for (int v = 0; v < n; v++) {
+            double sx = 0;
+            double sy = 0;
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int t = targets[e];
+                double ddx = x[v] - x[t];
+                double ddy = y[v] - y[t];
+                double f = weights[e] * Math.sqrt(ddx * ddx + ddy * ddy) / k;
+                sx += ddx * f;
+                sy += ddy * f;
+            }
+            dx[v] -= sx;
+            dy[v] -= sy;
+        }
+    }
+
+    /**
+     * Moves every vertex along its displacement, by at most the temperature,
+     * keeping it inside the frame.
+     *
+     * @param x           The x of every vertex
+     * @param y           The y of every vertex
+     * @param dx          The x of the displacement of every vertex
+     * @param dy          The y of the displacement of every vertex
+     * @param n           The number of vertices
+     * @param temperature The maximum movement
+     * @param width       The width of the frame
+     * @param height      The height of the frame
+     */
+    static void displace(double[] x, double[] y, double[] dx, double[] dy, int n, double temperature, double width,
+            double height) {
+        for (int i = 0; i < n; i++) {
+            double length = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+            double s = Math.min(length, temperature) / (length + EPSILON);
+            x[i] = Math.min(width, Math.max(0, x[i] + dx[i] * s));
+            y[i] = Math.min(height, Math.max(0, y[i] + dy[i] * s));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package communitydetection.algorithm;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+
+/**
+ * <p>
+ * Fruchterman-Reingold algorithm on an <code>AdjacencyGraph</code>, such as a
+ * <code>CompactGraph</code> or a <code>CompressedGraph</code>, working only on
+ * arrays of coordinates instead of the maps of points of jgrapht.
+ * </p>
+ * <p>
+ * At every iteration every pair of vertices repels and every edge attracts its
+ * ends, proportionally to its weight; then every vertex moves along the sum of
+ * its forces by at most the temperature, which decreases linearly to 0. The
+ * repulsion is computed between all the pairs, so the algorithm is meant for
+ * graphs of up to some thousands of vertices, such as the communities of a
+ * larger graph, or for a few iterations that refine a layout. The rows of a
+ * <code>CompactGraph</code> are read directly from its arrays, the ones of
+ * the other graphs through a cursor.
+ * </p>
+ *
+ * @see FastFruchtermanReingold
+ * @author Filippo Bragato
+ */
+public class ForceLayout implements Function<AdjacencyGraph, double[][]> {
+
+    private int iterations;
+    private double width;
+    private double height;
+    private double initialTemperature;
+    private Random rng = new Random();
+
+    /**
+     * Constructor that sets the number of iterations and the frame.
+     *
+     * @param iterations The number of iterations
+     * @param width      The width of the frame
+     * @param height     The height of the frame
+     */
+    public ForceLayout(int iterations, double width, double height) {
+        this.iterations = iterations;
+        this.width = width;
+        this.height = height;
+        this.initialTemperature = Math.min(width, height) / 10;
+    }
+
+    /**
+     * Sets the temperature of the first iteration, a tenth of the shorter side
+     * of the frame by default. A low temperature refines a layout without
+     * changing its shape.
+     *
+     * @param initialTemperature The maximum movement of a vertex in the first
+     *                           iteration
+     */
+    public void setInitialTemperature(double initialTemperature) {
+        this.initialTemperature = initialTemperature;
+    }
+
+    /**
+     * Sets the seed of the random initial positions.
+     *
+     * @param seed The seed
+     */
+    public void setSeed(long seed) {
+        rng = new Random(seed);
+    }
+
+    /**
+     * Places the vertices of a graph, starting from random positions.
+     *
+     * @param graph The graph
+     * @return The x of every vertex, followed by the y of every vertex
+     */
+    @Override
+    public double[][] apply(AdjacencyGraph graph) {
+        int n = graph.getVertexCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = rng.nextDouble() * width;
+            y[i] = rng.nextDouble() * height;
+        }
+        layout(graph, x, y);
+        return new double[][] { x, y };
+    }
+
+    /**
+     * Places the vertices of a graph, starting from the given positions.
+     *
+     * @param graph The graph
+     * @param x     The x of every vertex, replaced by the result
+     * @param y     The y of every vertex, replaced by the result
+     */
+    public void layout(AdjacencyGraph graph, double[] x, double[] y) {
+        int n = graph.getVertexCount();
+        if (n == 0)
+            return;
+        double k = Math.sqrt(width * height / n);
+        double[] dx = new double[n];
+        double[] dy = new double[n];
+        CompactGraph compact = graph instanceof CompactGraph ? (CompactGraph) graph : null;
+        AdjacencyGraph.Cursor cursor = compact == null ? graph.cursor() : null;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(dx, 0);
+            Arrays.fill(dy, 0);
+            ForceKernels.repulsion(x, y, dx, dy, n, k * k);
+            if (compact != null)
+                ForceKernels.attraction(compact.getOffsets(), compact.getTargets(), compact.getWeights(), x, y, dx,
+                        dy, n, k);
+            else
+                ForceKernels.attraction(cursor, x, y, dx, dy, n, k);
+            double temperature = initialTemperature * (iterations - iteration) / iterations;
+            ForceKernels.displace(x, y, dx, dy, n, temperature, width, height);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package communitydetection.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * Implementation of the label propagation algorithm of Raghavan, Albert and
+ * Kumara: every vertex starts with its own label and repeatedly takes the
+ * label with the largest total weight among its neighbours, until no label
+ * changes.
+ * </p>
+ * <p>
+ * Updates are semi-synchronous: the vertices are coloured so that adjacent
+ * vertices have different colours, then the vertices of a colour, which do not
+ * see each other, are updated in parallel by a pool of its own, one colour
+ * after the other. The result depends only on the seed, not on the number of
+ * threads. The labels of the neighbours of a vertex are sorted, so every
+ * thread needs a buffer only as long as the largest degree. Ties are broken
+ * in favour of the current label, then by a hash of the seed, the iteration,
+ * the vertex and the label.
+ * </p>
+ * <p>
+ * The partition is much rougher than the one of <code>Louvain</code>, but it
+ * is found in a few linear passes. It is not always finer than the one of
+ * <code>Louvain</code>: a label can spread over several communities, up to a
+ * single giant one, and a warm start of <code>Louvain</code> from it can only
+ * merge its communities further, never split them.
+ * </p>
+ *
+ * @see Louvain#apply(AbstractGraph, AbstractGraph)
+ * @author Filippo Bragato
+ */
+public class LabelPropagation implements
+        Function<AbstractGraph<Node, DefaultWeightedEdge>, DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>> {
+
+    private static final int MIN_CHUNK = 512;
+
+    private int maxIterations;
+    private long seed;
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Constructor that sets the maximum number of iterations and the seed used
+     * to break ties.
+     *
+     * @param maxIterations The maximum number of passes over all the vertices
+     * @param seed          The seed of the tie-breaking
+     */
+    public LabelPropagation(int maxIterations, long seed) {
+        this.maxIterations = maxIterations;
+        this.seed = seed;
+    }
+
+    /**
+     * Constructor that sets also the number of threads.
+     *
+     * @param maxIterations The maximum number of passes over all the vertices
+     * @param seed          The seed of the tie-breaking
+     * @param nThreads      The number of threads, each one with a buffer of 16
+     *                      bytes for each neighbour of the vertex with the
+     *                      largest degree
+     */
+    public LabelPropagation(int maxIterations, long seed, int nThreads) {
+        this(maxIterations, seed);
+        this.nThreads = Math.max(1, nThreads);
+    }
+
+    /**
+     * Creates a graph representing the communities of the given one.
+     *
+     * @param network The graph that will be divided in communities.
+     * @return The graph representing the communities of the given one.
+     */
+    @Override
+    public DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> apply(
+            AbstractGraph<Node, DefaultWeightedEdge> network) {
+        return detect(new CompactGraph(network)).getCommunityGraph();
+    }
+
+    /**
+     * Computes the label of every vertex of a graph. The result tells also
+     * whether the labels are stable, rather than the last ones before the
+     * maximum number of iterations.
+     *
+     * @param graph The graph in compact form
+     * @return The label of each vertex, the index of one of the vertices with
+     *         the same label, with the modularity of the partition
+     */
+    public DetectionResult detect(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] weights = graph.getWeights();
+
+        int[] label = new int[n];
+        for (int i = 0; i < n; i++) {
+            label[i] = i;
+        }
+        int[] colourStart = new int[n + 2];
+        int[] byColour = colour(graph, colourStart);
+
+        int maxDegree = 0;
+        for (int i = 0; i < n; i++) {
+            maxDegree = Math.max(maxDegree, graph.getDegree(i));
+        }
+        long[][] sorted = new long[nThreads][maxDegree];
+        double[][] runWeight = new double[nThreads][maxDegree];
+        boolean[] changed = new boolean[nThreads];
+
+        ForkJoinPool pool = nThreads > 1 ? new ForkJoinPool(nThreads) : null;
+        boolean converged = false;
+        try {
+            for (int iteration = 0; iteration < maxIterations && !converged; iteration++) {
+                int it = iteration;
+                for (int c = 0; colourStart[c + 1] > colourStart[c]; c++) {
+                    int from = colourStart[c];
+                    int size = colourStart[c + 1] - from;
+                    int workers = Math.min(nThreads, (size + MIN_CHUNK - 1) / MIN_CHUNK);
+                    List<Runnable> tasks = new ArrayList<>(workers);
+                    for (int w = 0; w < workers; w++) {
+                        int worker = w;
+                        int start = from + (int) ((long) size * w / workers);
+                        int end = from + (int) ((long) size * (w + 1) / workers);
+                        tasks.add(() -> {
+                            for (int i = start; i < end; i++) {
+                                int v = byColour[i];
+                                // vertices of the same colour are not adjacent, no neighbour changes meanwhile
+                                int best = bestLabel(v, it, offsets, targets, weights, label, sorted[worker],
+                                        runWeight[worker]);
+                                if (best != label[v]) {
+                                    label[v] = best;
+                                    changed[worker] = true;
+                                }
+                            }
+                        });
+                    }
+                    runAll(pool, tasks);
+                }
+                converged = true;
+                for (int w = 0; w < nThreads; w++) {
+                    converged &= !changed[w];
+                    changed[w] = false;
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+        return new DetectionResult(label, modularity(offsets, targets, weights, label), converged, graph);
+    }
+
+    /**
+     * Computes the modularity of a partition, with the degree of a vertex
+     * equal to the sum of its row.
+     *
+     * @param label The label of each vertex, the index of a vertex
+     * @return The modularity
+     */
+    private static double modularity(int[] offsets, int[] targets, double[] weights, int[] label) {
+        int n = label.length;
+        double[] labelDegree = new double[n];
+        double internal = 0;
+        double total = 0;
+        for (int v = 0; v < n; v++) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                if (label[targets[k]] == label[v])
+                    internal += weights[k];
+                labelDegree[label[v]] += weights[k];
+                total += weights[k];
+            }
+        }
+        if (total == 0)
+            return 0;
+        double expected = 0;
+        for (int l = 0; l < n; l++) {
+            expected += labelDegree[l] * labelDegree[l];
+        }
+        return internal / total - expected / (total * total);
+    }
+
+    /**
+     * Runs the tasks of a colour, on the pool if there are more than one.
+     */
+    private static void runAll(ForkJoinPool pool, List<Runnable> tasks) {
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+        List<ForkJoinTask<?>> submitted = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            submitted.add(pool.submit(task));
+        }
+        for (ForkJoinTask<?> task : submitted) {
+            task.join();
+        }
+    }
+
+    /**
+     * Finds the label with the largest weight among the neighbours of a vertex.
+     * The labels are sorted together with the position of their entry, so the
+     * weights of a label are summed in the order of the row.
+     *
+     * @param v         The vertex
+     * @param sorted    A buffer as long as the largest degree
+     * @param runWeight A buffer as long as the largest degree
+     * @return The new label of the vertex
+     */
+    private int bestLabel(int v, int iteration, int[] offsets, int[] targets, double[] weights, int[] label,
+            long[] sorted, double[] runWeight) {
+        int start = offsets[v];
+        int degree = offsets[v + 1] - start;
+        for (int k = 0; k < degree; k++) {
+            sorted[k] = (long) label[targets[start + k]] << 32 | k;
+        }
+        Arrays.sort(sorted, 0, degree);
+        // every run of equal labels becomes one entry, holding the label, and its weight
+        int nRuns = 0;
+        double maxWeight = 0;
+        double ownWeight = 0;
+        for (int i = 0; i < degree;) {
+            long l = sorted[i] >>> 32;
+            double w = 0;
+            for (; i < degree && sorted[i] >>> 32 == l; i++) {
+                w += weights[start + (int) sorted[i]];
+            }
+            sorted[nRuns] = l;
+            runWeight[nRuns++] = w;
+            maxWeight = Math.max(maxWeight, w);
+            if (l == label[v])
+                ownWeight = w;
+        }
+        // the current label keeps its place, the other ties are decided by the hash
+        if (ownWeight >= maxWeight)
+            return label[v];
+        int best = -1;
+        long bestHash = 0;
+        for (int r = 0; r < nRuns; r++) {
+            if (runWeight[r] != maxWeight)
+                continue;
+            long h = hash(iteration, v, (int) sorted[r]);
+            if (best == -1 || h < bestHash) {
+                best = (int) sorted[r];
+                bestHash = h;
+            }
+        }
+        return best;
+    }
+
+    private long hash(int iteration, int v, int l) {
+        long z = seed + 0x9e3779b97f4a7c15L * (((long) iteration << 32 | v) ^ mix((long) l));
+        return mix(z);
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Colours the vertices greedily, in the order of their indices, so that no
+     * two adjacent vertices have the same colour.
+     *
+     * @param graph       The graph
+     * @param colourStart Filled with the start of each colour in the returned
+     *                    array; after the last colour the starts stay equal
+     * @return The vertices sorted by colour
+     */
+    private int[] colour(CompactGraph graph, int[] colourStart) {
+        int n = graph.getVertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int[] colour = new int[n];
+        int[] usedBy = new int[n + 1];
+        Arrays.fill(colour, -1);
+        Arrays.fill(usedBy, -1);
+        for (int v = 0; v < n; v++) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                if (colour[targets[k]] >= 0)
+                    usedBy[colour[targets[k]]] = v;
+            }
+            int c = 0;
+            while (usedBy[c] == v) {
+                c++;
+            }
+            colour[v] = c;
+            colourStart[c + 1]++;
+        }
+        for (int c = 0; c <= n; c++) {
+            colourStart[c + 1] += colourStart[c];
+        }
+        int[] next = colourStart.clone();
+        int[] byColour = new int[n];
+        for (int v = 0; v < n; v++) {
+            byColour[next[colour[v]]++] = v;
+        }
+        return byColour;
+    }
+}
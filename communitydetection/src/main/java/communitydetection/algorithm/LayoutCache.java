@@ -0,0 +1,329 @@
+package communitydetection.algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.DrawableView;
+import communitydetection.graphnodes.GraficNode;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * A <code>FastFruchtermanReingold</code> that remembers the layouts it has
+ * computed.
+ * </p>
+ * <p>
+ * A layout is identified by a fingerprint of the graph, made of the number of
+ * vertices, the number of edges and two order independent 64 bit hashes of the
+ * edges, where every edge is described by the positions of its ends in the
+ * vertex set and by its weight, and by the number of final iterations of the
+ * algorithm. The position and the community of every vertex are kept, indexed
+ * by the position of the vertex in the vertex set, in a bounded in-memory LRU
+ * cache and, optionally, in a directory, so that they survive the process. A
+ * graph hits the cache only if it is built adding its vertices in the same
+ * order, as happens when it is read again from the same source.
+ * </p>
+ * <p>
+ * All the methods can be called concurrently; two threads missing the same
+ * graph at the same time both compute it.
+ * </p>
+ *
+ * @see FastFruchtermanReingold
+ * @author Filippo Bragato
+ */
+public class LayoutCache implements
+        Function<DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge>, DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge>> {
+
+    private static final int MAGIC = 0x4c41594f;
+    private static final Logger LOGGER = Logger.getLogger(LayoutCache.class.getName());
+
+    private FastFruchtermanReingold layout;
+    private int finalIteration;
+    private File directory;
+    private Map<String, CachedLayout> memory;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * The layout of a graph: position and community of each vertex.
+     */
+    private static class CachedLayout {
+        private double[] x;
+        private double[] y;
+        private int[] communityId;
+
+        private CachedLayout(double[] x, double[] y, int[] communityId) {
+            this.x = x;
+            this.y = y;
+            this.communityId = communityId;
+        }
+    }
+
+    /**
+     * Constructor of a cache that keeps the layouts only in memory.
+     *
+     * @param finalIteration The number of final iteration of
+     *                       <code>FastFruchtermanReingold</code>
+     * @param capacity       The maximum number of layouts kept in memory
+     */
+    public LayoutCache(int finalIteration, int capacity) {
+        this(finalIteration, capacity, null);
+    }
+
+    /**
+     * Constructor of a cache that keeps the most recently used layouts in memory
+     * and all the layouts in the given directory.
+     *
+     * @param finalIteration The number of final iteration of
+     *                       <code>FastFruchtermanReingold</code>
+     * @param capacity       The maximum number of layouts kept in memory
+     * @param directory      The directory containing a file for each layout,
+     *                       <code>null</code> to keep the layouts only in memory
+     */
+    public LayoutCache(int finalIteration, int capacity, File directory) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.layout = new FastFruchtermanReingold(finalIteration);
+        this.finalIteration = finalIteration;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<String, CachedLayout>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLayout> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates a drawable graph, representing the given one, in which vertices are
+     * set according to Fruchterman-Reingold algorithm, reusing the stored layout
+     * if the graph has already been seen.
+     *
+     * @param net The graph that will be represented
+     * @return The drawable graph representing the given one
+     */
+    @Override
+    public DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge> apply(
+            DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net) {
+        String key = fingerprint(net);
+        CachedLayout entry = lookup(key, net.vertexSet().size());
+        if (entry == null) {
+            DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge> drNet = layout.apply(net);
+            int n = net.vertexSet().size();
+            entry = new CachedLayout(new double[n], new double[n], new int[n]);
+            int i = 0;
+            for (Node node : net.vertexSet()) {
+                GraficNode grafic = node.getGrafical();
+                entry.x[i] = grafic.getX();
+                entry.y[i] = grafic.getY();
+                entry.communityId[i] = grafic.getCommunityId();
+                i++;
+            }
+            store(key, entry);
+            return drNet;
+        }
+
+        DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge> drNet = new DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge>(
+                DefaultWeightedEdge.class);
+        int i = 0;
+        for (Node node : net.vertexSet()) {
+            GraficNode grafic = new GraficNode(node, entry.communityId[i]);
+            grafic.setX(entry.x[i]);
+            grafic.setY(entry.y[i]);
+            drNet.addVertex(grafic);
+            i++;
+        }
+        for (DefaultWeightedEdge edge : net.edgeSet()) {
+            drNet.addEdge(net.getEdgeSource(edge).getGrafical(), net.getEdgeTarget(edge).getGrafical());
+        }
+        return drNet;
+    }
+
+    /**
+     * Creates a drawable view of the given graph, in which vertices are set
+     * according to Fruchterman-Reingold algorithm, reusing the stored layout if
+     * the graph has already been seen.
+     *
+     * @param net The graph that will be represented
+     * @return The drawable view of the given graph
+     * @see DrawableView
+     */
+    public DrawableView applyView(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net) {
+        String key = fingerprint(net);
+        CachedLayout entry = lookup(key, net.vertexSet().size());
+        if (entry == null) {
+            DrawableView view = layout.applyView(net);
+            store(key, new CachedLayout(view.getX().clone(), view.getY().clone(), view.getCommunityId().clone()));
+            return view;
+        }
+        DrawableView view = new DrawableView(net);
+        System.arraycopy(entry.x, 0, view.getX(), 0, entry.x.length);
+        System.arraycopy(entry.y, 0, view.getY(), 0, entry.y.length);
+        System.arraycopy(entry.communityId, 0, view.getCommunityId(), 0, entry.communityId.length);
+        return view;
+    }
+
+    /**
+     * Gets the number of layouts found in memory or on disk since this cache was
+     * created.
+     *
+     * @return The number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of layouts computed since this cache was created.
+     *
+     * @return The number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Computes the key of a graph: the number of vertices and edges, two hashes
+     * of the edges and the parameters of the layout.
+     *
+     * @param net The graph
+     * @return The key of the graph, usable as a file name
+     */
+    private String fingerprint(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net) {
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>(net.vertexSet().size());
+        for (Node node : net.vertexSet()) {
+            index.put(node, index.size());
+        }
+        long h1 = 0, h2 = 0;
+        for (DefaultWeightedEdge edge : net.edgeSet()) {
+            int s = index.get(net.getEdgeSource(edge));
+            int t = index.get(net.getEdgeTarget(edge));
+            long ends = (long) Math.min(s, t) << 32 | Math.max(s, t);
+            long weight = Double.doubleToLongBits(net.getEdgeWeight(edge));
+            // summing the hashes makes the key independent of the order of the edges
+            h1 += mix(ends ^ mix(weight));
+            h2 += mix(mix(ends + 0x632be59bd9b4e019L) ^ weight);
+        }
+        return String.format("%x-%x-%016x%016x-%d", index.size(), net.edgeSet().size(), h1, h2, finalIteration);
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Looks for a layout in memory and then on disk, moving it in memory if it is
+     * found on disk.
+     *
+     * @param key The key of the graph
+     * @param n   The number of vertices of the graph
+     * @return The layout, <code>null</code> if it has never been computed
+     */
+    private CachedLayout lookup(String key, int n) {
+        CachedLayout entry;
+        synchronized (this) {
+            entry = memory.get(key);
+        }
+        if (entry == null && directory != null)
+            entry = read(new File(directory, key + ".layout"), n);
+        synchronized (this) {
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+                memory.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private void store(String key, CachedLayout entry) {
+        synchronized (this) {
+            memory.put(key, entry);
+        }
+        if (directory != null)
+            write(new File(directory, key + ".layout"), entry);
+    }
+
+    /**
+     * Reads a layout from disk.
+     *
+     * @param file The file containing the layout
+     * @param n    The expected number of vertices
+     * @return The layout, <code>null</code> if the file does not exist or is not
+     *         valid
+     */
+    private CachedLayout read(File file, int n) {
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != n)
+                return null;
+            CachedLayout entry = new CachedLayout(new double[n], new double[n], new int[n]);
+            for (int i = 0; i < n; i++) {
+                entry.x[i] = in.readDouble();
+                entry.y[i] = in.readDouble();
+                entry.communityId[i] = in.readInt();
+            }
+            return entry;
+        } catch (IOException e) {
+            // a truncated or unreadable file is a miss, it will be overwritten
+            return null;
+        }
+    }
+
+    /**
+     * Writes a layout on disk. The layout is written in a temporary file that is
+     * then renamed, so that readers never see a partial file.
+     *
+     * @param file  The file that will contain the layout
+     * @param entry The layout
+     */
+    private void write(File file, CachedLayout entry) {
+        File temp = null;
+        try {
+            directory.mkdirs();
+            temp = File.createTempFile("layout", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entry.x.length);
+                for (int i = 0; i < entry.x.length; i++) {
+                    out.writeDouble(entry.x[i]);
+                    out.writeDouble(entry.y[i]);
+                    out.writeInt(entry.communityId[i]);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the layout stays in memory, the disk is only a second level
+            LOGGER.log(Level.WARNING, "cannot write the layout " + file, e);
+            if (temp != null && !temp.delete() && temp.exists())
+                LOGGER.warning("cannot delete the temporary file " + temp);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package communitydetection.algorithm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+
+/**
+ * <p>
+ * The local moving phase of <code>Louvain</code>, where every community visited
+ * is merged as a whole into the neighbouring community that maximises the gain
+ * of modularity, working only on primitive arrays allocated once and reused
+ * for every graph.
+ * </p>
+ * <p>
+ * A community is identified by the index of one of its vertices and its members
+ * are kept in a linked list. When a community is visited the rows of its
+ * members are read once, through a cursor, so the graph can be in any form of
+ * <code>AdjacencyGraph</code>, and the weights towards every neighbouring
+ * community are accumulated in a dense array whose touched entries are
+ * listed, so that the gain is computed once for each neighbouring community
+ * rather than for each edge; the rows of a <code>CompactGraph</code> are read
+ * from its arrays, which is faster. The weighted degree of every community is
+ * cached and updated at each merge, as <code>Community</code> does: the sum of
+ * the degrees of the members minus the weight of the edges inside it.
+ * </p>
+ *
+ * @see LocalMoving
+ * @author Filippo Bragato
+ */
+class LocalMerging {
+
+    private AdjacencyGraph.Cursor cursor;
+    private CompactGraph compact;
+    private double resolution;
+    private int n;
+    private int[] label;
+    private int[] nextMember;
+    private int[] lastMember;
+    private double[] degree;
+    private double[] neighbourWeight;
+    private int[] mark;
+    private int[] touched;
+    private int[] order;
+    private int nOfOrder;
+    private int epoch = 0;
+
+    /**
+     * Allocates the buffers for graphs with at most the given number of
+     * vertices; <code>reset</code> grows them for larger graphs.
+     *
+     * @param capacity The number of vertices
+     */
+    LocalMerging(int capacity) {
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.label = new int[capacity];
+        this.nextMember = new int[capacity];
+        this.lastMember = new int[capacity];
+        this.degree = new double[capacity];
+        this.neighbourWeight = new double[capacity];
+        this.mark = new int[capacity];
+        this.touched = new int[capacity];
+        this.order = new int[capacity];
+        this.epoch = 0;
+    }
+
+    /**
+     * Puts every vertex of a graph in its own community.
+     *
+     * @param graph      The graph, the buffers grow if it has more vertices
+     *                   than they can hold
+     * @param resolution The resolution of the null model
+     */
+    void reset(AdjacencyGraph graph, double resolution) {
+        this.cursor = graph.cursor();
+        this.compact = graph instanceof CompactGraph ? (CompactGraph) graph : null;
+        this.resolution = resolution;
+        this.n = graph.getVertexCount();
+        if (label.length < n)
+            allocate(Math.max(n, label.length + label.length / 2));
+        for (int v = 0; v < n; v++) {
+            label[v] = v;
+            nextMember[v] = -1;
+            lastMember[v] = v;
+            double d = 0;
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                d += cursor.getWeight();
+            }
+            degree[v] = d;
+        }
+    }
+
+    /**
+     * Gets the number of vertices of the graph given to <code>reset</code>.
+     *
+     * @return The number of vertices
+     */
+    int getVertexCount() {
+        return n;
+    }
+
+    /**
+     * Gets the community of a vertex.
+     *
+     * @param v The vertex
+     * @return The index identifying its community
+     */
+    int communityOf(int v) {
+        return label[v];
+    }
+
+    /**
+     * Merges a community into another one, as a move of the local moving phase
+     * would do.
+     *
+     * @param source      The community that disappears
+     * @param destination The community that receives the members of source
+     */
+    void merge(int source, int destination) {
+        if (source == destination)
+            return;
+        accumulate(source);
+        merge(source, destination, mark[destination] == epoch ? neighbourWeight[destination] : 0);
+    }
+
+    /**
+     * Lists the communities to visit, in the order of their indices, leaving
+     * out those made only of isolated vertices when <code>skipIsolated</code> is
+     * set.
+     *
+     * @param skipIsolated <code>true</code> to skip the communities without
+     *                     edges
+     */
+    void listCommunities(boolean skipIsolated) {
+        nOfOrder = 0;
+        for (int c = 0; c < n; c++) {
+            if (label[c] == c && !(skipIsolated && degree[c] == 0))
+                order[nOfOrder++] = c;
+        }
+    }
+
+    /**
+     * Shuffles the communities to visit.
+     *
+     * @param rng The source of randomness
+     */
+    void shuffle(Random rng) {
+        for (int i = nOfOrder - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+    }
+
+    /**
+     * Visits the listed communities once, merging each one into the neighbouring
+     * community with the largest positive gain of modularity. Merged communities
+     * are removed from the list, the others keep their position.
+     *
+     * @param m The sum of the weights of all the edges
+     * @return The number of merges
+     */
+    int sweep(double m) {
+        int merged = 0;
+        int kept = 0;
+        for (int i = 0; i < nOfOrder; i++) {
+            int c = order[i];
+            int nTouched = accumulate(c);
+            int best = -1;
+            double bestGain = 0;
+            for (int j = 0; j < nTouched; j++) {
+                int d = touched[j];
+                double gain = neighbourWeight[d] / m - resolution * (degree[d] * degree[c]) / (2 * m * m);
+                if (gain > bestGain) {
+                    best = d;
+                    bestGain = gain;
+                }
+            }
+            if (best == -1) {
+                order[kept++] = c;
+            } else {
+                merge(c, best, neighbourWeight[best]);
+                merged++;
+            }
+        }
+        nOfOrder = kept;
+        return merged;
+    }
+
+    /**
+     * Computes the modularity of the current partition with the degrees of the
+     * vertices, as <code>Louvain</code> defines it.
+     *
+     * @param m The sum of the weights of all the edges
+     * @return The modularity, scaled by the resolution in its null model term
+     */
+    double modularity(double m) {
+        // the accumulator holds the sum of the degrees of the members of each community
+        return modularity(cursor, n, label, neighbourWeight, m, resolution);
+    }
+
+    /**
+     * Computes the modularity of a partition of a graph as
+     * <code>modularity(m)</code> does.
+     *
+     * @param graph      The graph
+     * @param label      The community of every vertex, the index of a vertex
+     * @param m          The sum of the weights of all the edges
+     * @param resolution The resolution of the null model
+     * @return The modularity, scaled by the resolution in its null model term
+     */
+    static double modularity(AdjacencyGraph graph, int[] label, double m, double resolution) {
+        int n = graph.getVertexCount();
+        return modularity(graph.cursor(), n, label, new double[n], m, resolution);
+    }
+
+    private static double modularity(AdjacencyGraph.Cursor cursor, int n, int[] label, double[] sum, double m,
+            double resolution) {
+        if (m == 0)
+            return 0;
+        Arrays.fill(sum, 0, n, 0);
+        double internal = 0;
+        for (int v = 0; v < n; v++) {
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                double w = cursor.getWeight();
+                sum[label[v]] += w;
+                if (label[cursor.getTarget()] == label[v])
+                    internal += w;
+            }
+        }
+        double expected = 0;
+        for (int c = 0; c < n; c++) {
+            expected += sum[c] * sum[c];
+        }
+        return (internal - resolution * expected / (2 * m)) / (2 * m);
+    }
+
+    /**
+     * Copies the community of every vertex.
+     *
+     * @param destination The array receiving the index of the community of each
+     *                    vertex
+     */
+    void copyLabels(int[] destination) {
+        System.arraycopy(label, 0, destination, 0, n);
+    }
+
+    /**
+     * Accumulates the weights of the edges from the members of a community to
+     * every other community.
+     *
+     * @return The number of neighbouring communities, listed in touched
+     */
+    private int accumulate(int c) {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+        if (compact != null)
+            return accumulate(c, compact.getOffsets(), compact.getTargets(), compact.getWeights());
+        int nTouched = 0;
+        for (int v = c; v != -1; v = nextMember[v]) {
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                int d = label[cursor.getTarget()];
+                if (d == c)
+                    continue;
+                if (mark[d] != epoch) {
+                    mark[d] = epoch;
+                    neighbourWeight[d] = 0;
+                    touched[nTouched++] = d;
+                }
+                neighbourWeight[d] += cursor.getWeight();
+            }
+        }
+        return nTouched;
+    }
+
+    /**
+     * Accumulates the weights reading the rows from the arrays of a
+     * <code>CompactGraph</code>, after <code>accumulate(c)</code> has started a
+     * new epoch.
+     */
+    private int accumulate(int c, int[] offsets, int[] targets, double[] weights) {
+        int nTouched = 0;
+        for (int v = c; v != -1; v = nextMember[v]) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int d = label[targets[k]];
+                if (d == c)
+                    continue;
+                if (mark[d] != epoch) {
+                    mark[d] = epoch;
+                    neighbourWeight[d] = 0;
+                    touched[nTouched++] = d;
+                }
+                neighbourWeight[d] += weights[k];
+            }
+        }
+        return nTouched;
+    }
+
+    /**
+     * Moves the members of a community into another one.
+     */
+    private void merge(int source, int destination, double between) {
+        for (int v = source; v != -1; v = nextMember[v]) {
+            label[v] = destination;
+        }
+        nextMember[lastMember[destination]] = source;
+        lastMember[destination] = lastMember[source];
+        degree[destination] += degree[source] - between;
+    }
+}
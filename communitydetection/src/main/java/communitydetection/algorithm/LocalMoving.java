@@ -0,0 +1,337 @@
+package communitydetection.algorithm;
+
+import java.util.Arrays;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+
+/**
+ * <p>
+ * The local moving phase of the standard Louvain's algorithm on an
+ * <code>AdjacencyGraph</code>, working only on primitive arrays allocated
+ * once.
+ * </p>
+ * <p>
+ * Every vertex is removed from its community and put in the neighbouring
+ * community that maximises the gain of modularity, computed from the weights
+ * towards the neighbouring communities, accumulated in a dense array whose
+ * touched entries are listed, and from the total degree of each community,
+ * kept up to date at every move. The degree of a vertex is the sum of its row,
+ * so a loop of an aggregated graph must carry twice the weight of the edges
+ * inside the community it represents, as <code>aggregate</code> does.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+class LocalMoving {
+
+    private double resolution;
+    private int n;
+    private double totalWeight;
+    private int[] community;
+    private double[] communityDegree;
+    private double[] neighbourWeight;
+    private int[] mark;
+    private int[] touched;
+    private int epoch = 0;
+
+    /**
+     * Allocates the buffers for graphs with at most the given number of
+     * vertices.
+     *
+     * @param capacity   The maximum number of vertices
+     * @param resolution The resolution of the null model
+     */
+    LocalMoving(int capacity, double resolution) {
+        this.resolution = resolution;
+        this.community = new int[capacity];
+        this.communityDegree = new double[capacity];
+        this.neighbourWeight = new double[capacity];
+        this.mark = new int[capacity];
+        this.touched = new int[capacity];
+    }
+
+    /**
+     * Puts every vertex of a graph in its own community.
+     *
+     * @param graph  The graph, with at most <code>capacity</code> vertices
+     * @param cursor A cursor of the graph
+     */
+    void reset(AdjacencyGraph graph, AdjacencyGraph.Cursor cursor) {
+        n = graph.getVertexCount();
+        totalWeight = 0;
+        for (int v = 0; v < n; v++) {
+            double degree = 0;
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                degree += cursor.getWeight();
+            }
+            community[v] = v;
+            communityDegree[v] = degree;
+            totalWeight += degree;
+        }
+    }
+
+    /**
+     * Visits every vertex once, in the order of the indices, moving it to the
+     * best community.
+     *
+     * @param graph  The graph given to <code>reset</code>
+     * @param cursor A cursor of the graph
+     * @return The number of vertices that changed community
+     */
+    int sweep(AdjacencyGraph graph, AdjacencyGraph.Cursor cursor) {
+        int moved = 0;
+        for (int v = 0; v < n; v++) {
+            if (moveVertex(v, cursor))
+                moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Moves a vertex to the community that maximises the gain of modularity.
+     *
+     * @param v      The vertex
+     * @param cursor A cursor of the graph given to <code>reset</code>
+     * @return <code>true</code> if the vertex changed community
+     */
+    boolean moveVertex(int v, AdjacencyGraph.Cursor cursor) {
+        newEpoch();
+        int own = community[v];
+        mark[own] = epoch;
+        neighbourWeight[own] = 0;
+        int nTouched = 0;
+        double degree = 0;
+        cursor.moveTo(v);
+        while (cursor.next()) {
+            int t = cursor.getTarget();
+            double w = cursor.getWeight();
+            degree += w;
+            if (t == v)
+                continue;
+            int c = community[t];
+            if (mark[c] != epoch) {
+                mark[c] = epoch;
+                neighbourWeight[c] = 0;
+                touched[nTouched++] = c;
+            }
+            neighbourWeight[c] += w;
+        }
+        if (totalWeight == 0)
+            return false;
+
+        communityDegree[own] -= degree;
+        double scale = resolution * degree / totalWeight;
+        int best = own;
+        double bestGain = neighbourWeight[own] - scale * communityDegree[own];
+        for (int i = 0; i < nTouched; i++) {
+            int c = touched[i];
+            double gain = neighbourWeight[c] - scale * communityDegree[c];
+            if (gain > bestGain) {
+                best = c;
+                bestGain = gain;
+            }
+        }
+        communityDegree[best] += degree;
+        community[v] = best;
+        return best != own;
+    }
+
+    /**
+     * Computes the modularity of the current partition.
+     *
+     * @param graph  The graph given to <code>reset</code>
+     * @param cursor A cursor of the graph
+     * @return The modularity, scaled by the resolution in its null model term
+     */
+    double modularity(AdjacencyGraph graph, AdjacencyGraph.Cursor cursor) {
+        if (totalWeight == 0)
+            return 0;
+        double internal = 0;
+        for (int v = 0; v < n; v++) {
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                if (community[cursor.getTarget()] == community[v])
+                    internal += cursor.getWeight();
+            }
+        }
+        double expected = 0;
+        for (int c = 0; c < n; c++) {
+            expected += communityDegree[c] * communityDegree[c];
+        }
+        return internal / totalWeight - resolution * expected / (totalWeight * totalWeight);
+    }
+
+    /**
+     * Numbers the communities from 0, in order of first appearance.
+     *
+     * @return The number of communities
+     */
+    int renumber() {
+        int[] id = mark;
+        Arrays.fill(id, 0, n, -1);
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            int c = community[v];
+            if (id[c] == -1)
+                id[c] = count++;
+            community[v] = id[c];
+        }
+        // the marks have been used as ids, they are reset
+        Arrays.fill(mark, 0);
+        epoch = 0;
+        return count;
+    }
+
+    /**
+     * Gets the community of every vertex. The array is longer than the number
+     * of vertices and changes at every move.
+     *
+     * @return The community of each vertex
+     */
+    int[] getCommunity() {
+        return community;
+    }
+
+    /**
+     * Writes the graph of the communities, after <code>renumber</code>, row by
+     * row: the row of a community contains the communities linked to it, with
+     * the sum of the weights of the edges between them, and itself with the sum
+     * of the entries inside it.
+     * <p>
+     * The rows of the graph are always read in the order of the vertices, so
+     * that a graph on disk is streamed: a first pass counts the entries of every
+     * community, then the communities are taken in runs whose entries fit in
+     * <code>maxBufferedEntries</code>, and for each run a pass scatters the rows
+     * of its members in a buffer per community, which are then summed up. A
+     * community with more entries than that is summed up directly in a pass of
+     * its own.
+     * </p>
+     *
+     * @param graph              The graph given to <code>reset</code>
+     * @param cursor             A cursor of the graph
+     * @param nOfComm            The number of communities returned by
+     *                           <code>renumber</code>
+     * @param maxBufferedEntries The maximum number of entries scattered in
+     *                           memory at once
+     * @param sink               The receiver of the rows
+     * @throws Exception If the sink fails
+     */
+    <E extends Exception> void aggregate(AdjacencyGraph graph, AdjacencyGraph.Cursor cursor, int nOfComm,
+            int maxBufferedEntries, RowSink<E> sink) throws E {
+        long[] size = new long[nOfComm];
+        for (int v = 0; v < n; v++) {
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                size[community[v]]++;
+            }
+        }
+
+        int[] bufferTargets = new int[0];
+        double[] bufferWeights = new double[0];
+        double[] rowWeights = new double[16];
+        for (int first = 0; first < nOfComm;) {
+            if (size[first] > maxBufferedEntries) {
+                newEpoch();
+                int nTouched = 0;
+                for (int v = 0; v < n; v++) {
+                    if (community[v] != first)
+                        continue;
+                    cursor.moveTo(v);
+                    while (cursor.next()) {
+                        nTouched = accumulate(community[cursor.getTarget()], cursor.getWeight(), nTouched);
+                    }
+                }
+                rowWeights = emit(nTouched, rowWeights, sink);
+                first++;
+                continue;
+            }
+
+            int last = first + 1;
+            long total = size[first];
+            while (last < nOfComm && total + size[last] <= maxBufferedEntries) {
+                total += size[last++];
+            }
+            if (bufferTargets.length < total) {
+                int capacity = (int) Math.min(maxBufferedEntries, Math.max(total, 2L * bufferTargets.length));
+                bufferTargets = new int[capacity];
+                bufferWeights = new double[capacity];
+            }
+            int[] next = new int[last - first + 1];
+            for (int c = first; c < last; c++) {
+                next[c - first + 1] = next[c - first] + (int) size[c];
+            }
+            for (int v = 0; v < n; v++) {
+                int c = community[v];
+                if (c < first || c >= last)
+                    continue;
+                cursor.moveTo(v);
+                while (cursor.next()) {
+                    int k = next[c - first]++;
+                    bufferTargets[k] = community[cursor.getTarget()];
+                    bufferWeights[k] = cursor.getWeight();
+                }
+            }
+            // after the scatter the slice of a community ends where the next one starts
+            for (int c = first, from = 0; c < last; c++) {
+                newEpoch();
+                int nTouched = 0;
+                for (int k = from; k < next[c - first]; k++) {
+                    nTouched = accumulate(bufferTargets[k], bufferWeights[k], nTouched);
+                }
+                from = next[c - first];
+                rowWeights = emit(nTouched, rowWeights, sink);
+            }
+            first = last;
+        }
+    }
+
+    /**
+     * Starts a new accumulation of weights towards communities.
+     */
+    private void newEpoch() {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Adds a weight towards a community to the current accumulation.
+     *
+     * @return The new number of touched communities
+     */
+    private int accumulate(int c, double w, int nTouched) {
+        if (mark[c] != epoch) {
+            mark[c] = epoch;
+            neighbourWeight[c] = 0;
+            touched[nTouched++] = c;
+        }
+        neighbourWeight[c] += w;
+        return nTouched;
+    }
+
+    /**
+     * Gives the touched communities and their weights to the sink.
+     *
+     * @return The buffer of the weights, grown if needed
+     */
+    private <E extends Exception> double[] emit(int nTouched, double[] rowWeights, RowSink<E> sink) throws E {
+        if (rowWeights.length < nTouched)
+            rowWeights = new double[Math.max(nTouched, 2 * rowWeights.length)];
+        for (int i = 0; i < nTouched; i++) {
+            rowWeights[i] = neighbourWeight[touched[i]];
+        }
+        sink.accept(touched, rowWeights, nTouched);
+        return rowWeights;
+    }
+
+    /**
+     * Receives the rows of the graph of the communities.
+     *
+     * @param <E> The exception thrown by the sink
+     */
+    interface RowSink<E extends Exception> {
+        void accept(int[] targets, double[] weights, int count) throws E;
+    }
+}
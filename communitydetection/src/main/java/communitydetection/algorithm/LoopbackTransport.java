@@ -0,0 +1,74 @@
+package communitydetection.algorithm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A <code>Transport</code> between workers running in the same JVM, made of an
+ * unbounded queue for every ordered pair of workers. It is used to run
+ * <code>DistributedLouvain</code> on several threads and to test other
+ * transports against it.
+ *
+ * @author Filippo Bragato
+ */
+public class LoopbackTransport implements Transport {
+
+    private int rank;
+    private List<List<BlockingQueue<byte[]>>> queues;
+
+    private LoopbackTransport(int rank, List<List<BlockingQueue<byte[]>>> queues) {
+        this.rank = rank;
+        this.queues = queues;
+    }
+
+    /**
+     * Creates the transports of a group of workers connected to each other.
+     *
+     * @param size The number of workers
+     * @return The transport of each worker, indexed by rank
+     */
+    public static LoopbackTransport[] connect(int size) {
+        List<List<BlockingQueue<byte[]>>> queues = new ArrayList<>(size);
+        for (int from = 0; from < size; from++) {
+            List<BlockingQueue<byte[]>> row = new ArrayList<>(size);
+            for (int to = 0; to < size; to++) {
+                row.add(new LinkedBlockingQueue<>());
+            }
+            queues.add(row);
+        }
+        LoopbackTransport[] transports = new LoopbackTransport[size];
+        for (int rank = 0; rank < size; rank++) {
+            transports[rank] = new LoopbackTransport(rank, queues);
+        }
+        return transports;
+    }
+
+    @Override
+    public int getRank() {
+        return rank;
+    }
+
+    @Override
+    public int getSize() {
+        return queues.size();
+    }
+
+    @Override
+    public void send(int to, byte[] message) {
+        queues.get(rank).get(to).add(message);
+    }
+
+    @Override
+    public byte[] receive(int from) throws IOException {
+        try {
+            return queues.get(from).get(rank).take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for worker " + from);
+        }
+    }
+}
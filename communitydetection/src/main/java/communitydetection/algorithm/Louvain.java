@@ -1,16 +1,19 @@
 package communitydetection.algorithm;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.jgrapht.graph.AbstractGraph;
 import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphmanagement.GraphReduction;
+import communitydetection.graphmanagement.VertexReordering;
 import communitydetection.graphnodes.Community;
 import communitydetection.graphnodes.Node;
 
@@ -22,12 +25,21 @@ import communitydetection.graphnodes.Node;
 public class Louvain implements
         Function<AbstractGraph<Node, DefaultWeightedEdge>, DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>> {
     private int nOfItereations;
+    private long timeBudget = 0;
+    private CancellationToken cancellationToken = null;
+    private VertexReordering reordering = null;
+    private boolean reduce = false;
+    private boolean mergeTwins = false;
+    private double resolution = 1;
+    private Long seed = null;
+    private final LocalMerging kernel;
+    private Consumer<? super PartialPartition> progressListener = null;
 
     /**
      * Constructor of the original Louvain's algorithm.
      */
     public Louvain() {
-        nOfItereations = 1;
+        this(1, null);
     }
 
     /**
@@ -38,7 +50,135 @@ public class Louvain implements
      *                       be repeated.
      */
     public Louvain(int nOfItereations) {
+        this(nOfItereations, null);
+    }
+
+    /**
+     * Constructor of the anytime version of the algorithm. The original Louvain's
+     * algorithm will be repeated at most <code>nOfItereations</code> times, but
+     * the execution stops between two sweeps as soon as the time budget is
+     * exhausted, returning the best partition found so far.
+     * 
+     * @param nOfItereations The number of times original Louvain's algorithm will
+     *                       be repeated.
+     * @param timeBudget     The maximum time in milliseconds that a call to
+     *                       <code>apply</code> may take, 0 means no limit.
+     */
+    public Louvain(int nOfItereations, long timeBudget) {
+        this(nOfItereations, null);
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Constructor that reuses the buffers of the given local moving phase at
+     * every call, instead of allocating new ones; the instance must then be
+     * used by one thread at a time, such as the one owning the kernel.
+     * 
+     * @param nOfItereations The number of times original Louvain's algorithm will
+     *                       be repeated.
+     * @param kernel         The local moving phase, <code>null</code> to
+     *                       allocate one at every call.
+     * @see BatchExecutor#louvain(int, int)
+     */
+    Louvain(int nOfItereations, LocalMerging kernel) {
         this.nOfItereations = nOfItereations;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Sets the token used to stop the algorithm from another thread. When the
+     * token is cancelled <code>apply</code> returns the best partition found so
+     * far.
+     * 
+     * @param cancellationToken The token to observe, <code>null</code> to remove
+     *                          it.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Sets the receiver of the intermediate results: the partition after every
+     * sweep that merges some communities and at the end of every repetition.
+     * The listener is called by the thread running <code>apply</code>, which
+     * waits for it, and computing the modularity of every sweep costs about as
+     * much as a sweep.
+     * 
+     * @param progressListener The receiver, <code>null</code> to remove it.
+     * @see PartitionPublisher
+     */
+    public void setProgressListener(Consumer<? super PartialPartition> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Sets the resolution of the null model. Values larger than 1 favour more
+     * and smaller communities, values smaller than 1 fewer and larger ones.
+     * 
+     * @param resolution The resolution, 1 for the modularity of Newman and
+     *                   Girvan.
+     */
+    public void setResolution(double resolution) {
+        if (!(resolution > 0))
+            throw new IllegalArgumentException("resolution must be positive");
+        this.resolution = resolution;
+    }
+
+    /**
+     * Gets the resolution of the null model.
+     * 
+     * @return The resolution
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Sets the seed of the random order in which the communities are visited,
+     * so that every detection on the same graph gives the same partition.
+     * 
+     * @param seed The seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the strategy used to renumber the vertices before the detection. The
+     * communities are created, and visited in the first repetition, in the new
+     * order, so that consecutive moves touch nearby memory; the following
+     * repetitions visit them in random order as usual.
+     * 
+     * @param reordering The strategy, <code>null</code> to keep the order of the
+     *                   vertex set and visit the communities in random order.
+     * @see VertexReordering
+     */
+    public void setReordering(VertexReordering reordering) {
+        this.reordering = reordering;
+    }
+
+    /**
+     * Enables the reduction of the graph before the detection: isolated vertices
+     * are never visited and leaves are merged into their neighbour, as their
+     * first move would do, before the first sweep. With a resolution of at most
+     * 1 leaves are in the community of their neighbour in every optimal
+     * partition, but merging them earlier changes the order of the greedy
+     * moves, so the result can differ slightly; with a larger resolution a leaf
+     * may be better alone, so leaves are not merged. Optionally twins are
+     * merged too, which is a heuristic. The sweeps run on the graph folded by
+     * the reduction, so the edges of a leaf or of a twin are not read again
+     * at every visit of its community.
+     * 
+     * @param reduce     <code>true</code> to skip isolated vertices and merge
+     *                   leaves.
+     * @param mergeTwins <code>true</code> to merge also vertices with the same
+     *                   neighbours, ignored if <code>reduce</code> is
+     *                   <code>false</code>.
+     * @see GraphReduction
+     */
+    public void setReduction(boolean reduce, boolean mergeTwins) {
+        this.reduce = reduce;
+        this.mergeTwins = reduce && mergeTwins;
     }
 
     /**
@@ -50,105 +190,250 @@ public class Louvain implements
     @Override
     public DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> apply(
             AbstractGraph<Node, DefaultWeightedEdge> network) {
+        return detect(network, null).getCommunityGraph();
+    }
+
+    /**
+     * Creates a graph representing the communities of the given one, starting
+     * from a given partition instead of a community for each node. Since
+     * communities are only merged, the result is a coarsening of the initial
+     * partition, which must therefore be finer than the expected result, such
+     * as the one found with a larger resolution.
+     * 
+     * @param network      The graph that will be divided in communities.
+     * @param communityNet The graph of the initial communities of network,
+     *                     <code>null</code> to start from a community for each
+     *                     node.
+     * @return The graph representing the communities of the given one.
+     */
+    public DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> apply(
+            AbstractGraph<Node, DefaultWeightedEdge> network,
+            AbstractGraph<Community, DefaultWeightedEdge> communityNet) {
+        return detect(network, communityNet).getCommunityGraph();
+    }
+
+    /**
+     * Divides the given graph in communities, telling also the modularity of the
+     * partition and whether all the repetitions were completed, or the execution
+     * was stopped by the time budget or by the cancellation token.
+     * 
+     * @param network The graph that will be divided in communities.
+     * @return The communities, in the order of the vertex set if no reordering
+     *         is set.
+     */
+    public DetectionResult detect(AbstractGraph<Node, DefaultWeightedEdge> network) {
+        return detect(network, null);
+    }
+
+    /**
+     * Divides the given graph in communities starting from a given partition,
+     * as <code>apply(network, communityNet)</code> does.
+     * 
+     * @param network      The graph that will be divided in communities.
+     * @param communityNet The graph of the initial communities of network,
+     *                     <code>null</code> to start from a community for each
+     *                     node.
+     * @return The communities, in the order of the vertex set if no reordering
+     *         is set.
+     */
+    public DetectionResult detect(AbstractGraph<Node, DefaultWeightedEdge> network,
+            AbstractGraph<Community, DefaultWeightedEdge> communityNet) {
         double m = initEdgesWeight(network);
-        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> defNet = null;
-        double maxMod = -1;
-        for (int iteration = 0; iteration < nOfItereations; iteration++) {
-            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net = makeCommunity(network);
-            ArrayList<Community> community = new ArrayList<>(net.vertexSet());
-
-            Random rng = new Random();
-            Collections.shuffle(community, rng);
-            boolean converged = false;
-
-            while (!converged) {
-                converged = true;
-                for (int i_c = 0; i_c < community.size(); i_c++) {
-
-                    int nEdge = net.degreeOf(community.get(i_c));
-                    if (nEdge != 0) {
-
-                        double[] variationOfModularity = new double[nEdge];
-                        ArrayList<Community> neighbors = getNeighbors(net, community.get(i_c));
-
-                        for (int i_n = 0; i_n < neighbors.size(); i_n++) {
-                            double sigma_tot = neighbors.get(i_n).getTotalWeightedDegree();
-                            double k_i = community.get(i_c).getTotalWeightedDegree();
-                            double k_i_in = net.getEdgeWeight(net.getEdge(community.get(i_c), neighbors.get(i_n)));
-                            variationOfModularity[i_n] = k_i_in / m - (sigma_tot * k_i) / (2 * m * m);
-                        }
-                        int max_position = 0;
-                        double max_modularity = variationOfModularity[0];
-                        for (int i = 1; i < variationOfModularity.length; i++) {
-                            if (variationOfModularity[i] > max_modularity) {
-                                max_position = i;
-                                max_modularity = variationOfModularity[i];
-                            }
-                        }
-                        if (max_modularity > 0) {
-                            converged = false;
-                            Community destination = neighbors.remove(max_position);
-                            for (Community n : neighbors) {
-                                if (net.getEdge(destination, n) == null) {
-                                    net.addEdge(destination, n);
-                                    net.setEdgeWeight(destination, n,
-                                            net.getEdgeWeight(net.getEdge(community.get(i_c), n)));
-                                } else {
-                                    double w = net.getEdgeWeight(net.getEdge(community.get(i_c), n))
-                                            + net.getEdgeWeight(net.getEdge(destination, n));
-                                    net.setEdgeWeight(destination, n, w);
-                                }
-                            }
-                            destination.addNode((Node) community.get(i_c));
-                            double weightedDegree = destination.getTotalWeightedDegree()
-                                    + community.get(i_c).getTotalWeightedDegree()
-                                    - net.getEdgeWeight(net.getEdge(community.get(i_c), destination));
-                            destination.setTotalWeightedDegree(weightedDegree);
-                            net.removeVertex(community.remove(i_c));
-                        }
-                    }
+        CompactGraph compact = compact(network);
+        int[] initial = communityNet == null ? null : initialCommunities(compact, communityNet);
+        return detect(compact, initial, m);
+    }
+
+    /**
+     * Divides in communities a graph whose rows are read through a cursor, such
+     * as a <code>CompressedGraph</code>, without copying it. The vertices keep
+     * their numbering, so the reordering is not applied; the reduction is
+     * applied only to a <code>CompactGraph</code>.
+     * 
+     * @param graph The graph that will be divided in communities.
+     * @return The communities, in the order of the vertices of the graph; the
+     *         graph of the communities is known only if the graph is a
+     *         <code>CompactGraph</code> built from a graph of nodes.
+     */
+    public DetectionResult detect(AdjacencyGraph graph) {
+        // every edge is in the rows of both its ends, a loop only once
+        double m = 0;
+        AdjacencyGraph.Cursor cursor = graph.cursor();
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                m += cursor.getTarget() == v ? cursor.getWeight() : cursor.getWeight() / 2;
+            }
+        }
+        return detect(graph, null, m);
+    }
+
+    /**
+     * Copies a graph in the compact form used by <code>detect</code>,
+     * renumbering its vertices if a reordering is set.
+     * 
+     * @param network The graph that will be divided in communities.
+     * @return The graph in compact form.
+     */
+    CompactGraph compact(AbstractGraph<Node, DefaultWeightedEdge> network) {
+        CompactGraph compact = new CompactGraph(network);
+        return reordering == null ? compact : reordering.apply(compact);
+    }
+
+    /**
+     * Finds the communities of a graph.
+     * 
+     * @param graph   The graph that will be divided in communities.
+     * @param initial The index of a node of the initial community of each node,
+     *                such as the labels returned by a previous call,
+     *                <code>null</code> to start from a community for each node.
+     * @param m       The sum of the weight of all the edges in the graph.
+     * @return The label of each node, the index of a node of its community,
+     *         with the modularity of the partition.
+     */
+    DetectionResult detect(AdjacencyGraph graph, int[] initial, double m) {
+        long deadline = System.nanoTime() + timeBudget * 1000000;
+        CompactGraph compact = graph instanceof CompactGraph ? (CompactGraph) graph : null;
+        int n = graph.getVertexCount();
+        // the sweeps run on the folded graph, whose vertices are the communities made by the reduction
+        AdjacencyGraph swept = graph;
+        int[] reducedOf = null;
+        int[] vertexOf = null;
+        if (reduce && compact != null) {
+            // leaves belong with their neighbour in the optimum only if the resolution is at most 1
+            GraphReduction reduction = new GraphReduction(compact, resolution <= 1, mergeTwins);
+            reducedOf = new int[n];
+            CompactGraph folded = reduction.fold(compact, reducedOf);
+            vertexOf = new int[folded.getVertexCount()];
+            for (int i = 0; i < n; i++) {
+                if (reduction.getRepresentative(i) == i)
+                    vertexOf[reducedOf[i]] = i;
+            }
+            swept = folded;
+        }
+        LocalMerging kernel = this.kernel != null ? this.kernel : new LocalMerging(swept.getVertexCount());
+        int[] label = new int[n];
+        int[] best = new int[n];
+        double maxMod = Double.NEGATIVE_INFINITY;
+        Random rng = seed == null ? new Random() : new Random(seed);
+        boolean converged = true;
+        for (int iteration = 0; iteration < nOfItereations && converged; iteration++) {
+            kernel.reset(swept, resolution);
+            if (initial != null) {
+                for (int i = 0; i < initial.length; i++) {
+                    int u = reducedOf == null ? i : reducedOf[i];
+                    int v = reducedOf == null ? initial[i] : reducedOf[initial[i]];
+                    kernel.merge(kernel.communityOf(u), kernel.communityOf(v));
                 }
             }
-            if (iteration == 1) {
-                defNet = net;
-            } else {
-                Double modularity = getModulartity(network, community, m);
-                if (modularity > maxMod) {
-                    maxMod = modularity;
-                    defNet = net;
+            kernel.listCommunities(reducedOf != null);
+            if (reordering == null || iteration > 0)
+                kernel.shuffle(rng);
+
+            int sweeps = 0;
+            while (true) {
+                if (mustStop(deadline)) {
+                    converged = false;
+                    break;
                 }
+                if (kernel.sweep(m) == 0)
+                    break;
+                sweeps++;
+                if (progressListener != null) {
+                    double modularity = modularity(kernel, reducedOf, vertexOf, graph, m, label);
+                    publish(PartialPartition.Stage.SWEEP, iteration, sweeps, modularity, false, compact, label);
+                }
+            }
+            double modularity = modularity(kernel, reducedOf, vertexOf, graph, m, label);
+            boolean improved = modularity > maxMod;
+            if (improved) {
+                maxMod = modularity;
+                System.arraycopy(label, 0, best, 0, n);
             }
+            if (progressListener != null)
+                publish(PartialPartition.Stage.RESTART, iteration, sweeps, modularity, improved, compact, label);
         }
-        return defNet;
+        return new DetectionResult(best, maxMod, converged, compact);
     }
 
     /**
-     * Creates a graph of <code>Community</code> with the same nodes and edges of
-     * the one given
+     * Copies the community of every node of the original graph from the
+     * partition of the kernel and computes its modularity.
      * 
-     * @param network The original graph
-     * @return A graph made of <code>Community</code> with the same structure of
-     *         network.
+     * @param kernel    The local moving phase.
+     * @param reducedOf The vertex of the folded graph of each node,
+     *                  <code>null</code> if the kernel works on the original
+     *                  graph.
+     * @param vertexOf  The node of each vertex of the folded graph.
+     * @param graph     The original graph.
+     * @param m         The sum of the weight of all the edges in the graph.
+     * @param label     Receives the index of a node of the community of each
+     *                  node.
+     * @return The modularity of the partition.
      */
-    private DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> makeCommunity(
-            AbstractGraph<Node, DefaultWeightedEdge> network) {
-        Node[] oldNodes = network.vertexSet().toArray(new Node[0]);
-        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net = new DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>(
-                DefaultWeightedEdge.class);
-        Hashtable<Node, Community> newNodes = new Hashtable<Node, Community>(oldNodes.length);
-        for (int i = 0; i < oldNodes.length; i++) {
-            Community newNode = new Community(oldNodes[i], i);
-            newNodes.put(oldNodes[i], newNode);
-            net.addVertex(newNode);
+    private double modularity(LocalMerging kernel, int[] reducedOf, int[] vertexOf, AdjacencyGraph graph, double m,
+            int[] label) {
+        if (reducedOf == null) {
+            kernel.copyLabels(label);
+            return kernel.modularity(m);
+        }
+        for (int i = 0; i < label.length; i++) {
+            label[i] = vertexOf[kernel.communityOf(reducedOf[i])];
         }
-        DefaultWeightedEdge[] oldEdges = network.edgeSet().toArray(new DefaultWeightedEdge[0]);
-        for (int i = 0; i < oldEdges.length; i++) {
-            Node s = network.getEdgeSource(oldEdges[i]);
-            Node t = network.getEdgeTarget(oldEdges[i]);
-            net.addEdge(newNodes.get(s), newNodes.get(t));
-            net.setEdgeWeight(newNodes.get(s), newNodes.get(t), network.getEdgeWeight(oldEdges[i]));
+        // the degrees of the folded graph are those of Community, not the sums of the rows of the nodes
+        return LocalMerging.modularity(graph, label, m, resolution);
+    }
+
+    /**
+     * Passes a copy of the current partition to the progress listener.
+     */
+    private void publish(PartialPartition.Stage stage, int iteration, int sweep, double modularity, boolean best,
+            CompactGraph compact, int[] label) {
+        progressListener.accept(
+                new PartialPartition(stage, iteration, sweep, modularity, best, compact, label.clone()));
+    }
+
+    /**
+     * Finds, for every node, a node of the same initial community. Nodes missing
+     * from the partition are their own representative.
+     * 
+     * @param compact      The original graph in compact form.
+     * @param communityNet The graph of the initial communities.
+     * @return The index of the representative of each node.
+     */
+    private int[] initialCommunities(CompactGraph compact, AbstractGraph<Community, DefaultWeightedEdge> communityNet) {
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+        int[] representative = new int[compact.getVertexCount()];
+        for (int i = 0; i < representative.length; i++) {
+            index.put(compact.getVertex(i), i);
+            representative[i] = i;
+        }
+        for (Community initial : communityNet.vertexSet()) {
+            int first = -1;
+            for (Node node : initial.getNodes()) {
+                Integer i = index.get(node);
+                if (i == null)
+                    continue;
+                if (first == -1)
+                    first = i;
+                representative[i] = first;
+            }
         }
-        return net;
+        return representative;
+    }
+
+    /**
+     * Checks whether the time budget is exhausted or the execution has been
+     * cancelled.
+     * 
+     * @param deadline The value of <code>System.nanoTime()</code> after which the
+     *                 algorithm must stop, ignored if there is no time budget.
+     * @return <code>true</code> if the algorithm must stop.
+     */
+    private boolean mustStop(long deadline) {
+        if (cancellationToken != null && cancellationToken.isCancelled())
+            return true;
+        return timeBudget > 0 && System.nanoTime() - deadline >= 0;
     }
 
     /**
@@ -158,7 +443,7 @@ public class Louvain implements
      * @param network The original graph.
      * @return The sum of the weight of all the edges in the given graph.
      */
-    private double initEdgesWeight(AbstractGraph<Node, DefaultWeightedEdge> network) {
+    static double initEdgesWeight(AbstractGraph<Node, DefaultWeightedEdge> network) {
         Set<Node> nodes = network.vertexSet();
         for (Node node : nodes) {
             double weight = 0;
@@ -175,54 +460,4 @@ public class Louvain implements
         }
         return m;
     }
-
-    /**
-     * Gets all the nodes linked to a given one.
-     * 
-     * @param net The network containing the node.
-     * @param c   The node whose neighbors will be found.
-     * @return an ArrayList of node representing the neighbors of c.
-     */
-    private ArrayList<Community> getNeighbors(DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net,
-            Community c) {
-        Set<DefaultWeightedEdge> edges = net.edgesOf(c);
-        ArrayList<Community> neighbors = new ArrayList<Community>();
-        for (DefaultWeightedEdge edge : edges) {
-            if (net.getEdgeSource(edge) != c)
-                neighbors.add(net.getEdgeSource(edge));
-            else
-                neighbors.add(net.getEdgeTarget(edge));
-        }
-        return neighbors;
-    }
-
-    /**
-     * Calculates the modularity of the given graph with the given partition.
-     * 
-     * @param network     The graph.
-     * @param communities The partition.
-     * @param m The sum of the weight of all the edges in the given graph.
-     * @return The modularity according to the null model of Newman and Girvan 
-     */
-    private double getModulartity(AbstractGraph<Node, DefaultWeightedEdge> network, ArrayList<Community> communities,
-            double m) {
-        double modularity = 0;
-        for (Community community : communities) {
-            ArrayList<Node> nodes = community.getNodes();
-            for (int i = 0; i < nodes.size(); i++) {
-                for (int j = 0; j < nodes.size(); j++) {
-                    modularity -= nodes.get(i).getTotalWeightedDegree() * nodes.get(j).getTotalWeightedDegree()
-                            / (2 * m);
-                    DefaultWeightedEdge e = network.getEdge(nodes.get(i), nodes.get(j));
-                    if (e != null) {
-                        modularity += network.getEdgeWeight(e);
-                    }
-                }
-            }
-        }
-        modularity = modularity / (2 * m);
-        if (Double.isNaN(modularity))
-            modularity = 0;
-        return modularity;
-    }
 }
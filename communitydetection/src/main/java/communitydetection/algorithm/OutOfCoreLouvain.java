@@ -0,0 +1,202 @@
+package communitydetection.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphmanagement.DiskGraph;
+
+/**
+ * <p>
+ * Implementation of the standard, multi-level, Louvain's algorithm for graphs
+ * that do not fit in memory.
+ * </p>
+ * <p>
+ * The graph is read through an <code>AdjacencyGraph</code>, usually a
+ * <code>DiskGraph</code>: every sweep of the local moving phase streams its
+ * rows in order, and only the community of every vertex, the total degree of
+ * every community and a few other arrays of the same size, about 30 bytes per
+ * vertex, are kept in memory. After each level the graph of the communities is
+ * written, row by row, in a new file of the working directory, or in memory as
+ * a <code>CompactGraph</code> as soon as the graph it comes from, which has
+ * at least as many entries, has at most <code>maxInMemoryEntries</code>
+ * entries; from then on the algorithm runs entirely in memory. The rows of the
+ * graph of the communities are also built from passes in the order of the
+ * file, each one collecting at most <code>maxInMemoryEntries</code> entries.
+ * </p>
+ * <p>
+ * Unlike <code>Louvain</code>, vertices are visited in the order of their
+ * indices, which is the order of the file, and a community can lose vertices
+ * as well as gain them.
+ * </p>
+ *
+ * @see LocalMoving
+ * @author Filippo Bragato
+ */
+public class OutOfCoreLouvain implements Function<AdjacencyGraph, int[]> {
+
+    private File workDirectory;
+    private long maxInMemoryEntries;
+    private double resolution = 1;
+    private int maxSweeps = 32;
+
+    /**
+     * Constructor that sets where the intermediate graphs are written and when
+     * they are kept in memory instead.
+     *
+     * @param workDirectory      The directory of the temporary files, deleted
+     *                           before <code>apply</code> returns
+     * @param maxInMemoryEntries The number of entries, twice the number of edges,
+     *                           below which a graph of the communities is kept
+     *                           in memory, and the number of entries collected
+     *                           at once while writing one
+     */
+    public OutOfCoreLouvain(File workDirectory, long maxInMemoryEntries) {
+        this.workDirectory = workDirectory;
+        this.maxInMemoryEntries = Math.min(maxInMemoryEntries, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Sets the resolution of the null model.
+     *
+     * @param resolution The resolution, 1 for the modularity of Newman and
+     *                   Girvan.
+     */
+    public void setResolution(double resolution) {
+        if (!(resolution > 0))
+            throw new IllegalArgumentException("resolution must be positive");
+        this.resolution = resolution;
+    }
+
+    /**
+     * Sets the maximum number of sweeps of the local moving phase of each
+     * level; each sweep over a graph on disk reads the whole file.
+     *
+     * @param maxSweeps The maximum number of sweeps
+     */
+    public void setMaxSweeps(int maxSweeps) {
+        this.maxSweeps = Math.max(1, maxSweeps);
+    }
+
+    /**
+     * Divides the given graph in communities.
+     *
+     * @param graph The graph
+     * @return The community of every vertex, numbered from 0
+     * @throws UncheckedIOException If an intermediate graph cannot be written
+     */
+    @Override
+    public int[] apply(AdjacencyGraph graph) {
+        return detect(graph).getCommunities();
+    }
+
+    /**
+     * Divides the given graph in communities, telling also the modularity of the
+     * partition and whether every level stopped before the maximum number of
+     * sweeps.
+     *
+     * @param graph The graph
+     * @return The community of every vertex, numbered from 0, with the
+     *         modularity scaled by the resolution in its null model term
+     * @throws UncheckedIOException If an intermediate graph cannot be written
+     */
+    public DetectionResult detect(AdjacencyGraph graph) {
+        try {
+            return run(graph);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DetectionResult run(AdjacencyGraph graph) throws IOException {
+        int n = graph.getVertexCount();
+        int[] membership = new int[n];
+        for (int v = 0; v < n; v++) {
+            membership[v] = v;
+        }
+        LocalMoving kernel = new LocalMoving(n, resolution);
+        AdjacencyGraph level = graph;
+        File levelFile = null;
+        boolean converged = true;
+        try {
+            while (true) {
+                AdjacencyGraph.Cursor cursor = level.cursor();
+                kernel.reset(level, cursor);
+                boolean improved = false;
+                boolean settled = false;
+                for (int sweep = 0; sweep < maxSweeps && !settled; sweep++) {
+                    int moved = kernel.sweep(level, cursor);
+                    improved |= moved > 0;
+                    // the last moves of a sweep barely change the modularity, another pass costs a full read
+                    settled = moved <= level.getVertexCount() / 1000;
+                }
+                converged &= settled;
+                double modularity = kernel.modularity(level, cursor);
+                int nOfComm = kernel.renumber();
+                int[] community = kernel.getCommunity();
+                for (int v = 0; v < n; v++) {
+                    membership[v] = community[membership[v]];
+                }
+                if (!improved || nOfComm == level.getVertexCount())
+                    return new DetectionResult(membership, modularity, converged, null);
+
+                AdjacencyGraph next;
+                File nextFile = null;
+                if (level.getEntryCount() <= maxInMemoryEntries) {
+                    next = aggregateInMemory(kernel, level, cursor, nOfComm);
+                } else {
+                    nextFile = File.createTempFile("level", ".graph", workDirectory);
+                    boolean written = false;
+                    try (DiskGraph.Writer writer = new DiskGraph.Writer(nextFile, nOfComm)) {
+                        kernel.aggregate(level, cursor, nOfComm, (int) maxInMemoryEntries, writer::addRow);
+                        next = writer.finish();
+                        written = true;
+                    } finally {
+                        if (!written)
+                            nextFile.delete();
+                    }
+                }
+                release(level, levelFile);
+                level = next;
+                levelFile = nextFile;
+            }
+        } finally {
+            release(level, levelFile);
+        }
+    }
+
+    /**
+     * Builds the graph of the communities in memory.
+     */
+    private CompactGraph aggregateInMemory(LocalMoving kernel, AdjacencyGraph level, AdjacencyGraph.Cursor cursor,
+            int nOfComm) {
+        int[] offsets = new int[nOfComm + 1];
+        // the graph of the communities has at most as many entries as the level
+        int[] targets = new int[(int) level.getEntryCount()];
+        double[] weights = new double[targets.length];
+        int[] row = { 0 };
+        kernel.aggregate(level, cursor, nOfComm, (int) maxInMemoryEntries, (t, w, count) -> {
+            int start = offsets[row[0]];
+            System.arraycopy(t, 0, targets, start, count);
+            System.arraycopy(w, 0, weights, start, count);
+            offsets[++row[0]] = start + count;
+        });
+        int entries = offsets[nOfComm];
+        return new CompactGraph(offsets, Arrays.copyOf(targets, entries),
+                Arrays.copyOf(weights, entries));
+    }
+
+    /**
+     * Closes and deletes an intermediate graph written by this object.
+     */
+    private void release(AdjacencyGraph level, File levelFile) throws IOException {
+        if (levelFile == null)
+            return;
+        ((DiskGraph) level).close();
+        levelFile.delete();
+    }
+}
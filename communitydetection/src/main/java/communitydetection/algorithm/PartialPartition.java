@@ -0,0 +1,115 @@
+package communitydetection.algorithm;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphnodes.Community;
+
+/**
+ * An intermediate result of <code>Louvain</code>: the partition found after a
+ * sweep or at the end of a repetition, with its modularity. The graph of the
+ * communities is built only when it is requested.
+ *
+ * @see Louvain#setProgressListener(java.util.function.Consumer)
+ * @author Filippo Bragato
+ */
+public class PartialPartition {
+
+    /**
+     * The point of the algorithm at which a partition is published.
+     */
+    public enum Stage {
+        /**
+         * After a sweep over all the communities; the following sweeps can only
+         * merge them further.
+         */
+        SWEEP,
+        /**
+         * At the end of a repetition of the algorithm.
+         */
+        RESTART
+    }
+
+    private Stage stage;
+    private int restart;
+    private int sweep;
+    private double modularity;
+    private boolean best;
+    private CompactGraph graph;
+    private int[] label;
+    private DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet = null;
+
+    PartialPartition(Stage stage, int restart, int sweep, double modularity, boolean best, CompactGraph graph,
+            int[] label) {
+        this.stage = stage;
+        this.restart = restart;
+        this.sweep = sweep;
+        this.modularity = modularity;
+        this.best = best;
+        this.graph = graph;
+        this.label = label;
+    }
+
+    /**
+     * Gets the point of the algorithm at which this partition was published.
+     *
+     * @return The stage
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Gets the repetition that found this partition.
+     *
+     * @return The index of the repetition, from 0
+     */
+    public int getRestart() {
+        return restart;
+    }
+
+    /**
+     * Gets the number of sweeps that merged some communities, done by the
+     * repetition so far.
+     *
+     * @return The number of sweeps
+     */
+    public int getSweep() {
+        return sweep;
+    }
+
+    /**
+     * Gets the modularity of this partition.
+     *
+     * @return The modularity, scaled by the resolution in its null model term
+     */
+    public double getModularity() {
+        return modularity;
+    }
+
+    /**
+     * Tells whether this partition is the best one found so far, that is the
+     * one <code>apply</code> would return if it stopped now. Only the partitions
+     * at the end of a repetition can be the best.
+     *
+     * @return <code>true</code> if this partition is the best so far
+     */
+    public boolean isBest() {
+        return best;
+    }
+
+    /**
+     * Gets the graph of the communities of this partition, building it the
+     * first time.
+     *
+     * @return The graph representing the communities
+     */
+    public synchronized DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> getCommunityGraph() {
+        if (graph == null)
+            throw new IllegalStateException("the vertices of the graph are not known");
+        if (communityNet == null)
+            communityNet = graph.toCommunityGraph(label);
+        return communityNet;
+    }
+}
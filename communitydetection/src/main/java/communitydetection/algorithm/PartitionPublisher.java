@@ -0,0 +1,254 @@
+package communitydetection.algorithm;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Publishes the intermediate results of <code>Louvain</code> to the
+ * subscribers of a <code>java.util.concurrent.Flow</code>, each one on its own
+ * task, so that they can start working on a partition while the algorithm
+ * improves it.
+ * </p>
+ * <p>
+ * The algorithm never waits for the subscribers. A subscriber that is slower
+ * than the algorithm receives only the latest partition published after a
+ * sweep, since it supersedes the ones before it, but it receives every
+ * partition published at the end of a repetition, in order, so the best one is
+ * never lost.
+ * </p>
+ *
+ * <pre>
+ * PartitionPublisher publisher = new PartitionPublisher();
+ * publisher.consume(partial -&gt; show(partial.getCommunityGraph()));
+ * louvain.setProgressListener(publisher);
+ * louvain.apply(network);
+ * publisher.close();
+ * </pre>
+ *
+ * @author Filippo Bragato
+ */
+public class PartitionPublisher implements Flow.Publisher<PartialPartition>, Consumer<PartialPartition>,
+        AutoCloseable {
+
+    private final Executor executor;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * Constructor that delivers the partitions on the common pool.
+     */
+    public PartitionPublisher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that delivers the partitions on the given executor.
+     *
+     * @param executor The executor running the subscribers
+     */
+    public PartitionPublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a subscriber. If the publisher is already closed the subscriber is
+     * completed at once.
+     *
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super PartialPartition> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException();
+        Subscription subscription = new Subscription(subscriber);
+        synchronized (this) {
+            if (closed)
+                subscription.complete();
+            else
+                subscriptions.add(subscription);
+        }
+        subscription.start();
+    }
+
+    /**
+     * Subscribes a consumer that receives every partition delivered.
+     *
+     * @param consumer The consumer
+     * @return A future completed when the publisher is closed and the consumer
+     *         has received the last partition, or exceptionally if the consumer
+     *         throws
+     */
+    public CompletableFuture<Void> consume(Consumer<? super PartialPartition> consumer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        subscribe(new Flow.Subscriber<PartialPartition>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PartialPartition item) {
+                consumer.accept(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Offers a partition to every subscriber, without waiting for them.
+     *
+     * @param partial The partition
+     */
+    @Override
+    public void accept(PartialPartition partial) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(partial);
+        }
+    }
+
+    /**
+     * Completes every subscriber once it has received the partitions still
+     * pending. The partitions offered later are ignored.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * The partitions still to deliver to a subscriber, delivered one at a time
+     * by a task on the executor.
+     */
+    private final class Subscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super PartialPartition> subscriber;
+        private final ArrayDeque<PartialPartition> pending = new ArrayDeque<>();
+        private long demand = 0;
+        private boolean subscribed = false;
+        private boolean completed = false;
+        private boolean cancelled = false;
+        private boolean running = true;
+        private Throwable failure = null;
+
+        private Subscription(Flow.Subscriber<? super PartialPartition> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            executor.execute(this);
+        }
+
+        private synchronized void offer(PartialPartition partial) {
+            if (cancelled || completed)
+                return;
+            // a sweep is superseded by whatever comes after it
+            pending.removeIf(p -> p.getStage() == PartialPartition.Stage.SWEEP);
+            pending.add(partial);
+            schedule();
+        }
+
+        private synchronized void complete() {
+            completed = true;
+            schedule();
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0)
+                failure = new IllegalArgumentException("the request must be positive");
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            schedule();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            pending.clear();
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            if (!running) {
+                running = true;
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!subscribed) {
+                subscribed = true;
+                try {
+                    subscriber.onSubscribe(this);
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                }
+            }
+            while (true) {
+                PartialPartition next;
+                Throwable error;
+                synchronized (this) {
+                    error = failure;
+                    next = null;
+                    if (cancelled) {
+                        running = false;
+                        return;
+                    } else if (error != null) {
+                        cancel();
+                    } else if (!pending.isEmpty() && demand > 0) {
+                        next = pending.poll();
+                        if (demand != Long.MAX_VALUE)
+                            demand--;
+                    } else if (pending.isEmpty() && completed) {
+                        cancel();
+                    } else {
+                        running = false;
+                        return;
+                    }
+                }
+                if (error != null) {
+                    subscriber.onError(error);
+                    return;
+                } else if (next == null) {
+                    subscriber.onComplete();
+                    return;
+                }
+                try {
+                    subscriber.onNext(next);
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                }
+            }
+        }
+
+        private void fail(Throwable t) {
+            cancel();
+            subscriber.onError(t);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package communitydetection.algorithm;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.DrawableView;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * Detects the communities of a sequence of graphs, lays them out with
+ * <code>FastFruchtermanReingold</code> and renders them, running each of the
+ * three stages on its own threads, so that a graph is rendered while the next
+ * one is laid out and the communities of a third one are detected.
+ * </p>
+ * <p>
+ * At most <code>maxInFlight</code> graphs are in the pipeline at the same
+ * time: <code>submit</code> waits for a graph to leave it before accepting a
+ * new one, which bounds the work queued in front of every stage. Every
+ * detection thread reuses the buffers of its own <code>Louvain</code>, and
+ * every render thread its own renderer, for all the graphs it processes.
+ * </p>
+ *
+ * <pre>
+ * try (RenderPipeline&lt;BufferedImage&gt; pipeline = new RenderPipeline&lt;&gt;(1, 2, 1, 4, 5,
+ *         () -&gt; new FastDrawGraph(1000, 1000, 10)::draw)) {
+ *     for (DefaultUndirectedWeightedGraph&lt;Node, DefaultWeightedEdge&gt; net : graphs)
+ *         pipeline.submit(net).thenAccept(image -&gt; save(image));
+ * }
+ * </pre>
+ *
+ * @param <R> The type of the rendered result
+ * @see BatchExecutor
+ * @author Filippo Bragato
+ */
+public class RenderPipeline<R> implements AutoCloseable {
+
+    private ExecutorService detectExecutor;
+    private ExecutorService layoutExecutor;
+    private ExecutorService renderExecutor;
+    private Semaphore inFlight;
+    private ThreadLocal<Louvain> detector;
+    private FastFruchtermanReingold layout;
+    private ThreadLocal<Function<? super DrawableView, ? extends R>> renderer;
+
+    /**
+     * Constructor that starts the threads of the three stages.
+     *
+     * @param detectThreads  The number of threads detecting the communities
+     * @param layoutThreads  The number of threads laying out the graphs
+     * @param renderThreads  The number of threads rendering the graphs
+     * @param maxInFlight    The maximum number of graphs in the pipeline
+     * @param finalIteration The number of final iteration of
+     *                       <code>FastFruchtermanReingold</code>
+     * @param renderer       Creates the renderer used by a render thread; called
+     *                       once per thread
+     */
+    public RenderPipeline(int detectThreads, int layoutThreads, int renderThreads, int maxInFlight,
+            int finalIteration, Supplier<? extends Function<? super DrawableView, ? extends R>> renderer) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        this.detectExecutor = Executors.newFixedThreadPool(detectThreads);
+        this.layoutExecutor = Executors.newFixedThreadPool(layoutThreads);
+        this.renderExecutor = Executors.newFixedThreadPool(renderThreads);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.detector = ThreadLocal.withInitial(() -> new Louvain(1, new LocalMerging(0)));
+        this.layout = new FastFruchtermanReingold(finalIteration);
+        this.renderer = ThreadLocal.withInitial(renderer);
+    }
+
+    /**
+     * Puts a graph in the pipeline, waiting if it is full.
+     *
+     * @param net The graph
+     * @return The rendered graph, completed exceptionally if a stage fails
+     * @throws InterruptedException If the current thread is interrupted while
+     *                              waiting
+     */
+    public CompletableFuture<R> submit(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net)
+            throws InterruptedException {
+        inFlight.acquire();
+        CompletableFuture<R> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> detector.get().apply(net), detectExecutor)
+                    .thenApplyAsync(communityNet -> layout(net, communityNet), layoutExecutor)
+                    .thenApplyAsync(this::render, renderExecutor);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        result.whenComplete((r, e) -> inFlight.release());
+        return result;
+    }
+
+    private DrawableView layout(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net,
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet) {
+        return layout.applyView(net, communityNet);
+    }
+
+    private R render(DrawableView view) {
+        return renderer.get().apply(view);
+    }
+
+    /**
+     * Waits for the graphs in the pipeline and stops the threads. If the
+     * current thread is interrupted while waiting, the graphs still in the
+     * pipeline are interrupted.
+     */
+    @Override
+    public void close() {
+        // a stage hands its graphs to the next one before its threads end
+        ExecutorService[] stages = { detectExecutor, layoutExecutor, renderExecutor };
+        try {
+            for (ExecutorService stage : stages) {
+                stage.shutdown();
+                stage.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ExecutorService stage : stages) {
+                stage.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package communitydetection.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * Runs <code>Louvain</code> on the same graph for several resolutions.
+ * </p>
+ * <p>
+ * The graph is copied once in compact form and its weighted degrees are
+ * computed once. Resolutions are
+ * sorted in decreasing order and split in contiguous chains that run
+ * concurrently; inside a chain every detection starts from the partition found
+ * with the previous, larger, resolution, which is finer than the one that will
+ * be found, so only the first detection of each chain starts from scratch.
+ * </p>
+ *
+ * @see Louvain#setResolution(double)
+ * @author Filippo Bragato
+ */
+public class ResolutionSweep implements
+        Function<AbstractGraph<Node, DefaultWeightedEdge>, List<DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>>> {
+
+    private double[] resolutions;
+    private int nOfItereations;
+    private int nChains;
+
+    /**
+     * Constructor that sets the resolutions and the number of chains run
+     * concurrently.
+     *
+     * @param resolutions    The resolutions, in any order
+     * @param nOfItereations The number of times each detection is repeated
+     * @param nChains        The number of chains of detections run concurrently,
+     *                       1 to warm start every detection but the first
+     */
+    public ResolutionSweep(double[] resolutions, int nOfItereations, int nChains) {
+        for (double resolution : resolutions) {
+            if (!(resolution > 0))
+                throw new IllegalArgumentException("resolutions must be positive");
+        }
+        this.resolutions = resolutions.clone();
+        this.nOfItereations = nOfItereations;
+        this.nChains = Math.max(1, Math.min(nChains, resolutions.length));
+    }
+
+    /**
+     * Creates a graph of the communities of the given one for every resolution.
+     *
+     * @param network The graph that will be divided in communities
+     * @return The graphs of the communities, in the order of the resolutions
+     *         given to the constructor
+     */
+    @Override
+    public List<DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>> apply(
+            AbstractGraph<Node, DefaultWeightedEdge> network) {
+        double m = Louvain.initEdgesWeight(network);
+        CompactGraph compact = new CompactGraph(network);
+        Integer[] order = new Integer[resolutions.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> resolutions[i]).reversed());
+
+        // every chain sets its own positions
+        List<DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>> results = new ArrayList<>(
+                Collections.nCopies(resolutions.length, null));
+        IntStream.range(0, nChains).parallel().forEach(chain -> {
+            int from = order.length * chain / nChains;
+            int to = order.length * (chain + 1) / nChains;
+            Louvain lou = new Louvain(nOfItereations);
+            int[] previous = null;
+            for (int k = from; k < to; k++) {
+                lou.setResolution(resolutions[order[k]]);
+                DetectionResult result = lou.detect(compact, previous, m);
+                previous = result.getCommunities();
+                results.set(order[k], result.getCommunityGraph());
+            }
+        });
+        return results;
+    }
+}
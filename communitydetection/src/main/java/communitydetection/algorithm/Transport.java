@@ -0,0 +1,55 @@
+package communitydetection.algorithm;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * The channel through which the workers of a <code>DistributedLouvain</code>
+ * exchange messages.
+ * </p>
+ * <p>
+ * Every worker has a rank, from 0 to <code>getSize() - 1</code>, and a
+ * transport connected to all the others. Messages are arrays of bytes;
+ * messages sent from a worker to another one must be received in the order in
+ * which they were sent, and <code>send</code> must not wait for the receiver
+ * to call <code>receive</code>. Implementations over sockets or message
+ * brokers let the workers run in different processes.
+ * </p>
+ *
+ * @see LoopbackTransport
+ * @author Filippo Bragato
+ */
+public interface Transport {
+
+    /**
+     * Gets the rank of the worker owning this transport.
+     *
+     * @return The rank, 0 for the coordinator
+     */
+    public int getRank();
+
+    /**
+     * Gets the number of workers.
+     *
+     * @return The number of workers
+     */
+    public int getSize();
+
+    /**
+     * Sends a message to a worker.
+     *
+     * @param to      The rank of the receiver
+     * @param message The message, which must not be modified afterwards
+     * @throws IOException If the message cannot be sent
+     */
+    public void send(int to, byte[] message) throws IOException;
+
+    /**
+     * Waits for the next message from a worker.
+     *
+     * @param from The rank of the sender
+     * @return The message
+     * @throws IOException If the message cannot be received
+     */
+    public byte[] receive(int from) throws IOException;
+}
@@ -0,0 +1,35 @@
+package communitydetection.algorithm;
+
+/**
+ * The repulsion and the attraction of <code>ForceKernels</code> written with
+ * the Vector API, which this version of the class, compiled for Java 15, does
+ * not provide: it falls back to the scalar loops. The multi-release jar contains, for Java 17
+ * and later, the version in <code>src/main/java17</code>.
+ *
+ * @see ForceKernels
+ * @author Filippo Bragato
+ */
+class VectorKernels {
+
+    /**
+     * Tells whether the methods of this class can be called. Not a constant, so
+     * that the classes using it read the value of the version actually loaded.
+     */
+    static final boolean AVAILABLE = isAvailable();
+
+    private VectorKernels() {
+    }
+
+    private static boolean isAvailable() {
+        return false;
+    }
+
+    static void repulsion(double[] x, double[] y, double[] dx, double[] dy, int n, double k2) {
+        ForceKernels.scalarRepulsion(x, y, dx, dy, n, k2);
+    }
+
+    static void attraction(int[] offsets, int[] targets, double[] weights, double[] x, double[] y, double[] dx,
+            double[] dy, int n, double k) {
+        ForceKernels.scalarAttraction(offsets, targets, weights, x, y, dx, dy, n, k);
+    }
+}
@@ -0,0 +1,77 @@
+package communitydetection.graphmanagement;
+
+/**
+ * <p>
+ * An undirected weighted graph whose vertices are numbered from 0 to
+ * <code>getVertexCount() - 1</code> and whose neighbours are read one row at a
+ * time through a cursor.
+ * </p>
+ * <p>
+ * Every edge appears in the rows of both its ends; an entry whose target is
+ * the vertex of the row is a loop. The interface hides where the rows are
+ * stored, in memory or in a file, so the same algorithm can run on both.
+ * </p>
+ *
+ * @see CompactGraph
+ * @see DiskGraph
+ * @see CompressedGraph
+ * @author Filippo Bragato
+ */
+public interface AdjacencyGraph {
+
+    /**
+     * Reads the neighbours of one vertex at a time. A cursor is not thread
+     * safe, every thread must create its own.
+     */
+    public interface Cursor {
+        /**
+         * Moves the cursor before the first neighbour of a vertex.
+         *
+         * @param v The index of the vertex
+         */
+        void moveTo(int v);
+
+        /**
+         * Advances the cursor to the next neighbour of the current vertex.
+         *
+         * @return <code>false</code> if there are no more neighbours
+         */
+        boolean next();
+
+        /**
+         * Gets the index of the current neighbour.
+         *
+         * @return The index of the neighbour
+         */
+        int getTarget();
+
+        /**
+         * Gets the weight of the edge to the current neighbour.
+         *
+         * @return The weight of the edge
+         */
+        double getWeight();
+    }
+
+    /**
+     * Gets the number of vertices.
+     *
+     * @return The number of vertices
+     */
+    public int getVertexCount();
+
+    /**
+     * Gets the number of entries of all the rows, that is twice the number of
+     * edges that are not loops plus the number of loops.
+     *
+     * @return The number of entries
+     */
+    public long getEntryCount();
+
+    /**
+     * Creates a new cursor on this graph.
+     *
+     * @return A cursor, not positioned on any vertex
+     */
+    public Cursor cursor();
+}
@@ -0,0 +1,324 @@
+package communitydetection.graphmanagement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * An immutable copy of the structure of an undirected weighted graph in
+ * compressed sparse row form.
+ * </p>
+ * <p>
+ * Vertices are numbered from 0 to <code>getVertexCount() - 1</code>; the
+ * neighbours of the vertex <code>i</code> are
+ * <code>getTargets()[k]</code>, with the weights
+ * <code>getWeights()[k]</code>, for <code>k</code> from
+ * <code>getOffsets()[i]</code> to <code>getOffsets()[i + 1] - 1</code>. Every
+ * edge appears in the rows of both its ends, a loop appears once. Walking the
+ * neighbours of a vertex reads two contiguous ranges of memory instead of
+ * following the references of the edge objects of jgrapht.
+ * </p>
+ * <p>
+ * A compact graph can also be created directly from its arrays, for instance
+ * for the graph of the communities of another graph; its vertices are then
+ * only indices and <code>getVertex</code> returns <code>null</code>.
+ * </p>
+ *
+ * @see VertexReordering
+ * @author Filippo Bragato
+ */
+public class CompactGraph implements AdjacencyGraph {
+
+    private Node[] vertices;
+    private int[] offsets;
+    private int[] targets;
+    private double[] weights;
+    private int edgeCount;
+
+    /**
+     * Creates the compact form of the given graph, numbering the vertices in
+     * the order of its vertex set.
+     *
+     * @param net The original graph
+     */
+    public CompactGraph(AbstractGraph<? extends Node, DefaultWeightedEdge> net) {
+        this.vertices = net.vertexSet().toArray(new Node[0]);
+        int n = vertices.length;
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            index.put(vertices[i], i);
+        }
+        DefaultWeightedEdge[] edges = net.edgeSet().toArray(new DefaultWeightedEdge[0]);
+        int[] source = new int[edges.length];
+        int[] target = new int[edges.length];
+        this.offsets = new int[n + 1];
+        for (int e = 0; e < edges.length; e++) {
+            source[e] = index.get(net.getEdgeSource(edges[e]));
+            target[e] = index.get(net.getEdgeTarget(edges[e]));
+            offsets[source[e] + 1]++;
+            if (source[e] != target[e])
+                offsets[target[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        this.targets = new int[offsets[n]];
+        this.weights = new double[offsets[n]];
+        int[] next = new int[n];
+        System.arraycopy(offsets, 0, next, 0, n);
+        for (int e = 0; e < edges.length; e++) {
+            double w = net.getEdgeWeight(edges[e]);
+            int k = next[source[e]]++;
+            targets[k] = target[e];
+            weights[k] = w;
+            if (source[e] != target[e]) {
+                k = next[target[e]]++;
+                targets[k] = source[e];
+                weights[k] = w;
+            }
+        }
+        this.edgeCount = edges.length;
+    }
+
+    /**
+     * Creates a graph from its arrays, which are not copied. The vertices are
+     * not associated to any <code>Node</code>.
+     *
+     * @param offsets The start of the row of every vertex, followed by the
+     *                total number of entries
+     * @param targets The neighbours of all the vertices, row after row, every
+     *                edge in the rows of both its ends
+     * @param weights The weights of the entries of <code>targets</code>
+     */
+    public CompactGraph(int[] offsets, int[] targets, double[] weights) {
+        this(new Node[offsets.length - 1], offsets, targets, weights, 0);
+        int loops = 0;
+        for (int u = 0; u < vertices.length; u++) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                if (targets[k] == u)
+                    loops++;
+            }
+        }
+        this.edgeCount = (offsets[vertices.length] + loops) / 2;
+    }
+
+    private CompactGraph(Node[] vertices, int[] offsets, int[] targets, double[] weights, int edgeCount) {
+        this.vertices = vertices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.edgeCount = edgeCount;
+    }
+
+    /**
+     * Creates a copy of this graph with the vertices numbered in a different
+     * order. The neighbours of every vertex of the copy are sorted by index.
+     *
+     * @param order The vertex of this graph that will have index <code>k</code>
+     *              in the copy is <code>order[k]</code>; it must be a
+     *              permutation of the indices of this graph
+     * @return The renumbered graph
+     */
+    public CompactGraph permute(int[] order) {
+        int n = vertices.length;
+        if (order.length != n)
+            throw new IllegalArgumentException("order must contain every vertex");
+        int[] rank = new int[n];
+        Arrays.fill(rank, -1);
+        Node[] newVertices = new Node[n];
+        int[] newOffsets = new int[n + 1];
+        for (int k = 0; k < n; k++) {
+            if (rank[order[k]] != -1)
+                throw new IllegalArgumentException("order is not a permutation");
+            rank[order[k]] = k;
+            newVertices[k] = vertices[order[k]];
+            newOffsets[k + 1] = newOffsets[k] + getDegree(order[k]);
+        }
+        int[] newTargets = new int[targets.length];
+        double[] newWeights = new double[weights.length];
+        int[] next = new int[n];
+        System.arraycopy(newOffsets, 0, next, 0, n);
+        // every row is filled scanning its neighbours in increasing order, so it comes out sorted
+        for (int u = 0; u < n; u++) {
+            int old = order[u];
+            for (int k = offsets[old]; k < offsets[old + 1]; k++) {
+                int w = rank[targets[k]];
+                int pos = next[w]++;
+                newTargets[pos] = u;
+                newWeights[pos] = weights[k];
+            }
+        }
+        return new CompactGraph(newVertices, newOffsets, newTargets, newWeights, edgeCount);
+    }
+
+    /**
+     * Creates the graph of the communities defined by a label for each vertex,
+     * in the form returned by <code>Louvain</code>: a <code>Community</code>
+     * for each distinct label, numbered in order of first appearance, linked
+     * by an edge whose weight is the sum of the weights of the edges between
+     * them. The total weighted degree of a community is the sum of the
+     * weighted degrees of its vertices minus the weight of its internal edges,
+     * as computed by the merges of <code>Louvain</code>.
+     *
+     * @param label The label of each vertex, any int value
+     * @return The graph of the communities
+     */
+    public DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> toCommunityGraph(int[] label) {
+        int n = vertices.length;
+        HashMap<Integer, Integer> ids = new HashMap<>();
+        int[] communityOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            Integer id = ids.get(label[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(label[i], id);
+            }
+            communityOf[i] = id;
+        }
+        Community[] communities = new Community[ids.size()];
+        double[] degree = new double[communities.length];
+        HashMap<Long, Double> links = new HashMap<>();
+        for (int u = 0; u < n; u++) {
+            int c = communityOf[u];
+            if (communities[c] == null)
+                communities[c] = new Community(vertices[u], c);
+            else
+                communities[c].addNode(vertices[u]);
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                degree[c] += weights[k];
+                int d = communityOf[targets[k]];
+                if (targets[k] < u)
+                    continue;
+                if (d == c)
+                    degree[c] -= weights[k];
+                else
+                    links.merge((long) Math.min(c, d) << 32 | Math.max(c, d), weights[k], Double::sum);
+            }
+        }
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net = new DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge>(
+                DefaultWeightedEdge.class);
+        for (int c = 0; c < communities.length; c++) {
+            communities[c].setTotalWeightedDegree(degree[c]);
+            net.addVertex(communities[c]);
+        }
+        for (Map.Entry<Long, Double> link : links.entrySet()) {
+            Community s = communities[(int) (link.getKey() >>> 32)];
+            Community t = communities[(int) (long) link.getKey()];
+            net.setEdgeWeight(net.addEdge(s, t), link.getValue());
+        }
+        return net;
+    }
+
+    /**
+     * Gets the number of vertices.
+     *
+     * @return The number of vertices
+     */
+    @Override
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    /**
+     * Gets the number of edges of the original graph.
+     *
+     * @return The number of edges
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public long getEntryCount() {
+        return targets.length;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            private int k = 0;
+            private int end = 0;
+
+            @Override
+            public void moveTo(int v) {
+                k = offsets[v] - 1;
+                end = offsets[v + 1];
+            }
+
+            @Override
+            public boolean next() {
+                return ++k < end;
+            }
+
+            @Override
+            public int getTarget() {
+                return targets[k];
+            }
+
+            @Override
+            public double getWeight() {
+                return weights[k];
+            }
+        };
+    }
+
+    /**
+     * Gets the vertex of the original graph with the given index.
+     *
+     * @param i The index of the vertex
+     * @return The vertex, <code>null</code> if the graph was created from its
+     *         arrays
+     */
+    public Node getVertex(int i) {
+        return vertices[i];
+    }
+
+    /**
+     * Gets the number of neighbours of a vertex, counting a loop once.
+     *
+     * @param i The index of the vertex
+     * @return The number of entries in the row of the vertex
+     */
+    public int getDegree(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Gets the start of the row of every vertex, followed by the total number
+     * of entries. The array must not be modified.
+     *
+     * @return The offsets of the rows
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Gets the neighbours of all the vertices, row after row. The array must
+     * not be modified.
+     *
+     * @return The indices of the neighbours
+     */
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * Gets the weights of the edges, in the same order of
+     * <code>getTargets()</code>. The array must not be modified.
+     *
+     * @return The weights of the edges
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+}
@@ -0,0 +1,246 @@
+package communitydetection.graphmanagement;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * An immutable copy of an <code>AdjacencyGraph</code> whose rows are
+ * compressed in a single array of bytes, for graphs whose
+ * <code>CompactGraph</code>, 12 bytes per entry, does not fit in memory.
+ * </p>
+ * <p>
+ * The neighbours of every row are sorted and stored as differences: the first
+ * one from the vertex of the row, the others from the previous neighbour, each
+ * one as a variable-length integer of 7 bits per byte, so that a graph whose
+ * vertices have been renumbered with <code>VertexReordering</code> needs one
+ * or two bytes per neighbour. Each neighbour is followed by the weight of its
+ * edge, encoded as requested; if all the weights are equal no weight is
+ * stored. The cursor decodes a row sequentially and allocates nothing.
+ * </p>
+ * <p>
+ * The compressed rows must not exceed 2 GB.
+ * </p>
+ *
+ * @see CompactGraph
+ * @see DiskGraph
+ * @author Filippo Bragato
+ */
+public class CompressedGraph implements AdjacencyGraph {
+
+    /**
+     * How the weights of the edges are stored.
+     */
+    public enum WeightEncoding {
+        /**
+         * 8 bytes per entry, the weights are exact.
+         */
+        DOUBLE,
+        /**
+         * 4 bytes per entry, the weights are rounded to the nearest
+         * <code>float</code>.
+         */
+        FLOAT,
+        /**
+         * 1 byte per entry, the weights are rounded to one of 256 values evenly
+         * spaced between the minimum and the maximum weight.
+         */
+        QUANTISED
+    }
+
+    private static final VarHandle DOUBLES = MethodHandles.byteArrayViewVarHandle(double[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle FLOATS = MethodHandles.byteArrayViewVarHandle(float[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private int n;
+    private long entryCount;
+    private int[] offsets;
+    private byte[] data;
+    private WeightEncoding encoding;
+    private boolean constant;
+    private double minWeight;
+    private double step;
+
+    /**
+     * Compresses a graph, reading its rows twice.
+     *
+     * @param graph    The graph
+     * @param encoding How the weights are stored when they are not all equal
+     * @throws IllegalArgumentException If the compressed rows exceed 2 GB
+     */
+    public CompressedGraph(AdjacencyGraph graph, WeightEncoding encoding) {
+        this.n = graph.getVertexCount();
+        this.entryCount = graph.getEntryCount();
+        this.encoding = encoding;
+        this.offsets = new int[n + 1];
+
+        AdjacencyGraph.Cursor cursor = graph.cursor();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            int degree = 0;
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                min = Math.min(min, cursor.getWeight());
+                max = Math.max(max, cursor.getWeight());
+                degree++;
+            }
+            maxDegree = Math.max(maxDegree, degree);
+        }
+        this.constant = !(min < max);
+        this.minWeight = min;
+        this.step = constant ? 0 : (max - min) / 255;
+        int weightBytes = constant ? 0
+                : encoding == WeightEncoding.DOUBLE ? 8 : encoding == WeightEncoding.FLOAT ? 4 : 1;
+
+        // the target in the high half, so that sorting the keys sorts the row and keeps its weights
+        long[] row = new long[maxDegree];
+        double[] rowWeights = new double[maxDegree];
+        data = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, entryCount * (2 + weightBytes)))];
+        int p = 0;
+        for (int v = 0; v < n; v++) {
+            int count = 0;
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                row[count] = (long) cursor.getTarget() << 32 | count;
+                rowWeights[count++] = cursor.getWeight();
+            }
+            Arrays.sort(row, 0, count);
+            int previous = v;
+            for (int i = 0; i < count; i++) {
+                int target = (int) (row[i] >>> 32);
+                int gap = target - previous;
+                // only the first difference can be negative, it is zigzag encoded
+                if (i == 0)
+                    gap = (gap << 1) ^ (gap >> 31);
+                previous = target;
+                if (data.length - p < 5 + weightBytes)
+                    grow(p);
+                p = writeVarint(gap, p);
+                double w = rowWeights[(int) row[i]];
+                if (weightBytes == 8) {
+                    DOUBLES.set(data, p, w);
+                } else if (weightBytes == 4) {
+                    FLOATS.set(data, p, (float) w);
+                } else if (weightBytes == 1) {
+                    data[p] = (byte) Math.round((w - minWeight) / step);
+                }
+                p += weightBytes;
+            }
+            offsets[v + 1] = p;
+        }
+        data = Arrays.copyOf(data, p);
+    }
+
+    private void grow(int used) {
+        long size = Math.max(used + 16L, (long) data.length + data.length / 2);
+        if (used + 16L > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("the compressed graph exceeds 2 GB");
+        data = Arrays.copyOf(data, (int) Math.min(size, Integer.MAX_VALUE - 8));
+    }
+
+    private int writeVarint(int value, int p) {
+        while ((value & ~0x7f) != 0) {
+            data[p++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        data[p++] = (byte) value;
+        return p;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return n;
+    }
+
+    @Override
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Gets the memory used by the rows and by their offsets.
+     *
+     * @return The number of bytes
+     */
+    public long getByteSize() {
+        return data.length + 4L * offsets.length;
+    }
+
+    /**
+     * Gets how the weights are stored.
+     *
+     * @return The encoding, <code>null</code> if all the weights are equal and
+     *         are not stored
+     */
+    public WeightEncoding getWeightEncoding() {
+        return constant ? null : encoding;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            private int p = 0;
+            private int end = 0;
+            private int row = 0;
+            private boolean first = false;
+            private int target = 0;
+            private double weight = minWeight;
+
+            @Override
+            public void moveTo(int v) {
+                p = offsets[v];
+                end = offsets[v + 1];
+                row = v;
+                first = true;
+            }
+
+            @Override
+            public boolean next() {
+                if (p >= end)
+                    return false;
+                int b = data[p++];
+                int gap = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    gap |= (b & 0x7f) << shift;
+                }
+                if (first) {
+                    target = row + ((gap >>> 1) ^ -(gap & 1));
+                    first = false;
+                } else {
+                    target += gap;
+                }
+                if (!constant) {
+                    switch (encoding) {
+                    case DOUBLE:
+                        weight = (double) DOUBLES.get(data, p);
+                        p += 8;
+                        break;
+                    case FLOAT:
+                        weight = (float) FLOATS.get(data, p);
+                        p += 4;
+                        break;
+                    default:
+                        weight = minWeight + (data[p++] & 0xff) * step;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public int getTarget() {
+                return target;
+            }
+
+            @Override
+            public double getWeight() {
+                return weight;
+            }
+        };
+    }
+}
@@ -0,0 +1,174 @@
+package communitydetection.graphmanagement;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Renders a graph as a density map, meant for graphs with so many edges that
+ * drawing them one over the other only produces a solid grey area.
+ * </p>
+ * <p>
+ * Every pixel crossed by an edge or covered by a vertex accumulates a coverage
+ * value and the color of the communities involved: edges carry the average of
+ * the colors of their ends, vertices the color of their community. As in
+ * <code>FastDrawGraph</code>, the image is split in horizontal bands rendered
+ * in parallel, each one accumulating only its own rows. The coverage is then
+ * tone-mapped with a logarithmic curve and the average color of each pixel is
+ * blended over a white background accordingly.
+ * </p>
+ * <p>
+ * A band being rendered needs four <code>float</code> per pixel of its rows;
+ * the whole image needs a <code>float</code> and an <code>int</code> per
+ * pixel, whatever the number of threads.
+ * </p>
+ *
+ * @see DrawGraph
+ * @author Filippo Bragato
+ */
+public class DensityDrawGraph extends FastDrawGraph {
+
+    private float vertexWeight = 4;
+
+    /**
+     * Constructor that sets the dimension in pixels of the image that will be
+     * produce and the dimension of the vertices
+     *
+     * @param xSize      The width of the image in pixels
+     * @param ySize      The height of the image in pixels
+     * @param vertexSize The diameter of the vertex in pixels
+     */
+    public DensityDrawGraph(int xSize, int ySize, int vertexSize) {
+        super(xSize, ySize, vertexSize);
+    }
+
+    /**
+     * Constructor that sets also the coverage of the vertices and the height of
+     * the bands.
+     *
+     * @param xSize        The width of the image in pixels
+     * @param ySize        The height of the image in pixels
+     * @param vertexSize   The diameter of the vertex in pixels
+     * @param vertexWeight The coverage added by a vertex to each of its pixels,
+     *                     an edge adds 1
+     * @param bandHeight   The height in pixels of every band of the image
+     */
+    public DensityDrawGraph(int xSize, int ySize, int vertexSize, float vertexWeight, int bandHeight) {
+        super(xSize, ySize, vertexSize, bandHeight);
+        this.vertexWeight = vertexWeight;
+    }
+
+    @Override
+    protected BufferedImage render(int[][] coordinates, int[] edgeSource, int[] edgeTarget) {
+        int bandHeight = getBandHeight();
+        int nBands = (ySize + bandHeight - 1) / bandHeight;
+        int half = vertexSize / 2;
+        int[][][] bands = assignBands(coordinates, edgeSource, edgeTarget);
+        Color[] color = initializeColor();
+        boolean[] stamp = Raster.discStamp(vertexSize);
+        float[] coverage = new float[xSize * ySize];
+        int[] pixels = new int[xSize * ySize];
+
+        // the average color of every pixel, its coverage kept apart for the tone mapping
+        IntStream.range(0, nBands).parallel().forEach(band -> {
+            int rowFrom = band * bandHeight;
+            int rowTo = Math.min(rowFrom + bandHeight, ySize);
+            Accumulator acc = new Accumulator(rowFrom * xSize, (rowTo - rowFrom) * xSize);
+            for (int e : bands[0][band]) {
+                int[] s = coordinates[edgeSource[e]];
+                int[] t = coordinates[edgeTarget[e]];
+                Color cs = color[s[2] * 157 % color.length];
+                Color ct = color[t[2] * 157 % color.length];
+                acc.set(1, (cs.getRed() + ct.getRed()) / 2f, (cs.getGreen() + ct.getGreen()) / 2f,
+                        (cs.getBlue() + ct.getBlue()) / 2f);
+                Raster.walkLine(xSize, rowFrom, rowTo, s[0] + half, s[1] + half, t[0] + half, t[1] + half, acc);
+            }
+            for (int v : bands[1][band]) {
+                int[] c = coordinates[v];
+                Color cv = color[c[2] * 157 % color.length];
+                acc.set(vertexWeight, cv.getRed(), cv.getGreen(), cv.getBlue());
+                Raster.walkStamp(xSize, rowFrom, rowTo, stamp, vertexSize, c[0], c[1], acc);
+            }
+            for (int i = 0; i < (rowTo - rowFrom) * xSize; i++) {
+                float w = acc.buffer[4 * i];
+                coverage[acc.first + i] = w;
+                if (w > 0) {
+                    int r = Math.round(acc.buffer[4 * i + 1] / w);
+                    int g = Math.round(acc.buffer[4 * i + 2] / w);
+                    int b = Math.round(acc.buffer[4 * i + 3] / w);
+                    pixels[acc.first + i] = (r << 16) | (g << 8) | b;
+                }
+            }
+        });
+
+        float max = 0;
+        for (int i = 0; i < coverage.length; i++) {
+            max = Math.max(max, coverage[i]);
+        }
+        double logMax = Math.log1p(max);
+        BufferedImage img = new BufferedImage(xSize, ySize, BufferedImage.TYPE_3BYTE_BGR);
+        IntStream.range(0, nBands).parallel().forEach(band -> {
+            int rowFrom = band * bandHeight;
+            int rowTo = Math.min(rowFrom + bandHeight, ySize);
+            for (int i = rowFrom * xSize; i < rowTo * xSize; i++) {
+                if (coverage[i] == 0) {
+                    pixels[i] = 0xFFFFFF;
+                } else {
+                    double alpha = Math.log1p(coverage[i]) / logMax;
+                    int rgb = pixels[i];
+                    pixels[i] = (blend(rgb >> 16 & 0xFF, alpha) << 16) | (blend(rgb >> 8 & 0xFF, alpha) << 8)
+                            | blend(rgb & 0xFF, alpha);
+                }
+            }
+            Raster.copyToBGR(pixels, img, rowFrom, rowTo);
+        });
+        return img;
+    }
+
+    /**
+     * Blends a color channel over a white background.
+     *
+     * @param channel The value of the channel, from 0 to 255
+     * @param alpha   The opacity of the color, from 0 to 1
+     * @return The blended channel
+     */
+    private int blend(double channel, double alpha) {
+        return (int) Math.round(255 * (1 - alpha) + channel * alpha);
+    }
+
+    /**
+     * The accumulation buffer of a band. For each pixel it stores coverage,
+     * red, green and blue next to each other, so that plotting a pixel touches
+     * a single cache line.
+     */
+    private static class Accumulator implements Raster.Plot {
+        private float[] buffer;
+        private int first;
+        private float weight, r, g, b;
+
+        public Accumulator(int first, int size) {
+            this.first = first;
+            buffer = new float[4 * size];
+        }
+
+        /**
+         * Sets the coverage and the color added to the pixels plotted next.
+         */
+        public void set(float weight, float r, float g, float b) {
+            this.weight = weight;
+            this.r = r * weight;
+            this.g = g * weight;
+            this.b = b * weight;
+        }
+
+        @Override
+        public void plot(int offset) {
+            int i = 4 * (offset - first);
+            buffer[i] += weight;
+            buffer[i + 1] += r;
+            buffer[i + 2] += g;
+            buffer[i + 3] += b;
+        }
+    }
+}
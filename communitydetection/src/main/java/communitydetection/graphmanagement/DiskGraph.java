@@ -0,0 +1,353 @@
+package communitydetection.graphmanagement;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * An <code>AdjacencyGraph</code> stored in a file and memory mapped, for
+ * graphs whose edges do not fit in the heap.
+ * </p>
+ * <p>
+ * The file contains a header with the number of vertices and of entries, the
+ * entries of all the rows, each one an int target followed by a float weight,
+ * and the offsets of the rows as longs. The file is mapped in segments of 1 GB,
+ * so its size is limited only by the address space. Only the mapped pages that
+ * are read are loaded, and the operating system evicts them when memory is
+ * needed, so reading the rows in order streams the file.
+ * </p>
+ * <p>
+ * A graph is created from an edge list with <code>build</code>, in two passes
+ * over the edges, or row by row with a <code>Writer</code>. The mapping is
+ * released by the garbage collector, after <code>close</code>.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+public class DiskGraph implements AdjacencyGraph, Closeable {
+
+    private static final int MAGIC = 0x44475248;
+    private static final int HEADER = 16;
+    private static final int ENTRY = 8;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    /**
+     * Receives the edges of an <code>EdgeStream</code>.
+     */
+    public interface EdgeConsumer {
+        /**
+         * Receives an edge.
+         *
+         * @param source The index of an end of the edge
+         * @param target The index of the other end of the edge
+         * @param weight The weight of the edge
+         */
+        void accept(int source, int target, double weight);
+    }
+
+    /**
+     * A source of edges that can be read more than once, such as a file.
+     */
+    public interface EdgeStream {
+        /**
+         * Passes every edge, once, to the given consumer.
+         *
+         * @param consumer The receiver of the edges
+         * @throws IOException If the edges cannot be read
+         */
+        void forEachEdge(EdgeConsumer consumer) throws IOException;
+    }
+
+    private RandomAccessFile file;
+    private MappedByteBuffer[] segments;
+    private int n;
+    private long entries;
+    private long offsetsStart;
+
+    /**
+     * Opens a graph written by <code>build</code> or by a <code>Writer</code>.
+     *
+     * @param path The file containing the graph
+     * @throws IOException If the file cannot be read or is not a graph
+     */
+    public DiskGraph(File path) throws IOException {
+        this(path, false);
+    }
+
+    private DiskGraph(File path, boolean writable) throws IOException {
+        this.file = new RandomAccessFile(path, writable ? "rw" : "r");
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        file.getChannel().read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+            file.close();
+            throw new IOException(path + " is not a graph");
+        }
+        this.n = header.getInt();
+        this.entries = header.getLong();
+        this.offsetsStart = HEADER + entries * ENTRY;
+        map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY);
+    }
+
+    private void map(FileChannel.MapMode mode) throws IOException {
+        long size = file.length();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int s = 0; s < segments.length; s++) {
+            long start = (long) s << SEGMENT_BITS;
+            segments[s] = file.getChannel().map(mode, start, Math.min(SEGMENT_MASK + 1, size - start));
+        }
+    }
+
+    /**
+     * Writes the graph made of the given edges in a file and opens it. The
+     * edges are read twice: the first time to count the degree of the vertices,
+     * the second time to write each edge in the rows of its ends. Only a long
+     * for each vertex is kept in memory.
+     *
+     * @param path  The file that will contain the graph
+     * @param n     The number of vertices; the ends of the edges must be
+     *              between 0 and <code>n - 1</code>
+     * @param edges The edges, each one given once
+     * @return The graph
+     * @throws IOException If the edges cannot be read or the file cannot be
+     *                     written
+     */
+    public static DiskGraph build(File path, int n, EdgeStream edges) throws IOException {
+        long[] next = new long[n + 1];
+        edges.forEachEdge((s, t, w) -> {
+            next[s + 1]++;
+            if (s != t)
+                next[t + 1]++;
+        });
+        for (int i = 0; i < n; i++) {
+            next[i + 1] += next[i];
+        }
+        long entries = next[n];
+        try (RandomAccessFile out = new RandomAccessFile(path, "rw")) {
+            out.setLength(0);
+            out.setLength(HEADER + entries * ENTRY + (n + 1L) * 8);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(n).putLong(entries).flip();
+            out.getChannel().write(header, 0);
+        }
+        DiskGraph graph = new DiskGraph(path, true);
+        for (int i = 0; i <= n; i++) {
+            graph.putLong(graph.offsetsStart + 8L * i, next[i]);
+        }
+        edges.forEachEdge((s, t, w) -> {
+            graph.putEntry(next[s]++, t, (float) w);
+            if (s != t)
+                graph.putEntry(next[t]++, s, (float) w);
+        });
+        graph.close();
+        return new DiskGraph(path);
+    }
+
+    /**
+     * Creates a stream reading a text file with an edge for each line, made of
+     * the indices of the ends and, optionally, of the weight, separated by
+     * spaces or tabs. Empty lines and lines starting with <code>#</code> are
+     * skipped; the weight is 1 if it is missing.
+     *
+     * @param path The file of the edges
+     * @return The stream of the edges of the file
+     */
+    public static EdgeStream textEdgeList(File path) {
+        return consumer -> {
+            try (BufferedReader in = new BufferedReader(new FileReader(path), 1 << 16)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.charAt(0) == '#')
+                        continue;
+                    String[] fields = line.split("\\s+");
+                    if (fields.length < 2)
+                        throw new IOException("Malformed edge: " + line);
+                    try {
+                        consumer.accept(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                                fields.length > 2 ? Double.parseDouble(fields[2]) : 1);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Malformed edge: " + line, e);
+                    }
+                }
+            }
+        };
+    }
+
+    private void putEntry(long k, int target, float weight) {
+        long pos = HEADER + k * ENTRY;
+        MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+        int offset = (int) (pos & SEGMENT_MASK);
+        segment.putInt(offset, target);
+        segment.putFloat(offset + 4, weight);
+    }
+
+    private void putLong(long pos, long value) {
+        segments[(int) (pos >>> SEGMENT_BITS)].putLong((int) (pos & SEGMENT_MASK), value);
+    }
+
+    private long getLong(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].getLong((int) (pos & SEGMENT_MASK));
+    }
+
+    @Override
+    public int getVertexCount() {
+        return n;
+    }
+
+    @Override
+    public long getEntryCount() {
+        return entries;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            private long pos = 0;
+            private long end = 0;
+            private MappedByteBuffer segment;
+            private int offset;
+
+            @Override
+            public void moveTo(int v) {
+                pos = HEADER + getLong(offsetsStart + 8L * v) * ENTRY - ENTRY;
+                end = HEADER + getLong(offsetsStart + 8L * v + 8) * ENTRY;
+            }
+
+            @Override
+            public boolean next() {
+                pos += ENTRY;
+                if (pos >= end)
+                    return false;
+                // entries and segments are aligned to 8 bytes, an entry never crosses two segments
+                segment = segments[(int) (pos >>> SEGMENT_BITS)];
+                offset = (int) (pos & SEGMENT_MASK);
+                return true;
+            }
+
+            @Override
+            public int getTarget() {
+                return segment.getInt(offset);
+            }
+
+            @Override
+            public double getWeight() {
+                return segment.getFloat(offset + 4);
+            }
+        };
+    }
+
+    /**
+     * Closes the file. The graph must not be used anymore.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments) {
+                if (!segment.isReadOnly())
+                    segment.force();
+            }
+        }
+        segments = null;
+        file.close();
+    }
+
+    /**
+     * <p>
+     * Writes a graph row by row, in the order of the vertices. The entries are
+     * streamed to the file; only the offsets of the rows are kept in memory.
+     * </p>
+     * <p>
+     * The rows must describe an undirected graph: every entry must have its
+     * symmetric one in the row of the target.
+     * </p>
+     */
+    public static class Writer implements Closeable {
+        private File path;
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private long[] offsets;
+        private int row = 0;
+        private long position = HEADER;
+
+        /**
+         * Creates the file of a graph.
+         *
+         * @param path The file that will contain the graph
+         * @param n    The number of vertices
+         * @throws IOException If the file cannot be created
+         */
+        @SuppressWarnings("resource")
+        public Writer(File path, int n) throws IOException {
+            this.path = path;
+            this.channel = new RandomAccessFile(path, "rw").getChannel();
+            channel.truncate(0);
+            this.offsets = new long[n + 1];
+        }
+
+        /**
+         * Appends the row of the next vertex.
+         *
+         * @param targets The neighbours of the vertex
+         * @param weights The weights of the edges to the neighbours
+         * @param count   The number of neighbours, the length of the row
+         * @throws IOException If the row cannot be written
+         */
+        public void addRow(int[] targets, double[] weights, int count) throws IOException {
+            if (row + 1 >= offsets.length)
+                throw new IllegalStateException("All the rows have been written");
+            for (int i = 0; i < count; i++) {
+                if (buffer.remaining() < ENTRY)
+                    flush();
+                buffer.putInt(targets[i]).putFloat((float) weights[i]);
+            }
+            offsets[row + 1] = offsets[row] + count;
+            row++;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes the offsets and the header, closes the file and opens it as a
+         * graph.
+         *
+         * @return The graph written
+         * @throws IOException If the file cannot be written
+         */
+        public DiskGraph finish() throws IOException {
+            if (row + 1 != offsets.length)
+                throw new IllegalStateException("Missing rows");
+            for (long offset : offsets) {
+                if (buffer.remaining() < 8)
+                    flush();
+                buffer.putLong(offset);
+            }
+            flush();
+            buffer.putInt(MAGIC).putInt(offsets.length - 1).putLong(offsets[row]).flip();
+            channel.write(buffer, 0);
+            close();
+            return new DiskGraph(path);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -15,12 +15,12 @@ import communitydetection.graphnodes.Node;
 
 public class DrawGraph {
 
-    private double x_max, x_min, y_max, y_min;
-    private double proportionX, proportionY;
+    protected double x_max, x_min, y_max, y_min;
+    protected double proportionX, proportionY;
 
-    private int xSize;
-    private int ySize;
-    private int vertexSize;
+    protected int xSize;
+    protected int ySize;
+    protected int vertexSize;
 
     /**
      * Constructor that sets the dimension in pixels of the image that will be
@@ -45,6 +45,7 @@ public class DrawGraph {
      * @param communityNet The graph of the community of the original graph.
      * @return A graph made of <code>GraficNode</code> with the same structure of
      *         net.
+     * @see DrawableView
      */
     public DefaultUndirectedWeightedGraph<GraficNode, DefaultWeightedEdge> makeDrawable(
             AbstractGraph<? extends Node, DefaultWeightedEdge> net,
@@ -91,6 +92,27 @@ public class DrawGraph {
 
     }
 
+    /**
+     * Creates an image of the graph seen by the given view
+     * 
+     * @param view The view of the graph that will be represented
+     * @return A <code>BufferedImage</code> representing the graph
+     * @see BufferedImage
+     */
+    public BufferedImage draw(DrawableView view) {
+        int[][] coordinates = getCoordinates(view.getX(), view.getY(), view.getCommunityId());
+        BufferedImage img = new BufferedImage(xSize, ySize, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics2d = img.createGraphics();
+        graphics2d.setColor(Color.white);
+        graphics2d.fillRect(0, 0, xSize, ySize);
+        graphics2d.setColor(Color.LIGHT_GRAY);
+        int half = vertexSize / 2;
+        view.forEachEdge((s, t) -> graphics2d.drawLine(coordinates[s][0] + half, coordinates[s][1] + half,
+                coordinates[t][0] + half, coordinates[t][1] + half));
+        drawVertex(coordinates, graphics2d);
+        return img;
+    }
+
     /**
      * Draws the vertices represented by given coordinates using the given graphics
      * 
@@ -133,15 +155,36 @@ public class DrawGraph {
      * @param net The graph that has to be represented.
      * @return The coordinates of each node.
      */
-    private int[][] getCoordinates(AbstractGraph<GraficNode, DefaultWeightedEdge> net) {
+    protected int[][] getCoordinates(AbstractGraph<GraficNode, DefaultWeightedEdge> net) {
         GraficNode[] points = net.vertexSet().toArray(new GraficNode[0]);
-        this.x_max = points[0].getX();
-        this.y_max = points[0].getY();
-        this.x_min = points[0].getX();
-        this.y_min = points[0].getY();
-        for (int i = 1; i < points.length; i++) {
-            double x = points[i].getX();
-            double y = points[i].getY();
+        double[] x = new double[points.length];
+        double[] y = new double[points.length];
+        int[] communityId = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            x[i] = points[i].getX();
+            y[i] = points[i].getY();
+            communityId[i] = points[i].getCommunityId();
+        }
+        return getCoordinates(x, y, communityId);
+    }
+
+    /**
+     * Creates the coordinates (x, y and color) of each node given its position
+     * and its community
+     * 
+     * @param xs          The x of each node
+     * @param ys          The y of each node
+     * @param communityId The id of the community of each node
+     * @return The coordinates of each node.
+     */
+    protected int[][] getCoordinates(double[] xs, double[] ys, int[] communityId) {
+        this.x_max = xs[0];
+        this.y_max = ys[0];
+        this.x_min = xs[0];
+        this.y_min = ys[0];
+        for (int i = 1; i < xs.length; i++) {
+            double x = xs[i];
+            double y = ys[i];
             if (x > x_max)
                 x_max = x;
             if (x < x_min)
@@ -153,13 +196,11 @@ public class DrawGraph {
         }
         this.proportionX = (xSize - 20) / (x_max - x_min);
         this.proportionY = (ySize - 20) / (y_max - y_min);
-        int[][] coordinates = new int[points.length][3];
-        for (int i = 0; i < points.length; i++) {
-            double x = points[i].getX();
-            double y = points[i].getY();
-            coordinates[i][0] = (int) Math.round(proportionX * (x - x_min)) + 10;
-            coordinates[i][1] = (int) Math.round(proportionY * (y - y_min)) + 10;
-            coordinates[i][2] = points[i].getCommunityId();
+        int[][] coordinates = new int[xs.length][3];
+        for (int i = 0; i < xs.length; i++) {
+            coordinates[i][0] = (int) Math.round(proportionX * (xs[i] - x_min)) + 10;
+            coordinates[i][1] = (int) Math.round(proportionY * (ys[i] - y_min)) + 10;
+            coordinates[i][2] = communityId[i];
         }
         return coordinates;
     }
@@ -169,7 +210,7 @@ public class DrawGraph {
      * 
      * @return The array of <code>Color</code>
      */
-    private Color[] initializeColor() {
+    protected Color[] initializeColor() {
         Color[] colori = new Color[125];
         for (int i = 0; i < 5; i++) {
             for (int j = 0; j < 5; j++) {
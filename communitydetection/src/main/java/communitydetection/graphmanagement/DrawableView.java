@@ -0,0 +1,177 @@
+package communitydetection.graphmanagement;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * A lightweight alternative to the graph of <code>GraficNode</code> created by
+ * <code>DrawGraph.makeDrawable</code>.
+ * </p>
+ * <p>
+ * The view refers to the topology of the original graph, without copying its
+ * edges, and keeps the position and the community of every vertex in
+ * primitive arrays indexed by the position of the vertex in the vertex set of
+ * the original graph.
+ * </p>
+ *
+ * @see DrawGraph
+ * @author Filippo Bragato
+ */
+public class DrawableView {
+
+    /**
+     * Receives the edges of a <code>DrawableView</code> as indices of vertices.
+     */
+    public interface EdgeConsumer {
+        /**
+         * Receives an edge.
+         *
+         * @param source The index of the source of the edge
+         * @param target The index of the target of the edge
+         */
+        void accept(int source, int target);
+    }
+
+    private AbstractGraph<? extends Node, DefaultWeightedEdge> net;
+    private Node[] vertices;
+    private IdentityHashMap<Node, Integer> index;
+    private double[] x;
+    private double[] y;
+    private int[] communityId;
+
+    /**
+     * Creates a view of the given graph with all the vertices in the community
+     * 0 and in the origin.
+     *
+     * @param net The original graph.
+     */
+    public DrawableView(AbstractGraph<? extends Node, DefaultWeightedEdge> net) {
+        this.net = net;
+        this.vertices = net.vertexSet().toArray(new Node[0]);
+        this.index = new IdentityHashMap<>(vertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            index.put(vertices[i], i);
+        }
+        this.x = new double[vertices.length];
+        this.y = new double[vertices.length];
+        this.communityId = new int[vertices.length];
+    }
+
+    /**
+     * Creates a view of the given graph assigning a community to each vertex
+     * using the given partition, numbered as in
+     * <code>DrawGraph.makeDrawable</code>.
+     *
+     * @param net          The original graph.
+     * @param communityNet The graph of the community of the original graph.
+     */
+    public DrawableView(AbstractGraph<? extends Node, DefaultWeightedEdge> net,
+            AbstractGraph<Community, DefaultWeightedEdge> communityNet) {
+        this(net);
+        Community[] communities = communityNet.vertexSet().toArray(new Community[0]);
+        for (int i_comm = 0; i_comm < communities.length; i_comm++) {
+            ArrayList<Node> nodesInsideCommunity = communities[i_comm].getNodes();
+            for (Node node : nodesInsideCommunity) {
+                Integer i = index.get(node);
+                if (i != null)
+                    communityId[i] = i_comm;
+            }
+        }
+    }
+
+    /**
+     * Gets the original graph.
+     *
+     * @return The graph seen by this view
+     */
+    public AbstractGraph<? extends Node, DefaultWeightedEdge> getGraph() {
+        return net;
+    }
+
+    /**
+     * Gets the number of vertices.
+     *
+     * @return The number of vertices
+     */
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    /**
+     * Gets the vertex of the original graph with the given index.
+     *
+     * @param i The index of the vertex
+     * @return The vertex
+     */
+    public Node getVertex(int i) {
+        return vertices[i];
+    }
+
+    /**
+     * Gets the index of a vertex of the original graph.
+     *
+     * @param node The vertex
+     * @return The index of the vertex, -1 if the vertex is not in the graph
+     */
+    public int indexOf(Node node) {
+        Integer i = index.get(node);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Gets the array of the x of the vertices. Changes to the array are
+     * changes to the view.
+     *
+     * @return The x of each vertex
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * Gets the array of the y of the vertices. Changes to the array are
+     * changes to the view.
+     *
+     * @return The y of each vertex
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * Gets the array of the ids of the communities of the vertices. Changes to
+     * the array are changes to the view.
+     *
+     * @return The id of the community of each vertex
+     */
+    public int[] getCommunityId() {
+        return communityId;
+    }
+
+    /**
+     * Gets the number of edges.
+     *
+     * @return The number of edges of the original graph
+     */
+    public int getEdgeCount() {
+        return net.edgeSet().size();
+    }
+
+    /**
+     * Passes every edge of the original graph to the given consumer.
+     *
+     * @param consumer The receiver of the edges
+     */
+    public void forEachEdge(EdgeConsumer consumer) {
+        for (DefaultWeightedEdge edge : net.edgeSet()) {
+            consumer.accept(index.get(net.getEdgeSource(edge)), index.get(net.getEdgeTarget(edge)));
+        }
+    }
+}
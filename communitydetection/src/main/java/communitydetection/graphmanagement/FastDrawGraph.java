@@ -0,0 +1,237 @@
+package communitydetection.graphmanagement;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.stream.IntStream;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.GraficNode;
+
+/**
+ * <p>
+ * Faster version of <code>DrawGraph</code> that rasterises edges and vertices
+ * straight into an <code>int[]</code> buffer instead of using
+ * <code>Graphics2D</code>.
+ * </p>
+ * <p>
+ * The image is split in horizontal bands that are rendered in parallel: every
+ * edge and every vertex is assigned to the bands it crosses and each band
+ * draws only its own rows, so no synchronization is needed. Vertices are
+ * stamped with a precomputed disc mask.
+ * </p>
+ *
+ * @see DrawGraph
+ * @author Filippo Bragato
+ */
+public class FastDrawGraph extends DrawGraph {
+
+    private static final int EDGE_COLOR = Color.LIGHT_GRAY.getRGB() & 0xFFFFFF;
+    private static final int BACKGROUND_COLOR = 0xFFFFFF;
+
+    private int bandHeight = 64;
+
+    /**
+     * Constructor that sets the dimension in pixels of the image that will be
+     * produce and the dimension of the vertices
+     *
+     * @param xSize      The width of the image in pixels
+     * @param ySize      The height of the image in pixels
+     * @param vertexSize The diameter of the vertex in pixels
+     */
+    public FastDrawGraph(int xSize, int ySize, int vertexSize) {
+        super(xSize, ySize, vertexSize);
+    }
+
+    /**
+     * Constructor that sets also the height of the bands rendered in parallel.
+     *
+     * @param xSize      The width of the image in pixels
+     * @param ySize      The height of the image in pixels
+     * @param vertexSize The diameter of the vertex in pixels
+     * @param bandHeight The height in pixels of every band of the image
+     */
+    public FastDrawGraph(int xSize, int ySize, int vertexSize, int bandHeight) {
+        super(xSize, ySize, vertexSize);
+        this.bandHeight = bandHeight;
+    }
+
+    /**
+     * Creates an image of the given graph of <code>GraficNode</code>
+     *
+     * @param net The net that will be represented
+     * @return A <code>BufferedImage</code> of type <code>TYPE_3BYTE_BGR</code>
+     *         representing the net
+     * @see BufferedImage
+     */
+    @Override
+    public BufferedImage draw(AbstractGraph<GraficNode, DefaultWeightedEdge> net) {
+        int[][] coordinates = getCoordinates(net);
+        GraficNode[] points = net.vertexSet().toArray(new GraficNode[0]);
+        IdentityHashMap<GraficNode, Integer> index = new IdentityHashMap<>(points.length);
+        for (int i = 0; i < points.length; i++) {
+            index.put(points[i], i);
+        }
+        DefaultWeightedEdge[] edges = net.edgeSet().toArray(new DefaultWeightedEdge[0]);
+        int[] edgeSource = new int[edges.length];
+        int[] edgeTarget = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            edgeSource[i] = index.get(net.getEdgeSource(edges[i]));
+            edgeTarget[i] = index.get(net.getEdgeTarget(edges[i]));
+        }
+        return render(coordinates, edgeSource, edgeTarget);
+    }
+
+    /**
+     * Creates an image of the graph seen by the given view. The edges are read
+     * from the original graph and only their ends are kept, as indices, to
+     * assign them to the bands.
+     *
+     * @param view The view of the graph that will be represented
+     * @return A <code>BufferedImage</code> of type <code>TYPE_3BYTE_BGR</code>
+     *         representing the graph
+     */
+    @Override
+    public BufferedImage draw(DrawableView view) {
+        int[][] coordinates = getCoordinates(view.getX(), view.getY(), view.getCommunityId());
+        int[][] ends = edgeEnds(view);
+        return render(coordinates, ends[0], ends[1]);
+    }
+
+    /**
+     * Gets the ends of the edges of the graph seen by a view.
+     *
+     * @param view The view of the graph
+     * @return The index of the source and the index of the target of each edge
+     */
+    static int[][] edgeEnds(DrawableView view) {
+        int[] edgeSource = new int[view.getEdgeCount()];
+        int[] edgeTarget = new int[view.getEdgeCount()];
+        int[] next = { 0 };
+        view.forEachEdge((s, t) -> {
+            edgeSource[next[0]] = s;
+            edgeTarget[next[0]++] = t;
+        });
+        return new int[][] { edgeSource, edgeTarget };
+    }
+
+    /**
+     * Renders vertices and edges given as arrays of indices.
+     *
+     * @param coordinates The coordinates (x, y and color) of the vertices
+     * @param edgeSource  The index of the source of each edge
+     * @param edgeTarget  The index of the target of each edge
+     * @return The rendered image
+     */
+    protected BufferedImage render(int[][] coordinates, int[] edgeSource, int[] edgeTarget) {
+        int nBands = (ySize + bandHeight - 1) / bandHeight;
+        int half = vertexSize / 2;
+        int[][][] bands = assignBands(coordinates, edgeSource, edgeTarget);
+        int[][] edgeBands = bands[0];
+        int[][] vertexBands = bands[1];
+
+        Color[] color = initializeColor();
+        int[] palette = new int[color.length];
+        for (int i = 0; i < color.length; i++) {
+            palette[i] = color[i].getRGB() & 0xFFFFFF;
+        }
+        boolean[] stamp = Raster.discStamp(vertexSize);
+        int[] pixels = new int[xSize * ySize];
+        BufferedImage img = new BufferedImage(xSize, ySize, BufferedImage.TYPE_3BYTE_BGR);
+
+        IntStream.range(0, nBands).parallel().forEach(band -> {
+            int rowFrom = band * bandHeight;
+            int rowTo = Math.min(rowFrom + bandHeight, ySize);
+            Arrays.fill(pixels, rowFrom * xSize, rowTo * xSize, BACKGROUND_COLOR);
+            for (int e : edgeBands[band]) {
+                int[] s = coordinates[edgeSource[e]];
+                int[] t = coordinates[edgeTarget[e]];
+                Raster.drawLine(pixels, xSize, rowFrom, rowTo, s[0] + half, s[1] + half, t[0] + half, t[1] + half,
+                        EDGE_COLOR);
+            }
+            for (int v : vertexBands[band]) {
+                int[] c = coordinates[v];
+                Raster.drawStamp(pixels, xSize, rowFrom, rowTo, stamp, vertexSize, c[0], c[1],
+                        palette[c[2] * 157 % palette.length]);
+            }
+            Raster.copyToBGR(pixels, img, rowFrom, rowTo);
+        });
+        return img;
+    }
+
+    /**
+     * Assigns the edges and the vertices to the bands of the image they cross.
+     *
+     * @param coordinates The coordinates (x, y and color) of the vertices
+     * @param edgeSource  The index of the source of each edge
+     * @param edgeTarget  The index of the target of each edge
+     * @return For each band the indices of the edges crossing it, then for each
+     *         band the indices of the vertices crossing it
+     */
+    int[][][] assignBands(int[][] coordinates, int[] edgeSource, int[] edgeTarget) {
+        int nBands = (ySize + bandHeight - 1) / bandHeight;
+        int half = vertexSize / 2;
+        int[] top = new int[edgeSource.length];
+        int[] bottom = new int[edgeSource.length];
+        for (int i = 0; i < edgeSource.length; i++) {
+            int y1 = coordinates[edgeSource[i]][1] + half;
+            int y2 = coordinates[edgeTarget[i]][1] + half;
+            top[i] = Math.min(y1, y2);
+            bottom[i] = Math.max(y1, y2);
+        }
+        int[][] edgeBands = bucket(top, bottom, nBands);
+        top = new int[coordinates.length];
+        bottom = new int[coordinates.length];
+        for (int i = 0; i < coordinates.length; i++) {
+            top[i] = coordinates[i][1];
+            bottom[i] = coordinates[i][1] + vertexSize - 1;
+        }
+        return new int[][][] { edgeBands, bucket(top, bottom, nBands) };
+    }
+
+    /**
+     * Gets the height of the bands rendered in parallel.
+     *
+     * @return The height in pixels of every band
+     */
+    int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * Assigns every element to the bands crossed by its vertical extent, keeping
+     * the elements of each band in increasing order.
+     *
+     * @param top    The first row of each element
+     * @param bottom The last row of each element
+     * @param nBands The number of bands
+     * @return For each band the indices of the elements crossing it
+     */
+    private int[][] bucket(int[] top, int[] bottom, int nBands) {
+        int n = top.length;
+        int[] first = new int[n];
+        int[] last = new int[n];
+        int[] count = new int[nBands];
+        for (int i = 0; i < n; i++) {
+            first[i] = Math.max(0, top[i] / bandHeight);
+            last[i] = Math.min(nBands - 1, bottom[i] / bandHeight);
+            for (int b = first[i]; b <= last[i]; b++) {
+                count[b]++;
+            }
+        }
+        int[][] bands = new int[nBands][];
+        for (int b = 0; b < nBands; b++) {
+            bands[b] = new int[count[b]];
+            count[b] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int b = first[i]; b <= last[i]; b++) {
+                bands[b][count[b]++] = i;
+            }
+        }
+        return bands;
+    }
+}
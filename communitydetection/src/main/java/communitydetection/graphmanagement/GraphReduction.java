@@ -0,0 +1,301 @@
+package communitydetection.graphmanagement;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Finds the vertices of a <code>CompactGraph</code> that can be folded into
+ * another vertex before the detection of the communities.
+ * </p>
+ * <p>
+ * Two reductions are safe for modularity and are always computed:
+ * </p>
+ * <ul>
+ * <li>an isolated vertex does not change the modularity wherever it is, so it
+ * is left alone in its community and never visited;</li>
+ * <li>a vertex with a single neighbour, a leaf, is in the community of its
+ * neighbour in every partition of maximum modularity, so it is folded into
+ * it. Only leaves whose neighbour is not a leaf are folded, so that dangling
+ * paths are not collapsed; a component made of two vertices is folded into
+ * one.</li>
+ * </ul>
+ * <p>
+ * The second one holds for a resolution of at most 1: joining its neighbour
+ * adds <code>w (1 - g D / 2m) / m</code> to the modularity with resolution
+ * <code>g</code>, where <code>w</code> is the weight of the edge of the leaf
+ * and <code>D &lt; 2m</code> the degree of the community of the neighbour,
+ * which is positive only if <code>g D &lt; 2m</code>. With a larger resolution
+ * the leaves must not be folded.
+ * </p>
+ * <p>
+ * Optionally, twins, that is non adjacent vertices with the same neighbours
+ * linked with the same weights, are folded together. This is a heuristic:
+ * twins usually end up in the same community, but not always in the optimum.
+ * </p>
+ * <p>
+ * <code>fold</code> builds the smaller graph of the representatives, on which
+ * the detection runs without reading again the edges of the folded vertices.
+ * </p>
+ *
+ * @see CompactGraph
+ * @author Filippo Bragato
+ */
+public class GraphReduction {
+
+    private int[] representative;
+    private boolean[] isolated;
+    private int foldedCount = 0;
+    private int isolatedCount = 0;
+
+    /**
+     * Computes the reduction of a graph.
+     *
+     * @param graph      The graph to reduce
+     * @param mergeTwins <code>true</code> to fold also the twins
+     */
+    public GraphReduction(CompactGraph graph, boolean mergeTwins) {
+        this(graph, true, mergeTwins);
+    }
+
+    /**
+     * Computes the reduction of a graph, optionally leaving the leaves alone,
+     * as a resolution larger than 1 requires.
+     *
+     * @param graph      The graph to reduce
+     * @param foldLeaves <code>false</code> to keep every leaf as a vertex of its
+     *                   own
+     * @param mergeTwins <code>true</code> to fold also the twins
+     */
+    public GraphReduction(CompactGraph graph, boolean foldLeaves, boolean mergeTwins) {
+        int n = graph.getVertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        representative = new int[n];
+        isolated = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            representative[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            int degree = graph.getDegree(i);
+            if (degree == 0) {
+                isolated[i] = true;
+                isolatedCount++;
+            } else if (foldLeaves && degree == 1 && targets[offsets[i]] != i) {
+                int neighbour = targets[offsets[i]];
+                // of two adjacent leaves only the one with the largest index is folded
+                if (graph.getDegree(neighbour) != 1 || neighbour < i) {
+                    representative[i] = neighbour;
+                    foldedCount++;
+                }
+            }
+        }
+        if (mergeTwins)
+            mergeTwins(graph);
+    }
+
+    /**
+     * Builds the graph in which every vertex is folded into its representative;
+     * the neighbour of a leaf is never folded, its twin would be adjacent to
+     * the leaf too. The vertices of the folded graph are the vertices that are
+     * their own representative, in the same order; an edge between two of them
+     * has the sum of the weights of the edges between the vertices folded into
+     * them, and the edges inside them become a loop, with the weight of each
+     * edge counted once, so that the degree of a vertex is the degree its
+     * community would have in <code>Louvain</code> after merging the folded
+     * vertices.
+     *
+     * @param graph     The graph this reduction was computed on
+     * @param reducedOf Receives, for every vertex of the graph, the index in
+     *                  the folded graph of the vertex it is folded into
+     * @return The folded graph
+     */
+    public CompactGraph fold(CompactGraph graph, int[] reducedOf) {
+        int n = graph.getVertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] weights = graph.getWeights();
+        int nReduced = 0;
+        for (int i = 0; i < n; i++) {
+            if (representative[i] == i)
+                reducedOf[i] = nReduced++;
+        }
+        // the members of every vertex of the folded graph, grouped by a counting sort
+        int[] start = new int[nReduced + 1];
+        for (int i = 0; i < n; i++) {
+            reducedOf[i] = reducedOf[representative[i]];
+            start[reducedOf[i] + 1]++;
+        }
+        for (int r = 0; r < nReduced; r++) {
+            start[r + 1] += start[r];
+        }
+        int[] members = new int[n];
+        int[] next = Arrays.copyOf(start, nReduced);
+        for (int i = 0; i < n; i++) {
+            members[next[reducedOf[i]]++] = i;
+        }
+
+        int[] reducedOffsets = new int[nReduced + 1];
+        int[] reducedTargets = new int[targets.length];
+        double[] reducedWeights = new double[targets.length];
+        int[] position = new int[nReduced];
+        Arrays.fill(position, -1);
+        int size = 0;
+        for (int r = 0; r < nReduced; r++) {
+            int rowStart = size;
+            for (int p = start[r]; p < start[r + 1]; p++) {
+                int i = members[p];
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    int t = reducedOf[targets[k]];
+                    // an edge inside r is met from both its ends, a loop of the graph only once
+                    double w = t == r && targets[k] != i ? weights[k] / 2 : weights[k];
+                    if (position[t] < rowStart) {
+                        position[t] = size;
+                        reducedTargets[size] = t;
+                        reducedWeights[size++] = w;
+                    } else {
+                        reducedWeights[position[t]] += w;
+                    }
+                }
+            }
+            reducedOffsets[r + 1] = size;
+        }
+        return new CompactGraph(reducedOffsets, Arrays.copyOf(reducedTargets, size),
+                Arrays.copyOf(reducedWeights, size));
+    }
+
+    /**
+     * Folds together the vertices with degree at least 2 having the same
+     * neighbours with the same weights. Candidates are grouped by degree and by
+     * an order independent hash of their rows, then compared exactly.
+     *
+     * @param graph The graph to reduce
+     */
+    private void mergeTwins(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] weights = graph.getWeights();
+        long[] key = new long[n];
+        Integer[] candidates = new Integer[n];
+        int nCandidates = 0;
+        for (int i = 0; i < n; i++) {
+            if (graph.getDegree(i) < 2)
+                continue;
+            long hash = 0;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                hash += mix(targets[k] ^ mix(Double.doubleToLongBits(weights[k])));
+            }
+            key[i] = mix(hash + graph.getDegree(i));
+            candidates[nCandidates++] = i;
+        }
+        Arrays.sort(candidates, 0, nCandidates, (a, b) -> Long.compare(key[a], key[b]));
+
+        long[] rowA = new long[0];
+        long[] rowB = new long[0];
+        for (int start = 0; start < nCandidates;) {
+            int end = start + 1;
+            while (end < nCandidates && key[candidates[end]] == key[candidates[start]]) {
+                end++;
+            }
+            // the first vertex of the group that is not a twin of an earlier one becomes the representative
+            for (int a = start; a < end; a++) {
+                int u = candidates[a];
+                if (representative[u] != u)
+                    continue;
+                rowA = sortedRow(graph, u, rowA);
+                for (int b = a + 1; b < end; b++) {
+                    int v = candidates[b];
+                    if (representative[v] != v || graph.getDegree(v) != graph.getDegree(u))
+                        continue;
+                    rowB = sortedRow(graph, v, rowB);
+                    if (sameRow(graph, u, v, rowA, rowB)) {
+                        representative[v] = u;
+                        foldedCount++;
+                    }
+                }
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Copies the row of a vertex, as indices of the entries sorted by
+     * neighbour, in the given buffer.
+     */
+    private long[] sortedRow(CompactGraph graph, int u, long[] buffer) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int degree = graph.getDegree(u);
+        if (buffer.length < degree)
+            buffer = new long[degree];
+        for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+            buffer[k - offsets[u]] = (long) targets[k] << 32 | k;
+        }
+        Arrays.sort(buffer, 0, degree);
+        return buffer;
+    }
+
+    /**
+     * Checks whether two vertices, whose sorted rows are given, have the same
+     * neighbours with the same weights and are not adjacent.
+     */
+    private boolean sameRow(CompactGraph graph, int u, int v, long[] rowU, long[] rowV) {
+        double[] weights = graph.getWeights();
+        for (int i = 0; i < graph.getDegree(u); i++) {
+            int targetU = (int) (rowU[i] >>> 32);
+            int targetV = (int) (rowV[i] >>> 32);
+            if (targetU != targetV || targetU == u || targetU == v
+                    || weights[(int) rowU[i]] != weights[(int) rowV[i]])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Gets the vertex into which a vertex is folded.
+     *
+     * @param i The index of the vertex
+     * @return The index of the representative, <code>i</code> if the vertex is
+     *         not folded
+     */
+    public int getRepresentative(int i) {
+        return representative[i];
+    }
+
+    /**
+     * Tells whether a vertex has no neighbours.
+     *
+     * @param i The index of the vertex
+     * @return <code>true</code> if the vertex is isolated
+     */
+    public boolean isIsolated(int i) {
+        return isolated[i];
+    }
+
+    /**
+     * Gets the number of vertices folded into another one.
+     *
+     * @return The number of leaves and twins folded
+     */
+    public int getFoldedCount() {
+        return foldedCount;
+    }
+
+    /**
+     * Gets the number of isolated vertices.
+     *
+     * @return The number of vertices without neighbours
+     */
+    public int getIsolatedCount() {
+        return isolatedCount;
+    }
+}
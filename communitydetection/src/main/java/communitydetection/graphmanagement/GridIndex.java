@@ -0,0 +1,248 @@
+package communitydetection.graphmanagement;
+
+import java.util.function.IntConsumer;
+
+/**
+ * <p>
+ * A spatial index over the vertices and the edges of a drawable graph, used to
+ * select only the elements that intersect a region of the plane.
+ * </p>
+ * <p>
+ * The plane is covered by a hierarchy of uniform grids, level <code>l</code>
+ * having <code>2^l</code> cells per side. Vertices are stored in the finest
+ * level, while every edge is stored in the finest level whose cells are at
+ * least as large as its bounding box, so that it occupies at most 2 x 2 cells
+ * and the memory of the index is linear in the size of the graph. An edge
+ * found in more than one cell is reported only once, in the first cell shared
+ * by its bounding box and the query, so queries need no additional memory and
+ * can be run concurrently.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+public class GridIndex {
+
+    private double[] x;
+    private double[] y;
+    private int[] edgeSource;
+    private int[] edgeTarget;
+
+    private double minX, minY, side;
+    private int levels;
+    private int[][] cellStart;
+    private int[][] items;
+    private int[] vertexCellStart;
+    private int[] vertexItems;
+
+    /**
+     * Creates the index of the given vertices and edges. The arrays are not
+     * copied and must not change while the index is in use.
+     *
+     * @param x          The x of each vertex
+     * @param y          The y of each vertex
+     * @param edgeSource The index of the source of each edge
+     * @param edgeTarget The index of the target of each edge
+     */
+    public GridIndex(double[] x, double[] y, int[] edgeSource, int[] edgeTarget) {
+        this.x = x;
+        this.y = y;
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        minX = Double.POSITIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (x.length == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        side = Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_NORMAL);
+
+        // about four vertices per cell of the finest level
+        levels = 1;
+        while (levels < 12 && (1L << (2 * (levels - 1))) * 4 < x.length) {
+            levels++;
+        }
+        int finest = levels - 1;
+
+        int[] vertexCell = new int[x.length];
+        for (int i = 0; i < x.length; i++) {
+            vertexCell[i] = cellX(x[i], finest) + (cellY(y[i], finest) << finest);
+        }
+        vertexCellStart = new int[(1 << (2 * finest)) + 1];
+        vertexItems = fill(vertexCell, null, vertexCellStart, finest);
+
+        int[] edgeLevel = new int[edgeSource.length];
+        int[] edgeCell = new int[edgeSource.length];
+        for (int e = 0; e < edgeSource.length; e++) {
+            double extent = Math.max(Math.abs(x[edgeSource[e]] - x[edgeTarget[e]]),
+                    Math.abs(y[edgeSource[e]] - y[edgeTarget[e]]));
+            int level = 0;
+            while (level < finest && side / (1 << (level + 1)) >= extent) {
+                level++;
+            }
+            edgeLevel[e] = level;
+            edgeCell[e] = cellX(Math.min(x[edgeSource[e]], x[edgeTarget[e]]), level)
+                    + (cellY(Math.min(y[edgeSource[e]], y[edgeTarget[e]]), level) << level);
+        }
+        cellStart = new int[levels][];
+        items = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            cellStart[level] = new int[(1 << (2 * level)) + 1];
+            items[level] = fill(edgeCell, edgeLevel, cellStart[level], level);
+        }
+    }
+
+    /**
+     * Gets the smallest x of the indexed vertices.
+     *
+     * @return The smallest x
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Gets the smallest y of the indexed vertices.
+     *
+     * @return The smallest y
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Gets the side of the square, with its corner in
+     * <code>(getMinX(), getMinY())</code>, that contains all the vertices.
+     *
+     * @return The side of the indexed square
+     */
+    public double getSide() {
+        return side;
+    }
+
+    /**
+     * Passes to the given action the index of every vertex inside the given
+     * rectangle.
+     *
+     * @param minX   The smallest x of the rectangle
+     * @param minY   The smallest y of the rectangle
+     * @param maxX   The largest x of the rectangle
+     * @param maxY   The largest y of the rectangle
+     * @param action The action receiving the vertices
+     */
+    public void forEachVertex(double minX, double minY, double maxX, double maxY, IntConsumer action) {
+        int finest = levels - 1;
+        int cx0 = cellX(minX, finest), cx1 = cellX(maxX, finest);
+        int cy0 = cellY(minY, finest), cy1 = cellY(maxY, finest);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int cell = cx + (cy << finest);
+                for (int k = vertexCellStart[cell]; k < vertexCellStart[cell + 1]; k++) {
+                    int v = vertexItems[k];
+                    if (x[v] >= minX && x[v] <= maxX && y[v] >= minY && y[v] <= maxY)
+                        action.accept(v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes to the given action, exactly once, the index of every edge whose
+     * bounding box intersects the given rectangle.
+     *
+     * @param minX   The smallest x of the rectangle
+     * @param minY   The smallest y of the rectangle
+     * @param maxX   The largest x of the rectangle
+     * @param maxY   The largest y of the rectangle
+     * @param action The action receiving the edges
+     */
+    public void forEachEdge(double minX, double minY, double maxX, double maxY, IntConsumer action) {
+        for (int level = 0; level < levels; level++) {
+            int cx0 = cellX(minX, level), cx1 = cellX(maxX, level);
+            int cy0 = cellY(minY, level), cy1 = cellY(maxY, level);
+            int[] start = cellStart[level];
+            int[] list = items[level];
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int cell = cx + (cy << level);
+                    for (int k = start[cell]; k < start[cell + 1]; k++) {
+                        int e = list[k];
+                        double ex0 = Math.min(x[edgeSource[e]], x[edgeTarget[e]]);
+                        double ey0 = Math.min(y[edgeSource[e]], y[edgeTarget[e]]);
+                        double ex1 = Math.max(x[edgeSource[e]], x[edgeTarget[e]]);
+                        double ey1 = Math.max(y[edgeSource[e]], y[edgeTarget[e]]);
+                        if (ex1 < minX || ex0 > maxX || ey1 < minY || ey0 > maxY)
+                            continue;
+                        // report the edge only in the first cell it shares with the query
+                        if (cx == Math.max(cellX(ex0, level), cx0) && cy == Math.max(cellY(ey0, level), cy0))
+                            action.accept(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the elements belonging to a level in the cells covered by their
+     * bounding box, starting from the given corner cell.
+     *
+     * @param corner    The cell of the corner with smallest x and y of each
+     *                  element
+     * @param level     The level of each element, <code>null</code> if all the
+     *                  elements belong to <code>target</code>
+     * @param start     The array that will contain the first position of each
+     *                  cell in the returned array
+     * @param target    The level to fill
+     * @return The elements ordered by cell
+     */
+    private int[] fill(int[] corner, int[] level, int[] start, int target) {
+        int mask = (1 << target) - 1;
+        for (int pass = 0; pass < 2; pass++) {
+            int[] list = pass == 0 ? null : new int[start[start.length - 1]];
+            int[] next = pass == 0 ? null : start.clone();
+            for (int i = 0; i < corner.length; i++) {
+                if (level != null && level[i] != target)
+                    continue;
+                int cx = corner[i] & mask;
+                int cy = corner[i] >> target;
+                int cx1 = level == null ? cx : Math.min(cx + 1, mask);
+                int cy1 = level == null ? cy : Math.min(cy + 1, mask);
+                for (int yy = cy; yy <= cy1; yy++) {
+                    for (int xx = cx; xx <= cx1; xx++) {
+                        int cell = xx + (yy << target);
+                        if (pass == 0)
+                            start[cell + 1]++;
+                        else
+                            list[next[cell]++] = i;
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 1; c < start.length; c++) {
+                    start[c] += start[c - 1];
+                }
+            } else {
+                return list;
+            }
+        }
+        return null;
+    }
+
+    private int cellX(double v, int level) {
+        return clamp((int) Math.floor((v - minX) / side * (1 << level)), level);
+    }
+
+    private int cellY(double v, int level) {
+        return clamp((int) Math.floor((v - minY) / side * (1 << level)), level);
+    }
+
+    private int clamp(int cell, int level) {
+        return Math.max(0, Math.min(cell, (1 << level) - 1));
+    }
+}
@@ -0,0 +1,359 @@
+package communitydetection.graphmanagement;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.GraficNode;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * Draws a region of a graph at a level of detail that depends on how large the
+ * communities appear on screen.
+ * </p>
+ * <p>
+ * The graph of the communities returned by <code>Louvain</code> summarises the
+ * structure of the graph: every community is drawn as a single super-node in
+ * the centroid of its vertices, with an area proportional to its size, and the
+ * communities are linked by edges whose width grows with their aggregated
+ * weight. Only the communities whose size on screen, twice the root mean
+ * square distance of their vertices from the centroid, is larger than a
+ * threshold are expanded, drawing their vertices and their internal edges.
+ * A budget of pixels can bound the detail further: the communities are then
+ * expanded from the largest on screen while the pixels of their vertices and
+ * edges fit in the budget, so the cost of a render depends on what is visible
+ * rather than on the size of the graph.
+ * </p>
+ * <p>
+ * <code>prepare</code> computes, once, the centroid, the size, the bounding
+ * box, the vertices and the internal edges of every community, and indexes
+ * the boxes of the communities and the links between them in a
+ * <code>GridIndex</code>; every call to <code>draw</code> then renders a
+ * viewport visiting only the communities and the links that intersect it.
+ * </p>
+ *
+ * @see communitydetection.algorithm.Louvain
+ * @see GridIndex
+ * @author Filippo Bragato
+ */
+public class LevelOfDetailDrawGraph extends DrawGraph {
+
+    private int expandThreshold;
+
+    private double[] x, y;
+    private int[] memberStart;
+    private int[] internalStart, internalSource, internalTarget;
+    private double[] centroidX, centroidY, spread;
+    private double[] boxMinX, boxMinY, boxMaxX, boxMaxY;
+    private double[] internalLength;
+    private int[] linkSource, linkTarget;
+    private double[] linkWeight;
+    private GridIndex communityGrid;
+    private GridIndex linkGrid;
+
+    /**
+     * Constructor that sets the dimension in pixels of the image that will be
+     * produce, the dimension of the vertices and the size on screen above which
+     * a community is expanded.
+     *
+     * @param xSize           The width of the image in pixels
+     * @param ySize           The height of the image in pixels
+     * @param vertexSize      The diameter of the vertex in pixels
+     * @param expandThreshold The size in pixels of a community above which its
+     *                        vertices are drawn
+     */
+    public LevelOfDetailDrawGraph(int xSize, int ySize, int vertexSize, int expandThreshold) {
+        super(xSize, ySize, vertexSize);
+        this.expandThreshold = expandThreshold;
+    }
+
+    /**
+     * Computes the summary of every community used by <code>draw</code>.
+     *
+     * @param net          The drawable graph, whose vertices are already placed
+     * @param communityNet The graph of the communities of the original graph
+     */
+    public void prepare(AbstractGraph<GraficNode, DefaultWeightedEdge> net,
+            AbstractGraph<Community, DefaultWeightedEdge> communityNet) {
+        Community[] communities = communityNet.vertexSet().toArray(new Community[0]);
+        IdentityHashMap<Community, Integer> communityIndex = new IdentityHashMap<>(communities.length);
+        IdentityHashMap<GraficNode, Integer> vertexIndex = new IdentityHashMap<>();
+        ArrayList<GraficNode> points = new ArrayList<>();
+        memberStart = new int[communities.length + 1];
+        for (int c = 0; c < communities.length; c++) {
+            communityIndex.put(communities[c], c);
+            for (Node node : communities[c].getNodes()) {
+                vertexIndex.put(node.getGrafical(), points.size());
+                points.add(node.getGrafical());
+            }
+            memberStart[c + 1] = points.size();
+        }
+        int n = points.size();
+        x = new double[n];
+        y = new double[n];
+        int[] communityOf = new int[n];
+        for (int c = 0; c < communities.length; c++) {
+            for (int i = memberStart[c]; i < memberStart[c + 1]; i++) {
+                communityOf[i] = c;
+                x[i] = points.get(i).getX();
+                y[i] = points.get(i).getY();
+            }
+        }
+
+        centroidX = new double[communities.length];
+        centroidY = new double[communities.length];
+        boxMinX = new double[communities.length];
+        boxMinY = new double[communities.length];
+        boxMaxX = new double[communities.length];
+        boxMaxY = new double[communities.length];
+        spread = new double[communities.length];
+        for (int c = 0; c < communities.length; c++) {
+            boxMinX[c] = boxMinY[c] = Double.POSITIVE_INFINITY;
+            boxMaxX[c] = boxMaxY[c] = Double.NEGATIVE_INFINITY;
+            for (int i = memberStart[c]; i < memberStart[c + 1]; i++) {
+                centroidX[c] += x[i];
+                centroidY[c] += y[i];
+                boxMinX[c] = Math.min(boxMinX[c], x[i]);
+                boxMinY[c] = Math.min(boxMinY[c], y[i]);
+                boxMaxX[c] = Math.max(boxMaxX[c], x[i]);
+                boxMaxY[c] = Math.max(boxMaxY[c], y[i]);
+            }
+            int size = memberStart[c + 1] - memberStart[c];
+            centroidX[c] /= Math.max(size, 1);
+            centroidY[c] /= Math.max(size, 1);
+            // twice the root mean square distance from the centroid, not fooled by a few far vertices
+            for (int i = memberStart[c]; i < memberStart[c + 1]; i++) {
+                double dx = x[i] - centroidX[c];
+                double dy = y[i] - centroidY[c];
+                spread[c] += dx * dx + dy * dy;
+            }
+            spread[c] = 2 * Math.sqrt(spread[c] / Math.max(size, 1));
+        }
+
+        DefaultWeightedEdge[] edges = net.edgeSet().toArray(new DefaultWeightedEdge[0]);
+        internalStart = new int[communities.length + 1];
+        int[] source = new int[edges.length];
+        int[] target = new int[edges.length];
+        int nInternal = 0;
+        for (int e = 0; e < edges.length; e++) {
+            Integer s = vertexIndex.get(net.getEdgeSource(edges[e]));
+            Integer t = vertexIndex.get(net.getEdgeTarget(edges[e]));
+            if (s != null && t != null && communityOf[s] == communityOf[t]) {
+                source[nInternal] = s;
+                target[nInternal] = t;
+                internalStart[communityOf[s] + 1]++;
+                nInternal++;
+            }
+        }
+        for (int c = 0; c < communities.length; c++) {
+            internalStart[c + 1] += internalStart[c];
+        }
+        internalSource = new int[nInternal];
+        internalTarget = new int[nInternal];
+        internalLength = new double[communities.length];
+        int[] next = internalStart.clone();
+        for (int e = 0; e < nInternal; e++) {
+            int pos = next[communityOf[source[e]]]++;
+            internalSource[pos] = source[e];
+            internalTarget[pos] = target[e];
+            internalLength[communityOf[source[e]]] += Math.hypot(x[source[e]] - x[target[e]],
+                    y[source[e]] - y[target[e]]);
+        }
+
+        DefaultWeightedEdge[] links = communityNet.edgeSet().toArray(new DefaultWeightedEdge[0]);
+        linkSource = new int[links.length];
+        linkTarget = new int[links.length];
+        linkWeight = new double[links.length];
+        for (int l = 0; l < links.length; l++) {
+            linkSource[l] = communityIndex.get(communityNet.getEdgeSource(links[l]));
+            linkTarget[l] = communityIndex.get(communityNet.getEdgeTarget(links[l]));
+            linkWeight[l] = communityNet.getEdgeWeight(links[l]);
+        }
+
+        // the box of a community as an edge between two opposite corners, found if it intersects the query
+        double[] cornerX = new double[2 * communities.length];
+        double[] cornerY = new double[2 * communities.length];
+        int[] first = new int[communities.length];
+        int[] second = new int[communities.length];
+        for (int c = 0; c < communities.length; c++) {
+            boolean empty = memberStart[c + 1] == memberStart[c];
+            cornerX[2 * c] = empty ? 0 : boxMinX[c];
+            cornerY[2 * c] = empty ? 0 : boxMinY[c];
+            cornerX[2 * c + 1] = empty ? 0 : boxMaxX[c];
+            cornerY[2 * c + 1] = empty ? 0 : boxMaxY[c];
+            first[c] = 2 * c;
+            second[c] = 2 * c + 1;
+        }
+        communityGrid = new GridIndex(cornerX, cornerY, first, second);
+        linkGrid = new GridIndex(centroidX, centroidY, linkSource, linkTarget);
+    }
+
+    /**
+     * Gets the smallest viewport containing the whole graph.
+     *
+     * @return The viewport containing all the vertices
+     */
+    public Viewport getBounds() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroidX.length; c++) {
+            minX = Math.min(minX, boxMinX[c]);
+            minY = Math.min(minY, boxMinY[c]);
+            maxX = Math.max(maxX, boxMaxX[c]);
+            maxY = Math.max(maxY, boxMaxY[c]);
+        }
+        // a single point still needs an area to be drawn
+        double pad = maxX - minX > 0 || maxY - minY > 0 ? 0 : 0.5;
+        return new Viewport(minX - pad, minY - pad, maxX + pad, maxY + pad);
+    }
+
+    /**
+     * Creates an image of the region of the graph inside the given viewport,
+     * expanding all the communities larger than the threshold. The viewport is
+     * scaled uniformly to fit the image.
+     *
+     * @param viewport The region of the layout that will be represented
+     * @return A <code>BufferedImage</code> representing the region
+     * @throws IllegalArgumentException If the viewport has no width or no
+     *                                  height
+     */
+    public BufferedImage draw(Viewport viewport) {
+        return draw(viewport, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an image of the region of the graph inside the given viewport.
+     * The communities larger than the threshold are expanded from the largest
+     * on screen while their cost fits in the budget: every vertex costs the
+     * pixels of its square and every edge its length in pixels. The viewport is
+     * scaled uniformly to fit the image.
+     *
+     * @param viewport    The region of the layout that will be represented
+     * @param pixelBudget The pixels that the expanded communities can cover
+     * @return A <code>BufferedImage</code> representing the region
+     * @throws IllegalArgumentException If the viewport has no width or no
+     *                                  height
+     */
+    public BufferedImage draw(Viewport viewport, long pixelBudget) {
+        if (!(viewport.getWidth() > 0) || !(viewport.getHeight() > 0))
+            throw new IllegalArgumentException("the viewport must have a positive width and height");
+        double scale = Math.min((xSize - 2 * vertexSize) / viewport.getWidth(),
+                (ySize - 2 * vertexSize) / viewport.getHeight());
+        double offsetX = viewport.getMinX() - vertexSize / scale;
+        double offsetY = viewport.getMinY() - vertexSize / scale;
+        double pad = vertexSize / scale;
+        Viewport visible = new Viewport(viewport.getMinX() - pad, viewport.getMinY() - pad,
+                viewport.getMaxX() + pad, viewport.getMaxY() + pad);
+
+        int[] shown = query(communityGrid, visible);
+        int[] shownLinks = query(linkGrid, visible);
+
+        // the candidates to expansion, the largest on screen first
+        long[] candidates = new long[shown.length];
+        int nCandidates = 0;
+        for (int i = 0; i < shown.length; i++) {
+            int c = shown[i];
+            if (spread[c] * scale > expandThreshold)
+                candidates[nCandidates++] = (long) (Integer.MAX_VALUE - Float.floatToIntBits((float) spread[c])) << 32
+                        | i;
+        }
+        Arrays.sort(candidates, 0, nCandidates);
+        // indexed by the position of the community in shown
+        boolean[] expanded = new boolean[shown.length];
+        double spent = 0;
+        for (int k = 0; k < nCandidates; k++) {
+            int i = (int) candidates[k];
+            int c = shown[i];
+            double cost = (double) (memberStart[c + 1] - memberStart[c]) * vertexSize * vertexSize
+                    + internalLength[c] * scale;
+            if (spent + cost <= pixelBudget) {
+                spent += cost;
+                expanded[i] = true;
+            }
+        }
+
+        BufferedImage img = new BufferedImage(xSize, ySize, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics2d = img.createGraphics();
+        graphics2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics2d.setColor(Color.white);
+        graphics2d.fillRect(0, 0, xSize, ySize);
+        Color[] color = initializeColor();
+
+        graphics2d.setColor(Color.LIGHT_GRAY);
+        for (int l : shownLinks) {
+            int s = linkSource[l];
+            int t = linkTarget[l];
+            float width = (float) Math.min(vertexSize, 1 + Math.log1p(linkWeight[l]));
+            graphics2d.setStroke(new BasicStroke(width));
+            graphics2d.drawLine(toPixel(centroidX[s], offsetX, scale), toPixel(centroidY[s], offsetY, scale),
+                    toPixel(centroidX[t], offsetX, scale), toPixel(centroidY[t], offsetY, scale));
+        }
+        graphics2d.setStroke(new BasicStroke(1));
+        for (int i = 0; i < shown.length; i++) {
+            if (!expanded[i])
+                continue;
+            int c = shown[i];
+            for (int e = internalStart[c]; e < internalStart[c + 1]; e++) {
+                int s = internalSource[e];
+                int t = internalTarget[e];
+                graphics2d.drawLine(toPixel(x[s], offsetX, scale), toPixel(y[s], offsetY, scale),
+                        toPixel(x[t], offsetX, scale), toPixel(y[t], offsetY, scale));
+            }
+        }
+
+        for (int i = 0; i < shown.length; i++) {
+            int c = shown[i];
+            graphics2d.setColor(color[c * 157 % color.length]);
+            if (expanded[i]) {
+                for (int v = memberStart[c]; v < memberStart[c + 1]; v++) {
+                    if (!visible.intersects(x[v], y[v], x[v], y[v]))
+                        continue;
+                    graphics2d.fillOval(toPixel(x[v], offsetX, scale) - vertexSize / 2,
+                            toPixel(y[v], offsetY, scale) - vertexSize / 2, vertexSize, vertexSize);
+                }
+            } else if (memberStart[c + 1] > memberStart[c]) {
+                double radius = Math.sqrt(memberStart[c + 1] - memberStart[c]) * vertexSize / 2.0;
+                radius = Math.max(vertexSize / 2.0, Math.min(radius, spread[c] * scale / 2));
+                int d = (int) Math.round(2 * radius);
+                graphics2d.fillOval(toPixel(centroidX[c], offsetX, scale) - d / 2,
+                        toPixel(centroidY[c], offsetY, scale) - d / 2, d, d);
+            }
+        }
+        graphics2d.dispose();
+        return img;
+    }
+
+    /**
+     * Finds the elements of an index that intersect a viewport.
+     *
+     * @param grid     The index, whose edges are the elements
+     * @param viewport The viewport
+     * @return The indices of the elements, in increasing order
+     */
+    private int[] query(GridIndex grid, Viewport viewport) {
+        int[][] found = { new int[16] };
+        int[] count = { 0 };
+        grid.forEachEdge(viewport.getMinX(), viewport.getMinY(), viewport.getMaxX(), viewport.getMaxY(), e -> {
+            if (count[0] == found[0].length)
+                found[0] = Arrays.copyOf(found[0], 2 * count[0]);
+            found[0][count[0]++] = e;
+        });
+        int[] result = Arrays.copyOf(found[0], count[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private int toPixel(double v, double offset, double scale) {
+        return (int) Math.round((v - offset) * scale);
+    }
+}
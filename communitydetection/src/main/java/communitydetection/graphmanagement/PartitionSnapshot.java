@@ -0,0 +1,272 @@
+package communitydetection.graphmanagement;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+
+/**
+ * <p>
+ * An immutable copy of a partition of a graph, indexed for queries: the
+ * community of every node, the members of every community and the weight of
+ * the edges between every pair of linked communities, the neighbours of each
+ * community sorted from the heaviest link.
+ * </p>
+ * <p>
+ * Nothing changes after the constructor returns, so a snapshot can be read by
+ * any number of threads without locks while a new partition is computed, and
+ * all the answers read from the same snapshot are consistent with each other.
+ * Communities are numbered from 0 in the order of the vertex set of the graph
+ * of the communities; nodes missing from it are in a community of their own.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+public final class PartitionSnapshot {
+
+    private final long epoch;
+    private final Node[] vertices;
+    private final IdentityHashMap<Node, Integer> index;
+    private final int[] community;
+    private final int[] memberStart;
+    private final Node[] members;
+    private final double[] internalWeight;
+    private final int[] linkStart;
+    private final int[] linkTarget;
+    private final double[] linkWeight;
+
+    /**
+     * Creates the snapshot of a partition.
+     *
+     * @param network      The graph
+     * @param communityNet The graph of the communities of network, such as the
+     *                     result of <code>Louvain</code>
+     * @param epoch        The number identifying this snapshot
+     */
+    public PartitionSnapshot(AbstractGraph<? extends Node, DefaultWeightedEdge> network,
+            AbstractGraph<Community, DefaultWeightedEdge> communityNet, long epoch) {
+        this.epoch = epoch;
+        CompactGraph compact = new CompactGraph(network);
+        int n = compact.getVertexCount();
+        vertices = new Node[n];
+        index = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            vertices[i] = compact.getVertex(i);
+            index.put(vertices[i], i);
+        }
+
+        community = new int[n];
+        Arrays.fill(community, -1);
+        int nOfComm = 0;
+        for (Community c : communityNet.vertexSet()) {
+            for (Node node : c.getNodes()) {
+                Integer i = index.get(node);
+                if (i != null)
+                    community[i] = nOfComm;
+            }
+            nOfComm++;
+        }
+        for (int i = 0; i < n; i++) {
+            if (community[i] == -1)
+                community[i] = nOfComm++;
+        }
+
+        memberStart = new int[nOfComm + 1];
+        for (int i = 0; i < n; i++) {
+            memberStart[community[i] + 1]++;
+        }
+        for (int c = 0; c < nOfComm; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+        int[] memberIndex = new int[n];
+        int[] next = Arrays.copyOf(memberStart, nOfComm);
+        for (int i = 0; i < n; i++) {
+            memberIndex[next[community[i]]++] = i;
+        }
+        members = new Node[n];
+        for (int k = 0; k < n; k++) {
+            members[k] = vertices[memberIndex[k]];
+        }
+
+        // the links of every community, accumulated in a dense array whose touched entries are listed
+        internalWeight = new double[nOfComm];
+        linkStart = new int[nOfComm + 1];
+        int[] targets = new int[Math.max(16, (int) Math.min(compact.getEntryCount(), Integer.MAX_VALUE - 8))];
+        double[] weights = new double[targets.length];
+        double[] accumulator = new double[nOfComm];
+        int[] mark = new int[nOfComm];
+        Arrays.fill(mark, -1);
+        int[] touched = new int[nOfComm];
+        long[] keys = new long[nOfComm];
+        int[] offsets = compact.getOffsets();
+        int[] rowTargets = compact.getTargets();
+        double[] rowWeights = compact.getWeights();
+        int count = 0;
+        for (int c = 0; c < nOfComm; c++) {
+            int nTouched = 0;
+            for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                int u = memberIndex[k];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int d = community[rowTargets[e]];
+                    if (d == c) {
+                        // an edge inside the community is in the rows of both its ends, a loop once
+                        internalWeight[c] += rowTargets[e] == u ? rowWeights[e] : rowWeights[e] / 2;
+                        continue;
+                    }
+                    if (mark[d] != c) {
+                        mark[d] = c;
+                        accumulator[d] = 0;
+                        touched[nTouched++] = d;
+                    }
+                    accumulator[d] += rowWeights[e];
+                }
+            }
+            // heaviest first; the order uses the weights rounded to float, the stored weights are exact
+            for (int i = 0; i < nTouched; i++) {
+                int bits = Float.floatToIntBits((float) Math.max(0, accumulator[touched[i]]));
+                keys[i] = (long) (Integer.MAX_VALUE - bits) << 32 | touched[i];
+            }
+            Arrays.sort(keys, 0, nTouched);
+            for (int i = 0; i < nTouched; i++) {
+                int d = (int) keys[i];
+                targets[count] = d;
+                weights[count++] = accumulator[d];
+            }
+            linkStart[c + 1] = count;
+        }
+        linkTarget = Arrays.copyOf(targets, count);
+        linkWeight = Arrays.copyOf(weights, count);
+    }
+
+    /**
+     * Gets the number identifying this snapshot.
+     *
+     * @return The epoch
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gets the number of nodes of the graph.
+     *
+     * @return The number of nodes
+     */
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    /**
+     * Gets the number of communities.
+     *
+     * @return The number of communities
+     */
+    public int getCommunityCount() {
+        return internalWeight.length;
+    }
+
+    /**
+     * Gets the community of a node.
+     *
+     * @param node The node
+     * @return The index of its community, -1 if the node is not in the graph
+     */
+    public int communityOf(Node node) {
+        Integer i = index.get(node);
+        return i == null ? -1 : community[i];
+    }
+
+    /**
+     * Gets the number of members of a community.
+     *
+     * @param c The index of the community
+     * @return The number of nodes in the community
+     */
+    public int getCommunitySize(int c) {
+        return memberStart[c + 1] - memberStart[c];
+    }
+
+    /**
+     * Gets the members of a community, without copying them.
+     *
+     * @param c The index of the community
+     * @return An unmodifiable list of the nodes in the community
+     */
+    public List<Node> getMembers(int c) {
+        int start = memberStart[c];
+        int size = memberStart[c + 1] - start;
+        return new AbstractList<Node>() {
+            @Override
+            public Node get(int i) {
+                if (i < 0 || i >= size)
+                    throw new IndexOutOfBoundsException(i);
+                return members[start + i];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Gets the weight of the edges inside a community.
+     *
+     * @param c The index of the community
+     * @return The sum of the weights of the edges between its members
+     */
+    public double getInternalWeight(int c) {
+        return internalWeight[c];
+    }
+
+    /**
+     * Gets the number of communities linked to a community.
+     *
+     * @param c The index of the community
+     * @return The number of neighbouring communities
+     */
+    public int getNeighbourCount(int c) {
+        return linkStart[c + 1] - linkStart[c];
+    }
+
+    /**
+     * Gets a community linked to a community, from the heaviest link.
+     *
+     * @param c The index of the community
+     * @param i The rank of the neighbour, from 0 for the heaviest link
+     * @return The index of the neighbouring community
+     */
+    public int getNeighbour(int c, int i) {
+        return linkTarget[linkStart[c] + i];
+    }
+
+    /**
+     * Gets the weight of the link to a neighbouring community.
+     *
+     * @param c The index of the community
+     * @param i The rank of the neighbour, from 0 for the heaviest link
+     * @return The sum of the weights of the edges between the two communities
+     */
+    public double getLinkWeight(int c, int i) {
+        return linkWeight[linkStart[c] + i];
+    }
+
+    /**
+     * Gets the communities with the heaviest links to a community.
+     *
+     * @param c The index of the community
+     * @param k The maximum number of neighbours
+     * @return The indices of at most <code>k</code> neighbouring communities,
+     *         from the heaviest link
+     */
+    public int[] topNeighbours(int c, int k) {
+        return Arrays.copyOfRange(linkTarget, linkStart[c], linkStart[c] + Math.min(k, getNeighbourCount(c)));
+    }
+}
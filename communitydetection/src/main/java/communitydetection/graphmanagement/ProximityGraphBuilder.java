@@ -0,0 +1,312 @@
+package communitydetection.graphmanagement;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.Node;
+import communitydetection.graphnodes.Node2D;
+
+/**
+ * <p>
+ * Builds the graph of the points that are close to each other on the plane,
+ * ready for <code>Louvain</code>: either every point is linked to its
+ * <code>k</code> nearest neighbours, or to all the points within a radius.
+ * </p>
+ * <p>
+ * The points are sorted in a k-d tree, split at the median of the longer side
+ * of every node, and the neighbours of every point are searched, in parallel,
+ * only in the nodes that can hold a point nearer than the ones already found,
+ * so the graph is built in about <code>O(n k log n)</code> instead of comparing
+ * all the pairs, however the points are spread on the plane. The weight of an
+ * edge decreases with the distance between its ends: by default it is
+ * <code>exp(-(d / s)^2)</code>, where <code>s</code> is the radius or the mean
+ * distance of the <code>k</code>-th nearest neighbour, so that it does not
+ * depend on the unit of the coordinates.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+public class ProximityGraphBuilder {
+
+    private static final int LEAF_SIZE = 8;
+
+    private Node2D[] points;
+    private double[] x;
+    private double[] y;
+    private DoubleUnaryOperator weight = null;
+
+    // the k-d tree: the node of the range [lo, hi) of items has its point at
+    // the middle, the nearer ones on the left and the farther ones on the right
+    private int[] items;
+    private boolean[] splitX;
+
+    /**
+     * Constructor that reads the coordinates of the points and sorts them in
+     * the tree. The points must not move while the builder is in use.
+     *
+     * @param points The points, which will be the vertices of the graphs in the
+     *               same order
+     */
+    public ProximityGraphBuilder(Collection<? extends Node2D> points) {
+        this.points = points.toArray(new Node2D[0]);
+        int n = this.points.length;
+        x = new double[n];
+        y = new double[n];
+        items = new int[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = this.points[i].getX();
+            y[i] = this.points[i].getY();
+            items[i] = i;
+        }
+        splitX = new boolean[n];
+        buildTree(0, n);
+    }
+
+    /**
+     * Sets the weight of an edge as a function of the distance between its
+     * ends.
+     *
+     * @param weight The function, <code>null</code> for the default one
+     */
+    public void setWeight(DoubleUnaryOperator weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Builds the graph in which every point is linked to its <code>k</code>
+     * nearest points. The relation is not symmetric, an edge exists if either
+     * end is among the nearest neighbours of the other one, so a point can have
+     * more than <code>k</code> neighbours.
+     *
+     * @param k The number of neighbours of every point
+     * @return The graph of the points
+     */
+    public DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> nearestNeighbours(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive");
+        int n = points.length;
+        int kk = Math.max(0, Math.min(k, n - 1));
+        int[][] neighbours = new int[n][];
+        double[][] distances = new double[n][];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            neighbours[i] = new int[kk];
+            distances[i] = new double[kk];
+            if (kk > 0)
+                nearest(i, 0, n, neighbours[i], distances[i], 0);
+        });
+        double scale = 0;
+        for (int i = 0; i < n && kk > 0; i++) {
+            scale += distances[i][kk - 1] / n;
+        }
+        return build(neighbours, distances, scale);
+    }
+
+    /**
+     * Builds the graph in which every point is linked to all the points whose
+     * distance is at most the given radius.
+     *
+     * @param radius The radius
+     * @return The graph of the points
+     */
+    public DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> radius(double radius) {
+        if (!(radius > 0))
+            throw new IllegalArgumentException("radius must be positive");
+        int n = points.length;
+        int[][] neighbours = new int[n][];
+        double[][] distances = new double[n][];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Hits hits = new Hits();
+            within(i, 0, n, radius, hits);
+            neighbours[i] = Arrays.copyOf(hits.found, hits.count);
+            distances[i] = Arrays.copyOf(hits.distances, hits.count);
+        });
+        return build(neighbours, distances, radius);
+    }
+
+    /**
+     * Finds the nearest points of a point in the node of the range
+     * <code>[lo, hi)</code>, visiting first the side of the point and then the
+     * other one only if it can hold a point nearer than the ones found.
+     *
+     * @return The number of points found so far
+     */
+    private int nearest(int i, int lo, int hi, int[] found, double[] d, int count) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int p = lo; p < hi; p++) {
+                count = offer(i, items[p], found, d, count);
+            }
+            return count;
+        }
+        int mid = (lo + hi) >>> 1;
+        int j = items[mid];
+        double diff = splitX[mid] ? x[i] - x[j] : y[i] - y[j];
+        count = offer(i, j, found, d, count);
+        int k = found.length;
+        if (diff < 0) {
+            count = nearest(i, lo, mid, found, d, count);
+            // the points on the other side are farther than the split
+            if (count < k || -diff < d[k - 1])
+                count = nearest(i, mid + 1, hi, found, d, count);
+        } else {
+            count = nearest(i, mid + 1, hi, found, d, count);
+            if (count < k || diff < d[k - 1])
+                count = nearest(i, lo, mid, found, d, count);
+        }
+        return count;
+    }
+
+    /**
+     * Inserts a point in the sorted list of the nearest ones, if it is nearer
+     * than the last one.
+     */
+    private int offer(int i, int j, int[] found, double[] d, int count) {
+        if (j == i)
+            return count;
+        int k = found.length;
+        double dx = x[i] - x[j], dy = y[i] - y[j];
+        double dist = Math.sqrt(dx * dx + dy * dy);
+        if (count == k && dist >= d[k - 1])
+            return count;
+        int q = count < k ? count++ : k - 1;
+        while (q > 0 && d[q - 1] > dist) {
+            d[q] = d[q - 1];
+            found[q] = found[q - 1];
+            q--;
+        }
+        d[q] = dist;
+        found[q] = j;
+        return count;
+    }
+
+    /**
+     * Collects the points within the radius in the node of the range
+     * <code>[lo, hi)</code>. Every edge is kept by its smaller end.
+     */
+    private void within(int i, int lo, int hi, double radius, Hits hits) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int p = lo; p < hi; p++) {
+                hits.offer(i, items[p], radius);
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int j = items[mid];
+        double diff = splitX[mid] ? x[i] - x[j] : y[i] - y[j];
+        hits.offer(i, j, radius);
+        if (diff <= radius)
+            within(i, lo, mid, radius, hits);
+        if (-diff <= radius)
+            within(i, mid + 1, hi, radius, hits);
+    }
+
+    /**
+     * Builds the node of the range <code>[lo, hi)</code> of the tree, splitting
+     * it at the median of its longer side.
+     */
+    private void buildTree(int lo, int hi) {
+        if (hi - lo <= LEAF_SIZE)
+            return;
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int p = lo; p < hi; p++) {
+            int i = items[p];
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        int mid = (lo + hi) >>> 1;
+        splitX[mid] = maxX - minX >= maxY - minY;
+        select(lo, hi, mid, splitX[mid] ? x : y);
+        buildTree(lo, mid);
+        buildTree(mid + 1, hi);
+    }
+
+    /**
+     * Moves to the position <code>kth</code> of the range <code>[lo, hi)</code>
+     * the point that would be there if the range were sorted by the given
+     * coordinate, with the smaller or equal points before it and the larger or
+     * equal ones after it.
+     */
+    private void select(int lo, int hi, int kth, double[] key) {
+        hi--;
+        while (lo < hi) {
+            double pivot = key[items[(lo + hi) >>> 1]];
+            int a = lo, b = hi;
+            while (a <= b) {
+                while (key[items[a]] < pivot)
+                    a++;
+                while (key[items[b]] > pivot)
+                    b--;
+                if (a <= b) {
+                    int t = items[a];
+                    items[a++] = items[b];
+                    items[b--] = t;
+                }
+            }
+            if (kth <= b)
+                hi = b;
+            else if (kth >= a)
+                lo = a;
+            else
+                return;
+        }
+    }
+
+    /**
+     * The points found within a radius of a point, with their distances.
+     */
+    private final class Hits {
+
+        private int[] found = new int[8];
+        private double[] distances = new double[8];
+        private int count = 0;
+
+        private void offer(int i, int j, double radius) {
+            if (j <= i)
+                return;
+            double dx = x[i] - x[j], dy = y[i] - y[j];
+            double d2 = dx * dx + dy * dy;
+            if (d2 > radius * radius)
+                return;
+            if (count == found.length) {
+                found = Arrays.copyOf(found, 2 * count);
+                distances = Arrays.copyOf(distances, 2 * count);
+            }
+            found[count] = j;
+            distances[count++] = Math.sqrt(d2);
+        }
+    }
+
+    /**
+     * Creates the graph from the neighbours of every point, adding each edge
+     * once.
+     */
+    private DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> build(int[][] neighbours,
+            double[][] distances, double scale) {
+        DoubleUnaryOperator w = weight;
+        if (w == null) {
+            double s2 = scale > 0 ? scale * scale : 1;
+            w = d -> Math.exp(-d * d / s2);
+        }
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net = new DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge>(
+                DefaultWeightedEdge.class);
+        for (Node2D point : points) {
+            net.addVertex(point);
+        }
+        for (int i = 0; i < points.length; i++) {
+            for (int p = 0; p < neighbours[i].length; p++) {
+                // null if the edge has already been added from its other end
+                DefaultWeightedEdge edge = net.addEdge(points[i], points[neighbours[i][p]]);
+                if (edge != null)
+                    net.setEdgeWeight(edge, w.applyAsDouble(distances[i][p]));
+            }
+        }
+        return net;
+    }
+}
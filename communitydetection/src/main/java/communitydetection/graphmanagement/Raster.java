@@ -0,0 +1,229 @@
+package communitydetection.graphmanagement;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Primitive rasterisation routines used by the renderers that write pixels
+ * straight into an <code>int[]</code> buffer of packed RGB values instead of
+ * going through <code>Graphics2D</code>.
+ * <p>
+ * Every routine draws only the rows in <code>[rowFrom, rowTo)</code>, so that
+ * different threads can render disjoint bands of the same buffer.
+ * </p>
+ *
+ * @author Filippo Bragato
+ */
+final class Raster {
+
+    private Raster() {
+    }
+
+    /**
+     * Receives the pixels covered by a primitive, identified by their offset
+     * <code>y * width + x</code> in the buffer.
+     */
+    interface Plot {
+        void plot(int offset);
+    }
+
+    /**
+     * Creates the mask of a disc inscribed in a square of the given side, the
+     * same shape drawn by <code>fillRoundRect(x, y, size, size, size, size)</code>.
+     *
+     * @param size The diameter of the disc in pixels
+     * @return A <code>size * size</code> mask, row by row, where
+     *         <code>true</code> means that the pixel belongs to the disc
+     */
+    static boolean[] discStamp(int size) {
+        boolean[] stamp = new boolean[size * size];
+        double r = size / 2.0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double dx = x + 0.5 - r;
+                double dy = y + 0.5 - r;
+                stamp[y * size + x] = dx * dx + dy * dy <= r * r;
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Draws a disc stamp with its top left corner in <code>(x, y)</code>.
+     *
+     * @param pixels  The buffer of packed RGB values
+     * @param width   The width of the image stored in the buffer
+     * @param rowFrom The first row that can be written
+     * @param rowTo   The row after the last that can be written
+     * @param stamp   The mask created by <code>discStamp</code>
+     * @param size    The side of the mask
+     * @param x       The x of the top left corner
+     * @param y       The y of the top left corner
+     * @param rgb     The color of the disc
+     */
+    static void drawStamp(int[] pixels, int width, int rowFrom, int rowTo, boolean[] stamp, int size, int x, int y,
+            int rgb) {
+        walkStamp(width, rowFrom, rowTo, stamp, size, x, y, offset -> pixels[offset] = rgb);
+    }
+
+    /**
+     * Passes every pixel of a disc stamp, with its top left corner in
+     * <code>(x, y)</code>, to the given <code>Plot</code>.
+     *
+     * @param width   The width of the image
+     * @param rowFrom The first row that can be plotted
+     * @param rowTo   The row after the last that can be plotted
+     * @param stamp   The mask created by <code>discStamp</code>
+     * @param size    The side of the mask
+     * @param x       The x of the top left corner
+     * @param y       The y of the top left corner
+     * @param plot    The receiver of the pixels
+     */
+    static void walkStamp(int width, int rowFrom, int rowTo, boolean[] stamp, int size, int x, int y, Plot plot) {
+        int yFrom = Math.max(y, rowFrom);
+        int yTo = Math.min(y + size, rowTo);
+        int xFrom = Math.max(x, 0);
+        int xTo = Math.min(x + size, width);
+        for (int py = yFrom; py < yTo; py++) {
+            int stampRow = (py - y) * size - x;
+            int row = py * width;
+            for (int px = xFrom; px < xTo; px++) {
+                if (stamp[stampRow + px])
+                    plot.plot(row + px);
+            }
+        }
+    }
+
+    /**
+     * Draws the segment between <code>(x1, y1)</code> and <code>(x2, y2)</code>.
+     *
+     * @param pixels  The buffer of packed RGB values
+     * @param width   The width of the image stored in the buffer
+     * @param rowFrom The first row that can be written
+     * @param rowTo   The row after the last that can be written
+     * @param x1      The x of the first end
+     * @param y1      The y of the first end
+     * @param x2      The x of the second end
+     * @param y2      The y of the second end
+     * @param rgb     The color of the segment
+     */
+    static void drawLine(int[] pixels, int width, int rowFrom, int rowTo, int x1, int y1, int x2, int y2, int rgb) {
+        walkLine(width, rowFrom, rowTo, x1, y1, x2, y2, offset -> pixels[offset] = rgb);
+    }
+
+    /**
+     * Walks the segment between <code>(x1, y1)</code> and <code>(x2, y2)</code>
+     * passing every pixel inside the band to the given <code>Plot</code>. The
+     * pixel for each step along the major axis is computed directly from the
+     * step, so the band can be entered anywhere along the segment and the result
+     * does not depend on how the image has been split.
+     *
+     * @param width   The width of the image
+     * @param rowFrom The first row that can be plotted
+     * @param rowTo   The row after the last that can be plotted
+     * @param x1      The x of the first end
+     * @param y1      The y of the first end
+     * @param x2      The x of the second end
+     * @param y2      The y of the second end
+     * @param plot    The receiver of the pixels
+     */
+    static void walkLine(int width, int rowFrom, int rowTo, int x1, int y1, int x2, int y2, Plot plot) {
+        int dx = Math.abs(x2 - x1);
+        int dy = Math.abs(y2 - y1);
+        if (dy > dx) {
+            if (y1 > y2) {
+                int t = x1;
+                x1 = x2;
+                x2 = t;
+                t = y1;
+                y1 = y2;
+                y2 = t;
+            }
+            long sx = x2 - x1;
+            int yFrom = Math.max(y1, rowFrom);
+            int yTo = Math.min(y2, rowTo - 1);
+            if (yFrom > yTo)
+                return;
+            // x = x1 + floor((2 * (y - y1) * sx + dy) / (2 * dy)), kept as quotient and remainder
+            long den = 2L * dy;
+            long num = 2 * (yFrom - y1) * sx + dy;
+            int x = x1 + (int) Math.floorDiv(num, den);
+            long rem = Math.floorMod(num, den);
+            for (int y = yFrom; y <= yTo; y++) {
+                if (x >= 0 && x < width)
+                    plot.plot(y * width + x);
+                rem += 2 * sx;
+                if (rem >= den) {
+                    rem -= den;
+                    x++;
+                } else if (rem < 0) {
+                    rem += den;
+                    x--;
+                }
+            }
+        } else {
+            if (x1 > x2) {
+                int t = x1;
+                x1 = x2;
+                x2 = t;
+                t = y1;
+                y1 = y2;
+                y2 = t;
+            }
+            long sy = y2 - y1;
+            int xFrom = Math.max(x1, 0);
+            int xTo = Math.min(x2, width - 1);
+            if (sy != 0) {
+                // y is monotone in x: restrict the walk to the columns that can reach the band
+                double a = x1 + (double) (rowFrom - 1 - y1) * dx / sy;
+                double b = x1 + (double) (rowTo - y1) * dx / sy;
+                xFrom = Math.max(xFrom, (int) Math.floor(Math.min(a, b)) - 1);
+                xTo = Math.min(xTo, (int) Math.ceil(Math.max(a, b)) + 1);
+            } else if (y1 < rowFrom || y1 >= rowTo) {
+                return;
+            }
+            if (xFrom > xTo)
+                return;
+            if (dx == 0) {
+                plot.plot(y1 * width + xFrom);
+                return;
+            }
+            long den = 2L * dx;
+            long num = 2 * (xFrom - x1) * sy + dx;
+            int y = y1 + (int) Math.floorDiv(num, den);
+            long rem = Math.floorMod(num, den);
+            for (int x = xFrom; x <= xTo; x++) {
+                if (y >= rowFrom && y < rowTo)
+                    plot.plot(y * width + x);
+                rem += 2 * sy;
+                if (rem >= den) {
+                    rem -= den;
+                    y++;
+                } else if (rem < 0) {
+                    rem += den;
+                    y--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the rows in <code>[rowFrom, rowTo)</code> of a buffer of packed RGB
+     * values into an image of type <code>TYPE_3BYTE_BGR</code>.
+     *
+     * @param pixels  The buffer of packed RGB values
+     * @param img     The image, with the same size of the buffer
+     * @param rowFrom The first row to copy
+     * @param rowTo   The row after the last to copy
+     */
+    static void copyToBGR(int[] pixels, BufferedImage img, int rowFrom, int rowTo) {
+        byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        int width = img.getWidth();
+        for (int i = rowFrom * width; i < rowTo * width; i++) {
+            int rgb = pixels[i];
+            data[3 * i] = (byte) rgb;
+            data[3 * i + 1] = (byte) (rgb >> 8);
+            data[3 * i + 2] = (byte) (rgb >> 16);
+        }
+    }
+}
@@ -63,6 +63,18 @@ public class TestGraphCreator {
      * @return Graph of <code>SimpleNode</code> with a community structure.
      */
     public DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> lpartition() {
+        return lpartition(new Random());
+    }
+
+    /**
+     * Creates a standard graph of <code>SimpleNode</code> as
+     * <code>lpartition()</code> does, drawing the edges from the given source,
+     * so that the same source gives the same graph.
+     * 
+     * @param rng The source of the edges
+     * @return Graph of <code>SimpleNode</code> with a community structure.
+     */
+    public DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> lpartition(Random rng) {
 
         DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> net = new DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge>(
                 DefaultWeightedEdge.class);
@@ -74,7 +86,6 @@ public class TestGraphCreator {
             net.addVertex(node);
         }
 
-        Random rng = new Random();
         for (int i = 0; i < nodes.length; i++) {
             for (int j = i + 1; j < nodes.length; j++) {
                 if ((i / g) == (j / g)) {
@@ -0,0 +1,317 @@
+package communitydetection.graphmanagement;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.GraficNode;
+
+/**
+ * <p>
+ * Draws a graph as a pyramid of square tiles, in the layout used by XYZ map
+ * viewers: at zoom level <code>z</code> the whole graph covers
+ * <code>2^z x 2^z</code> tiles and the tile in column <code>x</code> and row
+ * <code>y</code> is written in <code>z/x/y.png</code>.
+ * </p>
+ * <p>
+ * The full image is never materialised: tiles are rendered one at a time per
+ * thread into a buffer of <code>tileSize x tileSize</code> pixels and written
+ * to disk, and a <code>GridIndex</code> over the positions of the vertices
+ * selects the vertices and the edges that can touch each tile. Only the tiles
+ * reached by a vertex or crossed by an edge are visited, found by sweeping the
+ * rows of tiles of each level, so deep levels cost as much as the tiles they
+ * write, not as all their <code>4^z</code> tiles.
+ * </p>
+ * <p>
+ * The deepest level can be at most <code>2^29</code> pixels wide, which allows
+ * zoom 20 with tiles of 512 pixels.
+ * </p>
+ *
+ * @see GridIndex
+ * @author Filippo Bragato
+ */
+public class TiledDrawGraph extends DrawGraph {
+
+    private static final int EDGE_COLOR = Color.LIGHT_GRAY.getRGB() & 0xFFFFFF;
+    private static final int BACKGROUND_COLOR = 0xFFFFFF;
+
+    private static final long MAX_LEVEL_SIZE = 1L << 29;
+
+    private int tileSize;
+
+    /**
+     * Constructor that sets the dimension in pixels of the tiles and the
+     * dimension of the vertices
+     *
+     * @param tileSize   The side of every tile in pixels
+     * @param vertexSize The diameter of the vertex in pixels
+     */
+    public TiledDrawGraph(int tileSize, int vertexSize) {
+        super(tileSize, tileSize, vertexSize);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Writes the tiles of all the zoom levels from 0 to <code>maxZoom</code> in
+     * the given directory.
+     *
+     * @param net       The net that will be represented
+     * @param directory The directory that will contain a subdirectory for each
+     *                  zoom level
+     * @param maxZoom   The deepest zoom level, at most 20
+     * @throws IOException              If a tile cannot be written
+     * @throws IllegalArgumentException If the deepest level is too wide
+     */
+    public void writeTiles(AbstractGraph<GraficNode, DefaultWeightedEdge> net, File directory, int maxZoom)
+            throws IOException {
+        GraficNode[] points = net.vertexSet().toArray(new GraficNode[0]);
+        IdentityHashMap<GraficNode, Integer> index = new IdentityHashMap<>(points.length);
+        double[] x = new double[points.length];
+        double[] y = new double[points.length];
+        int[] community = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            index.put(points[i], i);
+            x[i] = points[i].getX();
+            y[i] = points[i].getY();
+            community[i] = points[i].getCommunityId();
+        }
+        DefaultWeightedEdge[] edges = net.edgeSet().toArray(new DefaultWeightedEdge[0]);
+        int[] edgeSource = new int[edges.length];
+        int[] edgeTarget = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            edgeSource[i] = index.get(net.getEdgeSource(edges[i]));
+            edgeTarget[i] = index.get(net.getEdgeTarget(edges[i]));
+        }
+        writeTiles(new GridIndex(x, y, edgeSource, edgeTarget), x, y, community, edgeSource, edgeTarget, directory,
+                maxZoom);
+    }
+
+    /**
+     * Writes the tiles of all the zoom levels from 0 to <code>maxZoom</code> of
+     * the graph seen by the given view.
+     *
+     * @param view      The view of the graph that will be represented
+     * @param directory The directory that will contain a subdirectory for each
+     *                  zoom level
+     * @param maxZoom   The deepest zoom level, at most 20
+     * @throws IOException              If a tile cannot be written
+     * @throws IllegalArgumentException If the deepest level is too wide
+     */
+    public void writeTiles(DrawableView view, File directory, int maxZoom) throws IOException {
+        int[][] ends = FastDrawGraph.edgeEnds(view);
+        writeTiles(new GridIndex(view.getX(), view.getY(), ends[0], ends[1]), view.getX(), view.getY(),
+                view.getCommunityId(), ends[0], ends[1], directory, maxZoom);
+    }
+
+    /**
+     * Writes the tiles of all the zoom levels from 0 to <code>maxZoom</code> of
+     * a graph given as arrays.
+     *
+     * @param grid       The index of the vertices and the edges
+     * @param x          The x of each vertex
+     * @param y          The y of each vertex
+     * @param community  The id of the community of each vertex
+     * @param edgeSource The index of the source of each edge
+     * @param edgeTarget The index of the target of each edge
+     * @param directory  The directory that will contain a subdirectory for each
+     *                   zoom level
+     * @param maxZoom    The deepest zoom level, at most 20
+     * @throws IOException              If a tile cannot be written
+     * @throws IllegalArgumentException If the deepest level is too wide
+     */
+    protected void writeTiles(GridIndex grid, double[] x, double[] y, int[] community, int[] edgeSource,
+            int[] edgeTarget, File directory, int maxZoom) throws IOException {
+        if (maxZoom < 0 || maxZoom > 20)
+            throw new IllegalArgumentException("maxZoom must be between 0 and 20");
+        // the coordinates relative to a tile, and twice their differences, must fit in an int
+        if ((long) tileSize << maxZoom > MAX_LEVEL_SIZE)
+            throw new IllegalArgumentException("the deepest level must be at most 2^29 pixels wide");
+        Color[] color = initializeColor();
+        int[] palette = new int[color.length];
+        for (int i = 0; i < color.length; i++) {
+            palette[i] = color[i].getRGB() & 0xFFFFFF;
+        }
+        boolean[] stamp = Raster.discStamp(vertexSize);
+        ThreadLocal<int[]> buffers = ThreadLocal.withInitial(() -> new int[tileSize * tileSize]);
+        int half = vertexSize / 2;
+
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            int tiles = 1 << zoom;
+            // pixels of the whole level; the vertices keep a margin of one vertex from the border
+            double scale = ((double) tileSize * tiles - 2 * vertexSize) / grid.getSide();
+            double worldPerPixel = 1 / scale;
+            double originX = grid.getMinX() - vertexSize * worldPerPixel;
+            double originY = grid.getMinY() - vertexSize * worldPerPixel;
+            File levelDir = new File(directory, Integer.toString(zoom));
+            long[] occupied = occupiedTiles(x, y, edgeSource, edgeTarget, tiles, originX, originY, scale);
+            try {
+                IntStream.range(0, occupied.length).parallel().forEach(t -> {
+                    int tx = (int) (occupied[t] >>> 32);
+                    int ty = (int) occupied[t];
+                    double wx0 = originX + (double) tx * tileSize * worldPerPixel;
+                    double wy0 = originY + (double) ty * tileSize * worldPerPixel;
+                    double wx1 = wx0 + tileSize * worldPerPixel;
+                    double wy1 = wy0 + tileSize * worldPerPixel;
+                    double pad = vertexSize * worldPerPixel;
+                    long ox = (long) tx * tileSize;
+                    long oy = (long) ty * tileSize;
+
+                    int[] pixels = buffers.get();
+                    Arrays.fill(pixels, BACKGROUND_COLOR);
+                    boolean[] empty = { true };
+                    grid.forEachEdge(wx0 - pad, wy0 - pad, wx1 + pad, wy1 + pad, e -> {
+                        empty[0] = false;
+                        int s = edgeSource[e];
+                        int d = edgeTarget[e];
+                        Raster.drawLine(pixels, tileSize, 0, tileSize,
+                                (int) (Math.round((x[s] - originX) * scale) - ox),
+                                (int) (Math.round((y[s] - originY) * scale) - oy),
+                                (int) (Math.round((x[d] - originX) * scale) - ox),
+                                (int) (Math.round((y[d] - originY) * scale) - oy), EDGE_COLOR);
+                    });
+                    grid.forEachVertex(wx0 - pad, wy0 - pad, wx1 + pad, wy1 + pad, v -> {
+                        empty[0] = false;
+                        Raster.drawStamp(pixels, tileSize, 0, tileSize, stamp, vertexSize,
+                                (int) (Math.round((x[v] - originX) * scale) - ox - half),
+                                (int) (Math.round((y[v] - originY) * scale) - oy - half),
+                                palette[community[v] * 157 % palette.length]);
+                    });
+                    if (!empty[0])
+                        writeTile(pixels, new File(new File(levelDir, Integer.toString(tx)), ty + ".png"));
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Finds the tiles of a level reached by the stamp of a vertex or crossed by
+     * an edge. The rows of tiles are swept in order, keeping the list of the
+     * elements that span the current row, so the work and the memory are
+     * proportional to the elements and to the tiles found.
+     *
+     * @param x          The x of each vertex
+     * @param y          The y of each vertex
+     * @param edgeSource The index of the source of each edge
+     * @param edgeTarget The index of the target of each edge
+     * @param tiles      The number of tiles per side of the level
+     * @param originX    The x of the top left corner of the level
+     * @param originY    The y of the top left corner of the level
+     * @param scale      The pixels per unit of the coordinates
+     * @return The column in the high half and the row in the low half of every
+     *         tile, without duplicates
+     */
+    private long[] occupiedTiles(double[] x, double[] y, int[] edgeSource, int[] edgeTarget, int tiles,
+            double originX, double originY, double scale) {
+        int n = x.length;
+        int m = edgeSource.length;
+        int half = vertexSize / 2;
+        // pixel bounds of every element: vertices first, then edges from their first to their second end
+        long[] x0 = new long[n + m], y0 = new long[n + m], x1 = new long[n + m], y1 = new long[n + m];
+        long[] order = new long[n + m];
+        for (int i = 0; i < n + m; i++) {
+            if (i < n) {
+                x0[i] = Math.round((x[i] - originX) * scale) - half;
+                y0[i] = Math.round((y[i] - originY) * scale) - half;
+                x1[i] = x0[i] + vertexSize - 1;
+                y1[i] = y0[i] + vertexSize - 1;
+            } else {
+                int s = edgeSource[i - n], d = edgeTarget[i - n];
+                x0[i] = Math.round((x[s] - originX) * scale);
+                y0[i] = Math.round((y[s] - originY) * scale);
+                x1[i] = Math.round((x[d] - originX) * scale);
+                y1[i] = Math.round((y[d] - originY) * scale);
+            }
+            order[i] = (long) tileOf(Math.min(y0[i], y1[i]), tiles) << 32 | i;
+        }
+        Arrays.sort(order);
+
+        long[] found = new long[16];
+        int count = 0;
+        int[] active = new int[16];
+        int nActive = 0;
+        long[] spans = new long[16];
+        int next = 0;
+        for (int row = 0; row < tiles && (next < order.length || nActive > 0); row++) {
+            if (nActive == 0)
+                row = (int) (order[next] >>> 32);
+            while (next < order.length && (int) (order[next] >>> 32) == row) {
+                if (nActive == active.length)
+                    active = Arrays.copyOf(active, 2 * nActive);
+                active[nActive++] = (int) order[next++];
+            }
+            long top = (long) row * tileSize;
+            long bottom = top + tileSize - 1;
+            if (spans.length < nActive)
+                spans = new long[active.length];
+            int nSpans = 0;
+            for (int a = 0; a < nActive; a++) {
+                int i = active[a];
+                long lo, hi;
+                if (i < n || y0[i] == y1[i]) {
+                    lo = Math.min(x0[i], x1[i]);
+                    hi = Math.max(x0[i], x1[i]);
+                } else {
+                    // the columns of the segment within the rows of the tile, one pixel wider for the rounding
+                    boolean down = y0[i] < y1[i];
+                    long ax = down ? x0[i] : x1[i], ay = down ? y0[i] : y1[i];
+                    long bx = down ? x1[i] : x0[i], by = down ? y1[i] : y0[i];
+                    double slope = (double) (bx - ax) / (by - ay);
+                    double xa = ax + (Math.max(top, ay) - ay) * slope;
+                    double xb = ax + (Math.min(bottom, by) - ay) * slope;
+                    lo = Math.max(Math.min(ax, bx), (long) Math.floor(Math.min(xa, xb)) - 1);
+                    hi = Math.min(Math.max(ax, bx), (long) Math.ceil(Math.max(xa, xb)) + 1);
+                }
+                spans[nSpans++] = (long) tileOf(lo, tiles) << 32 | tileOf(hi, tiles);
+                // the element ends in this row
+                if (tileOf(Math.max(y0[i], y1[i]), tiles) == row)
+                    active[a--] = active[--nActive];
+            }
+            Arrays.sort(spans, 0, nSpans);
+            int last = -1;
+            for (int k = 0; k < nSpans; k++) {
+                int from = Math.max(last + 1, (int) (spans[k] >>> 32));
+                int to = (int) spans[k];
+                for (int col = from; col <= to; col++) {
+                    if (count == found.length)
+                        found = Arrays.copyOf(found, 2 * count);
+                    found[count++] = (long) col << 32 | row;
+                }
+                last = Math.max(last, to);
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private int tileOf(long pixel, int tiles) {
+        return (int) Math.max(0, Math.min(tiles - 1, Math.floorDiv(pixel, tileSize)));
+    }
+
+    /**
+     * Writes a tile in a png file, creating its directory if needed.
+     *
+     * @param pixels The pixels of the tile
+     * @param file   The file that will contain the tile
+     */
+    private void writeTile(int[] pixels, File file) {
+        BufferedImage img = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_3BYTE_BGR);
+        Raster.copyToBGR(pixels, img, 0, tileSize);
+        try {
+            file.getParentFile().mkdirs();
+            ImageIO.write(img, "png", file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package communitydetection.graphmanagement;
+
+import java.awt.Color;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.GraficNode;
+
+/**
+ * <p>
+ * Draws a graph of <code>GraficNode</code>, or the graph seen by a
+ * <code>DrawableView</code>, as a vector image, in SVG or in PDF, written
+ * directly to an <code>OutputStream</code> without building the document in
+ * memory.
+ * </p>
+ * <p>
+ * The picture is the same of <code>DrawGraph</code>: grey edges under vertices
+ * colored by community. Edges are grouped by community, the edges joining
+ * different communities in a group of their own, and vertices are grouped by
+ * community too, so that each group sets its style once. Coordinates are
+ * rounded to a fixed number of decimal digits to keep the output small.
+ * </p>
+ *
+ * @see DrawGraph
+ * @author Filippo Bragato
+ */
+public class VectorDrawGraph extends DrawGraph {
+
+    private static final int SEGMENTS_PER_PATH = 1000;
+
+    private static final int MAX_PRECISION = 15;
+
+    private int precision;
+    private long quantum;
+
+    /**
+     * Constructor that sets the dimension of the image that will be produce, the
+     * dimension of the vertices and the number of decimal digits of the
+     * coordinates.
+     *
+     * @param xSize      The width of the image
+     * @param ySize      The height of the image
+     * @param vertexSize The diameter of the vertex
+     * @param precision  The number of decimal digits of the coordinates, from 0
+     *                   to 15
+     * @throws IllegalArgumentException If the precision is out of range
+     */
+    public VectorDrawGraph(int xSize, int ySize, int vertexSize, int precision) {
+        super(xSize, ySize, vertexSize);
+        if (precision < 0 || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("precision must be between 0 and " + MAX_PRECISION);
+        this.precision = precision;
+        long q = 1;
+        for (int i = 0; i < precision; i++) {
+            q *= 10;
+        }
+        this.quantum = q;
+    }
+
+    /**
+     * Writes the given graph as an SVG document. The stream is flushed but not
+     * closed.
+     *
+     * @param net The net that will be represented
+     * @param out The stream receiving the document
+     * @throws IOException If the stream cannot be written
+     */
+    public void writeSvg(AbstractGraph<GraficNode, DefaultWeightedEdge> net, OutputStream out) throws IOException {
+        writeSvg(drawing(net), out);
+    }
+
+    /**
+     * Writes the graph seen by the given view as an SVG document. The edges
+     * are read from the original graph and only their ends are kept, as
+     * indices. The stream is flushed but not closed.
+     *
+     * @param view The view of the graph that will be represented
+     * @param out  The stream receiving the document
+     * @throws IOException If the stream cannot be written
+     */
+    public void writeSvg(DrawableView view, OutputStream out) throws IOException {
+        writeSvg(drawing(view), out);
+    }
+
+    private void writeSvg(Drawing drawing, OutputStream out) throws IOException {
+        Color[] color = initializeColor();
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        w.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + xSize + "\" height=\"" + ySize
+                + "\" viewBox=\"0 0 " + xSize + " " + ySize + "\">\n");
+        w.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+        w.write("<g id=\"edges\" stroke=\"" + hex(Color.LIGHT_GRAY) + "\" stroke-width=\"1\" fill=\"none\">\n");
+        for (int g = 0; g < drawing.groups; g++) {
+            if (drawing.edgeStart[g] == drawing.edgeStart[g + 1])
+                continue;
+            w.write("<g id=\"" + drawing.groupName(g) + "\">\n");
+            for (int k = drawing.edgeStart[g]; k < drawing.edgeStart[g + 1]; k++) {
+                if ((k - drawing.edgeStart[g]) % SEGMENTS_PER_PATH == 0) {
+                    if (k != drawing.edgeStart[g])
+                        w.write("\"/>\n");
+                    w.write("<path d=\"");
+                } else {
+                    w.write(' ');
+                }
+                int e = drawing.edges[k];
+                w.write('M');
+                writeNumber(w, drawing.x[drawing.edgeSource[e]]);
+                w.write(' ');
+                writeNumber(w, drawing.y[drawing.edgeSource[e]]);
+                w.write('L');
+                writeNumber(w, drawing.x[drawing.edgeTarget[e]]);
+                w.write(' ');
+                writeNumber(w, drawing.y[drawing.edgeTarget[e]]);
+            }
+            w.write("\"/>\n</g>\n");
+        }
+        w.write("</g>\n");
+
+        w.write("<g id=\"vertices\">\n");
+        for (int c = 0; c < drawing.groups - 1; c++) {
+            if (drawing.vertexStart[c] == drawing.vertexStart[c + 1])
+                continue;
+            w.write("<g id=\"" + drawing.groupName(c) + "-vertices\" fill=\""
+                    + hex(color[drawing.communityIds[c] * 157 % color.length]) + "\">\n");
+            for (int k = drawing.vertexStart[c]; k < drawing.vertexStart[c + 1]; k++) {
+                int v = drawing.vertices[k];
+                w.write("<circle cx=\"");
+                writeNumber(w, drawing.x[v]);
+                w.write("\" cy=\"");
+                writeNumber(w, drawing.y[v]);
+                w.write("\" r=\"");
+                writeNumber(w, vertexSize / 2.0);
+                w.write("\"/>\n");
+            }
+            w.write("</g>\n");
+        }
+        w.write("</g>\n</svg>\n");
+        w.flush();
+    }
+
+    /**
+     * Writes the given graph as a single page PDF document. The stream is
+     * flushed but not closed.
+     *
+     * @param net The net that will be represented
+     * @param out The stream receiving the document
+     * @throws IOException If the stream cannot be written
+     */
+    public void writePdf(AbstractGraph<GraficNode, DefaultWeightedEdge> net, OutputStream out) throws IOException {
+        writePdf(drawing(net), out);
+    }
+
+    /**
+     * Writes the graph seen by the given view as a single page PDF document.
+     * The edges are read from the original graph and only their ends are kept,
+     * as indices. The stream is flushed but not closed.
+     *
+     * @param view The view of the graph that will be represented
+     * @param out  The stream receiving the document
+     * @throws IOException If the stream cannot be written
+     */
+    public void writePdf(DrawableView view, OutputStream out) throws IOException {
+        writePdf(drawing(view), out);
+    }
+
+    private void writePdf(Drawing drawing, OutputStream out) throws IOException {
+        Color[] color = initializeColor();
+        CountingOutputStream counter = new CountingOutputStream(out);
+        Writer w = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.US_ASCII), 1 << 16);
+        long[] offsets = new long[6];
+
+        w.write("%PDF-1.4\n");
+        w.flush();
+        offsets[1] = counter.count;
+        w.write("1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        w.flush();
+        offsets[2] = counter.count;
+        w.write("2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        w.flush();
+        offsets[3] = counter.count;
+        w.write("3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + xSize + " " + ySize
+                + "] /Resources << >> /Contents 4 0 R >>\nendobj\n");
+        w.flush();
+        offsets[4] = counter.count;
+        w.write("4 0 obj\n<< /Length 5 0 R >>\nstream\n");
+        w.flush();
+        long streamStart = counter.count;
+
+        // PDF has the origin in the bottom left corner
+        w.write("1 1 1 rg 0 0 " + xSize + " " + ySize + " re f\n");
+        w.write(rgb(Color.LIGHT_GRAY) + " RG 1 w\n");
+        for (int k = 0; k < drawing.edges.length; k++) {
+            int e = drawing.edges[k];
+            writeNumber(w, drawing.x[drawing.edgeSource[e]]);
+            w.write(' ');
+            writeNumber(w, ySize - drawing.y[drawing.edgeSource[e]]);
+            w.write(" m ");
+            writeNumber(w, drawing.x[drawing.edgeTarget[e]]);
+            w.write(' ');
+            writeNumber(w, ySize - drawing.y[drawing.edgeTarget[e]]);
+            w.write(" l\n");
+            if ((k + 1) % SEGMENTS_PER_PATH == 0 || k == drawing.edges.length - 1)
+                w.write("S\n");
+        }
+        // a vertex is a segment of length zero with round caps as wide as the vertex
+        w.write("1 J " + vertexSize + " w\n");
+        for (int c = 0; c < drawing.groups - 1; c++) {
+            if (drawing.vertexStart[c] == drawing.vertexStart[c + 1])
+                continue;
+            w.write(rgb(color[drawing.communityIds[c] * 157 % color.length]) + " RG\n");
+            for (int k = drawing.vertexStart[c]; k < drawing.vertexStart[c + 1]; k++) {
+                int v = drawing.vertices[k];
+                writeNumber(w, drawing.x[v]);
+                w.write(' ');
+                writeNumber(w, ySize - drawing.y[v]);
+                w.write(" m ");
+                writeNumber(w, drawing.x[v]);
+                w.write(' ');
+                writeNumber(w, ySize - drawing.y[v]);
+                w.write(" l\n");
+                if ((k - drawing.vertexStart[c] + 1) % SEGMENTS_PER_PATH == 0
+                        || k == drawing.vertexStart[c + 1] - 1)
+                    w.write("S\n");
+            }
+        }
+        w.flush();
+        long length = counter.count - streamStart;
+        w.write("endstream\nendobj\n");
+        w.flush();
+        offsets[5] = counter.count;
+        w.write("5 0 obj\n" + length + "\nendobj\n");
+        w.flush();
+        long xref = counter.count;
+        w.write("xref\n0 6\n0000000000 65535 f \n");
+        for (int i = 1; i < offsets.length; i++) {
+            w.write(String.format("%010d 00000 n \n", offsets[i]));
+        }
+        w.write("trailer\n<< /Size 6 /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        w.flush();
+    }
+
+    /**
+     * Writes a number rounded to the precision of this object.
+     *
+     * @param w     The writer
+     * @param value The number
+     * @throws IOException If the writer cannot be written
+     */
+    private void writeNumber(Writer w, double value) throws IOException {
+        // far coordinates whose scaled value does not fit in a long take the slow path
+        if (Double.isFinite(value) && Math.abs(value) * quantum >= 1e18) {
+            BigDecimal rounded = new BigDecimal(value).setScale(precision, RoundingMode.HALF_UP);
+            w.write(rounded.stripTrailingZeros().toPlainString());
+            return;
+        }
+        long q = Math.round(value * quantum);
+        if (precision == 0) {
+            w.write(Long.toString(q));
+            return;
+        }
+        if (q < 0) {
+            w.write('-');
+            q = -q;
+        }
+        w.write(Long.toString(q / quantum));
+        long fraction = q % quantum;
+        if (fraction != 0) {
+            String digits = Long.toString(fraction + quantum).substring(1);
+            int end = digits.length();
+            while (digits.charAt(end - 1) == '0') {
+                end--;
+            }
+            w.write('.');
+            w.write(digits, 0, end);
+        }
+    }
+
+    /**
+     * Reads the positions, the communities and the ends of the edges of a
+     * graph of <code>GraficNode</code>.
+     */
+    private Drawing drawing(AbstractGraph<GraficNode, DefaultWeightedEdge> net) {
+        GraficNode[] points = net.vertexSet().toArray(new GraficNode[0]);
+        IdentityHashMap<GraficNode, Integer> index = new IdentityHashMap<>(points.length);
+        double[] xs = new double[points.length];
+        double[] ys = new double[points.length];
+        int[] communityId = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            index.put(points[i], i);
+            xs[i] = points[i].getX();
+            ys[i] = points[i].getY();
+            communityId[i] = points[i].getCommunityId();
+        }
+        DefaultWeightedEdge[] edgeArray = net.edgeSet().toArray(new DefaultWeightedEdge[0]);
+        int[] edgeSource = new int[edgeArray.length];
+        int[] edgeTarget = new int[edgeArray.length];
+        for (int e = 0; e < edgeArray.length; e++) {
+            edgeSource[e] = index.get(net.getEdgeSource(edgeArray[e]));
+            edgeTarget[e] = index.get(net.getEdgeTarget(edgeArray[e]));
+        }
+        return new Drawing(xs, ys, communityId, edgeSource, edgeTarget);
+    }
+
+    private Drawing drawing(DrawableView view) {
+        int[][] ends = FastDrawGraph.edgeEnds(view);
+        return new Drawing(view.getX(), view.getY(), view.getCommunityId(), ends[0], ends[1]);
+    }
+
+    private String hex(Color c) {
+        return String.format("#%06x", c.getRGB() & 0xFFFFFF);
+    }
+
+    private String rgb(Color c) {
+        return String.format(Locale.ROOT, "%.3f %.3f %.3f", c.getRed() / 255.0, c.getGreen() / 255.0,
+                c.getBlue() / 255.0);
+    }
+
+    /**
+     * The coordinates of the vertices on the page and the indices of the
+     * vertices and of the edges sorted by group. Group <code>c</code> contains
+     * the vertices of the <code>c</code>-th community and the edges between
+     * them, the last group the edges joining different communities.
+     */
+    private class Drawing {
+        private double[] x, y;
+        private int[] edgeSource, edgeTarget;
+        private int groups;
+        private int[] communityIds;
+        private int[] edges, edgeStart;
+        private int[] vertices, vertexStart;
+
+        public Drawing(double[] xs, double[] ys, int[] communityId, int[] edgeSource, int[] edgeTarget) {
+            int[][] coordinates = getCoordinates(xs, ys, communityId);
+            x = new double[xs.length];
+            y = new double[xs.length];
+            int[] group = new int[xs.length];
+            HashMap<Integer, Integer> groupOf = new HashMap<>();
+            for (int i = 0; i < xs.length; i++) {
+                x[i] = proportionX * (xs[i] - x_min) + 10 + vertexSize / 2.0;
+                y[i] = proportionY * (ys[i] - y_min) + 10 + vertexSize / 2.0;
+                group[i] = groupOf.computeIfAbsent(coordinates[i][2], k -> groupOf.size());
+            }
+            groups = groupOf.size() + 1;
+            communityIds = new int[groups - 1];
+            groupOf.forEach((id, g) -> communityIds[g] = id);
+
+            vertexStart = new int[groups + 1];
+            vertices = sort(group, groups, vertexStart);
+
+            this.edgeSource = edgeSource;
+            this.edgeTarget = edgeTarget;
+            int[] edgeGroup = new int[edgeSource.length];
+            for (int e = 0; e < edgeSource.length; e++) {
+                int gs = group[edgeSource[e]];
+                edgeGroup[e] = gs == group[edgeTarget[e]] ? gs : groups - 1;
+            }
+            edgeStart = new int[groups + 1];
+            edges = sort(edgeGroup, groups, edgeStart);
+        }
+
+        /**
+         * Sorts the indices of the elements by group with a counting sort.
+         */
+        private int[] sort(int[] group, int groups, int[] start) {
+            for (int i = 0; i < group.length; i++) {
+                start[group[i] + 1]++;
+            }
+            for (int g = 0; g < groups; g++) {
+                start[g + 1] += start[g];
+            }
+            int[] next = start.clone();
+            int[] sorted = new int[group.length];
+            for (int i = 0; i < group.length; i++) {
+                sorted[next[group[i]]++] = i;
+            }
+            return sorted;
+        }
+
+        public String groupName(int g) {
+            return g == groups - 1 ? "between-communities" : "community-" + communityIds[g];
+        }
+    }
+
+    /**
+     * Counts the bytes written to the underlying stream, to compute the offsets
+     * of the objects of a PDF document.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
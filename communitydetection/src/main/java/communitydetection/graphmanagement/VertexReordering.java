@@ -0,0 +1,156 @@
+package communitydetection.graphmanagement;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Strategies to renumber the vertices of a <code>CompactGraph</code> so that
+ * vertices that are close in the graph are close in memory.
+ * </p>
+ * <p>
+ * Vertices of jgrapht are identified by their references, so the order in
+ * which they are visited has nothing to do with their structure and every
+ * access to a neighbour is a jump in memory. After a renumbering the
+ * neighbours of a vertex have, mostly, indices close to its own, and the
+ * arrays indexed by vertex are read almost sequentially.
+ * </p>
+ *
+ * @see CompactGraph
+ * @author Filippo Bragato
+ */
+public enum VertexReordering {
+
+    /**
+     * Vertices sorted by decreasing degree: the hubs, which are the most
+     * accessed vertices, are packed together. Ties keep the original order.
+     */
+    DEGREE {
+        @Override
+        public int[] order(CompactGraph graph) {
+            int n = graph.getVertexCount();
+            int maxDegree = 0;
+            for (int i = 0; i < n; i++) {
+                maxDegree = Math.max(maxDegree, graph.getDegree(i));
+            }
+            // counting sort, from the largest degree
+            int[] start = new int[maxDegree + 2];
+            for (int i = 0; i < n; i++) {
+                start[maxDegree - graph.getDegree(i) + 1]++;
+            }
+            for (int d = 0; d <= maxDegree; d++) {
+                start[d + 1] += start[d];
+            }
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[start[maxDegree - graph.getDegree(i)]++] = i;
+            }
+            return order;
+        }
+    },
+
+    /**
+     * Vertices in breadth-first order, visiting the connected components in
+     * the original order: the neighbours of a vertex get consecutive indices.
+     */
+    BFS {
+        @Override
+        public int[] order(CompactGraph graph) {
+            int n = graph.getVertexCount();
+            int[] offsets = graph.getOffsets();
+            int[] targets = graph.getTargets();
+            boolean[] visited = new boolean[n];
+            int[] order = new int[n];
+            int tail = 0;
+            for (int root = 0; root < n; root++) {
+                if (visited[root])
+                    continue;
+                visited[root] = true;
+                int head = tail;
+                order[tail++] = root;
+                while (head < tail) {
+                    int u = order[head++];
+                    for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                        if (!visited[targets[k]]) {
+                            visited[targets[k]] = true;
+                            order[tail++] = targets[k];
+                        }
+                    }
+                }
+            }
+            return order;
+        }
+    },
+
+    /**
+     * Reverse Cuthill-McKee order: a breadth-first visit from a vertex of
+     * minimum degree of each component, enqueuing the neighbours by increasing
+     * degree, reversed at the end. It minimises the distance between the
+     * indices of the ends of the edges better than <code>BFS</code>, at the
+     * cost of sorting the neighbours of every vertex.
+     */
+    RCM {
+        @Override
+        public int[] order(CompactGraph graph) {
+            int n = graph.getVertexCount();
+            int[] offsets = graph.getOffsets();
+            int[] targets = graph.getTargets();
+            int[] byDegree = DEGREE.order(graph);
+            boolean[] visited = new boolean[n];
+            int[] order = new int[n];
+            long[] buffer = new long[16];
+            int tail = 0;
+            for (int r = n - 1; r >= 0; r--) {
+                int root = byDegree[r];
+                if (visited[root])
+                    continue;
+                visited[root] = true;
+                int head = tail;
+                order[tail++] = root;
+                while (head < tail) {
+                    int u = order[head++];
+                    int found = 0;
+                    for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                        int v = targets[k];
+                        if (!visited[v]) {
+                            visited[v] = true;
+                            if (found == buffer.length)
+                                buffer = Arrays.copyOf(buffer, 2 * found);
+                            buffer[found++] = (long) graph.getDegree(v) << 32 | v;
+                        }
+                    }
+                    Arrays.sort(buffer, 0, found);
+                    for (int i = 0; i < found; i++) {
+                        order[tail++] = (int) buffer[i];
+                    }
+                }
+            }
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            return order;
+        }
+    };
+
+    /**
+     * Computes the new order of the vertices of a graph.
+     *
+     * @param graph The graph to renumber
+     * @return The permutation: the vertex with new index <code>k</code> is the
+     *         vertex <code>order[k]</code> of the given graph
+     */
+    public abstract int[] order(CompactGraph graph);
+
+    /**
+     * Renumbers the vertices of a graph.
+     *
+     * @param graph The graph to renumber
+     * @return A copy of the graph with the vertices in the order of this
+     *         strategy
+     * @see CompactGraph#permute(int[])
+     */
+    public CompactGraph apply(CompactGraph graph) {
+        return graph.permute(order(graph));
+    }
+}
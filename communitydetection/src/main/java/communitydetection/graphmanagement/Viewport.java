@@ -0,0 +1,96 @@
+package communitydetection.graphmanagement;
+
+/**
+ * A rectangle of the plane in which the vertices of a drawable graph lie, the
+ * region of the layout that has to be rendered.
+ *
+ * @author Filippo Bragato
+ */
+public class Viewport {
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    /**
+     * Creates a new <code>Viewport</code> given two opposite corners.
+     *
+     * @param minX The smallest x of the rectangle
+     * @param minY The smallest y of the rectangle
+     * @param maxX The largest x of the rectangle
+     * @param maxY The largest y of the rectangle
+     */
+    public Viewport(double minX, double minY, double maxX, double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Gets the smallest x of the rectangle
+     *
+     * @return The smallest x
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Gets the smallest y of the rectangle
+     *
+     * @return The smallest y
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Gets the largest x of the rectangle
+     *
+     * @return The largest x
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Gets the largest y of the rectangle
+     *
+     * @return The largest y
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Gets the width of the rectangle
+     *
+     * @return The width
+     */
+    public double getWidth() {
+        return maxX - minX;
+    }
+
+    /**
+     * Gets the height of the rectangle
+     *
+     * @return The height
+     */
+    public double getHeight() {
+        return maxY - minY;
+    }
+
+    /**
+     * Checks whether the given rectangle intersects this one.
+     *
+     * @param minX The smallest x of the other rectangle
+     * @param minY The smallest y of the other rectangle
+     * @param maxX The largest x of the other rectangle
+     * @param maxY The largest y of the other rectangle
+     * @return <code>true</code> if the two rectangles share at least one point
+     */
+    public boolean intersects(double minX, double minY, double maxX, double maxY) {
+        return maxX >= this.minX && minX <= this.maxX && maxY >= this.minY && minY <= this.maxY;
+    }
+}
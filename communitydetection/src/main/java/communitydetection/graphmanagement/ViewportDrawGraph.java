@@ -0,0 +1,164 @@
+package communitydetection.graphmanagement;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Draws the regions of a graph requested through a <code>Viewport</code>,
+ * touching only the vertices and the edges that are visible.
+ * </p>
+ * <p>
+ * <code>prepare</code> builds, once, a <code>GridIndex</code> over the
+ * positions of the vertices and the bounding boxes of the edges; every call to
+ * <code>draw</code> then asks the index for the elements intersecting the
+ * viewport, so its cost is proportional to what is on screen. Edges shorter
+ * than a pixel are skipped, since they are hidden by their vertices.
+ * Calls to <code>draw</code> do not change the state of this object and can be
+ * made concurrently.
+ * </p>
+ *
+ * @see GridIndex
+ * @author Filippo Bragato
+ */
+public class ViewportDrawGraph extends DrawGraph {
+
+    private static final int EDGE_COLOR = Color.LIGHT_GRAY.getRGB() & 0xFFFFFF;
+    private static final int BACKGROUND_COLOR = 0xFFFFFF;
+
+    private double[] x, y;
+    private int[] communityId;
+    private int[] edgeSource, edgeTarget;
+    private GridIndex grid;
+    private int[] palette;
+    private boolean[] stamp;
+
+    /**
+     * Constructor that sets the dimension in pixels of the image that will be
+     * produce and the dimension of the vertices
+     *
+     * @param xSize      The width of the image in pixels
+     * @param ySize      The height of the image in pixels
+     * @param vertexSize The diameter of the vertex in pixels
+     */
+    public ViewportDrawGraph(int xSize, int ySize, int vertexSize) {
+        super(xSize, ySize, vertexSize);
+    }
+
+    /**
+     * Builds the spatial index of the graph seen by the given view. The
+     * positions of the view must not change until the next call to
+     * <code>prepare</code>.
+     *
+     * @param view The view of the graph that will be represented
+     */
+    public void prepare(DrawableView view) {
+        int[][] ends = FastDrawGraph.edgeEnds(view);
+        this.x = view.getX();
+        this.y = view.getY();
+        this.communityId = view.getCommunityId();
+        this.edgeSource = ends[0];
+        this.edgeTarget = ends[1];
+        this.grid = new GridIndex(x, y, edgeSource, edgeTarget);
+        Color[] color = initializeColor();
+        this.palette = new int[color.length];
+        for (int i = 0; i < color.length; i++) {
+            palette[i] = color[i].getRGB() & 0xFFFFFF;
+        }
+        this.stamp = Raster.discStamp(vertexSize);
+    }
+
+    /**
+     * Gets the smallest square viewport containing the whole graph.
+     *
+     * @return The viewport containing all the vertices
+     */
+    public Viewport getBounds() {
+        return new Viewport(grid.getMinX(), grid.getMinY(), grid.getMinX() + grid.getSide(),
+                grid.getMinY() + grid.getSide());
+    }
+
+    /**
+     * Creates an image of the region of the graph inside the given viewport. The
+     * viewport is scaled uniformly to fit the image.
+     *
+     * @param viewport The region of the layout that will be represented
+     * @return A <code>BufferedImage</code> of type <code>TYPE_3BYTE_BGR</code>
+     *         representing the region
+     * @throws IllegalArgumentException If the viewport has no width or no
+     *                                  height
+     */
+    public BufferedImage draw(Viewport viewport) {
+        if (!(viewport.getWidth() > 0) || !(viewport.getHeight() > 0))
+            throw new IllegalArgumentException("the viewport must have a positive width and height");
+        double scale = Math.min((xSize - 2 * vertexSize) / viewport.getWidth(),
+                (ySize - 2 * vertexSize) / viewport.getHeight());
+        double pad = vertexSize / scale;
+        double originX = viewport.getMinX() - pad;
+        double originY = viewport.getMinY() - pad;
+        double minX = originX - pad, minY = originY - pad;
+        double maxX = originX + xSize / scale + pad, maxY = originY + ySize / scale + pad;
+        int half = vertexSize / 2;
+
+        int[] pixels = new int[xSize * ySize];
+        Arrays.fill(pixels, BACKGROUND_COLOR);
+        grid.forEachEdge(minX, minY, maxX, maxY, e -> {
+            double[] segment = { x[edgeSource[e]], y[edgeSource[e]], x[edgeTarget[e]], y[edgeTarget[e]] };
+            if (Math.abs(segment[2] - segment[0]) * scale < 1 && Math.abs(segment[3] - segment[1]) * scale < 1)
+                return;
+            // clip before converting, the ends of a visible edge can be arbitrarily far when zoomed in
+            if (!clip(segment, minX, minY, maxX, maxY))
+                return;
+            Raster.drawLine(pixels, xSize, 0, ySize, (int) Math.round((segment[0] - originX) * scale),
+                    (int) Math.round((segment[1] - originY) * scale), (int) Math.round((segment[2] - originX) * scale),
+                    (int) Math.round((segment[3] - originY) * scale), EDGE_COLOR);
+        });
+        grid.forEachVertex(minX, minY, maxX, maxY, v -> Raster.drawStamp(pixels, xSize, 0, ySize, stamp, vertexSize,
+                (int) Math.round((x[v] - originX) * scale) - half, (int) Math.round((y[v] - originY) * scale) - half,
+                palette[communityId[v] * 157 % palette.length]));
+
+        BufferedImage img = new BufferedImage(xSize, ySize, BufferedImage.TYPE_3BYTE_BGR);
+        Raster.copyToBGR(pixels, img, 0, ySize);
+        return img;
+    }
+
+    /**
+     * Clips a segment to a rectangle with the algorithm of Liang and Barsky.
+     *
+     * @param segment The ends of the segment, x1, y1, x2 and y2, replaced by the
+     *                ends of the clipped segment
+     * @param minX    The smallest x of the rectangle
+     * @param minY    The smallest y of the rectangle
+     * @param maxX    The largest x of the rectangle
+     * @param maxY    The largest y of the rectangle
+     * @return <code>false</code> if the segment is outside the rectangle
+     */
+    private boolean clip(double[] segment, double minX, double minY, double maxX, double maxY) {
+        double dx = segment[2] - segment[0];
+        double dy = segment[3] - segment[1];
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { segment[0] - minX, maxX - segment[0], segment[1] - minY, maxY - segment[1] };
+        double t0 = 0, t1 = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0)
+                    return false;
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0)
+                    t0 = Math.max(t0, t);
+                else
+                    t1 = Math.min(t1, t);
+            }
+        }
+        if (t0 > t1)
+            return false;
+        double x1 = segment[0], y1 = segment[1];
+        segment[0] = x1 + t0 * dx;
+        segment[1] = y1 + t0 * dy;
+        segment[2] = x1 + t1 * dx;
+        segment[3] = y1 + t1 * dy;
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+package communitydetection.algorithm;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>
+ * The repulsion and the attraction of <code>ForceKernels</code> written with
+ * the Vector API, which process as many vertices at a time as the registers of
+ * the processor hold, up to 256 bits; the attraction gathers the coordinates of
+ * the neighbours of a row through its targets. This is the version of the class
+ * in the multi-release jar for Java 17 and later; the Vector API is an
+ * incubator module there, so it is used only if the JVM has been started with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ * </p>
+ * <p>
+ * The vector code is in a nested class, loaded only when the module is
+ * present. The sums are computed in a different order than in the scalar
+ * loop, so the results may differ in the last bits.
+ * </p>
+ *
+ * @see ForceKernels
+ * @author Filippo Bragato
+ */
+class VectorKernels {
+
+    /**
+     * Tells whether the methods of this class can be called. Not a constant, so
+     * that the classes using it read the value of the version actually loaded.
+     */
+    static final boolean AVAILABLE = isAvailable();
+
+    private VectorKernels() {
+    }
+
+    private static boolean isAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    static void repulsion(double[] x, double[] y, double[] dx, double[] dy, int n, double k2) {
+        Lanes.repulsion(x, y, dx, dy, n, k2);
+    }
+
+    static void attraction(int[] offsets, int[] targets, double[] weights, double[] x, double[] y, double[] dx,
+            double[] dy, int n, double k) {
+        Lanes.attraction(offsets, targets, weights, x, y, dx, dy, n, k);
+    }
+
+    private static class Lanes {
+
+        // at most 256 bits: the compiler of Java 17 crashes on gathers of 512
+        // bits, and mixing two sizes in the same loop makes both kernels slower
+        private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.vectorBitSize() > 256
+                ? DoubleVector.SPECIES_256
+                : DoubleVector.SPECIES_PREFERRED;
+
+        static void repulsion(double[] x, double[] y, double[] dx, double[] dy, int n, double k2) {
+            int bound = SPECIES.loopBound(n);
+            for (int i = 0; i < n; i++) {
+                double xi = x[i];
+                double yi = y[i];
+                DoubleVector sx = DoubleVector.zero(SPECIES);
+                DoubleVector sy = DoubleVector.zero(SPECIES);
+                int j = 0;
+                for (; j < bound; j += SPECIES.length()) {
+                    DoubleVector ddx = DoubleVector.fromArray(SPECIES, x, j).neg().add(xi);
+                    DoubleVector ddy = DoubleVector.fromArray(SPECIES, y, j).neg().add(yi);
+                    DoubleVector d2 = ddx.fma(ddx, ddy.mul(ddy)).add(ForceKernels.EPSILON);
+                    DoubleVector f = DoubleVector.broadcast(SPECIES, k2).div(d2);
+                    sx = ddx.fma(f, sx);
+                    sy = ddy.fma(f, sy);
+                }
+                double tx = sx.reduceLanes(VectorOperators.ADD);
+                double ty = sy.reduceLanes(VectorOperators.ADD);
+                for (; j < n; j++) {
+                    double ddx = xi - x[j];
+                    double ddy = yi - y[j];
+                    double f = k2 / (ddx * ddx + ddy * ddy + ForceKernels.EPSILON);
+                    tx += ddx * f;
+                    ty += ddy * f;
+                }
+                dx[i] += tx;
+                dy[i] += ty;
+            }
+        }
+
+        static void attraction(int[] offsets, int[] targets, double[] weights, double[] x, double[] y, double[] dx,
+                double[] dy, int n, double k) {
+            int lanes = SPECIES.length();
+            for (int v = 0; v < n; v++) {
+                double xv = x[v];
+                double yv = y[v];
+                int e = offsets[v];
+                int end = offsets[v + 1];
+                double tx = 0;
+                double ty = 0;
+                if (end - e >= lanes) {
+                    DoubleVector sx = DoubleVector.zero(SPECIES);
+                    DoubleVector sy = DoubleVector.zero(SPECIES);
+                    for (; e <= end - lanes; e += lanes) {
+                        DoubleVector ddx = DoubleVector.fromArray(SPECIES, x, 0, targets, e).neg().add(xv);
+                        DoubleVector ddy = DoubleVector.fromArray(SPECIES, y, 0, targets, e).neg().add(yv);
+                        DoubleVector f = ddx.fma(ddx, ddy.mul(ddy)).sqrt()
+                                .mul(DoubleVector.fromArray(SPECIES, weights, e)).div(k);
+                        sx = ddx.fma(f, sx);
+                        sy = ddy.fma(f, sy);
+                    }
+                    tx = sx.reduceLanes(VectorOperators.ADD);
+                    ty = sy.reduceLanes(VectorOperators.ADD);
+                }
+                for (; e < end; e++) {
+                    int t = targets[e];
+                    double ddx = xv - x[t];
+                    double ddy = yv - y[t];
+                    double f = weights[e] * Math.sqrt(ddx * ddx + ddy * ddy) / k;
+                    tx += ddx * f;
+                    ty += ddy * f;
+                }
+                dx[v] -= tx;
+                dy[v] -= ty;
+            }
+        }
+    }
+}
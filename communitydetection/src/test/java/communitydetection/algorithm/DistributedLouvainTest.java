@@ -0,0 +1,115 @@
+package communitydetection.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphmanagement.TestGraphCreator;
+import communitydetection.graphmanagement.TestGraphs;
+
+/**
+ * Checks that <code>DistributedLouvain</code> does not depend on how the
+ * vertices are split among the workers, and that it stops when a worker
+ * fails.
+ */
+public class DistributedLouvainTest {
+
+    private static final int CLIQUES = 20;
+    private static final int CLIQUE_SIZE = 10;
+
+    /**
+     * The cliques are numbered at random, so every shard cuts most of them;
+     * any number of workers finds a community for each clique.
+     */
+    @Test
+    public void modularityDoesNotDependOnTheWorkers() {
+        int n = CLIQUES * CLIQUE_SIZE;
+        int[] id = TestGraphs.shuffledIds(n, new Random(40));
+        CompactGraph graph = TestGraphs.ringOfCliques(CLIQUES, CLIQUE_SIZE, id);
+        DetectionResult single = new DistributedLouvain(1).detect(graph);
+        // every clique is a community: 45 / 46 - 20 * (1 / 20)^2
+        assertEquals(0.92826, single.getModularity(), 1e-5);
+        for (int nWorkers : new int[] { 1, 2, 4, 8 }) {
+            DetectionResult result = new DistributedLouvain(nWorkers).detect(graph);
+            assertTrue(result.hasConverged());
+            assertEquals(single.getModularity(), result.getModularity(), 1e-12);
+            int[] community = result.getCommunities();
+            for (int v = 0; v < n; v++) {
+                assertEquals(community[id[v / CLIQUE_SIZE * CLIQUE_SIZE]], community[id[v]]);
+                assertTrue(community[id[v]] < CLIQUES);
+            }
+        }
+    }
+
+    /**
+     * On a graph with many edges between the communities the moves through the
+     * ghosts do not cycle forever.
+     */
+    @Test
+    public void movesStopOnANoisyGraph() {
+        CompactGraph planted = new CompactGraph(new TestGraphCreator(8, 50, 8, 4).lpartition(new Random(41)));
+        CompactGraph graph = planted.permute(TestGraphs.shuffledIds(planted.getVertexCount(), new Random(41)));
+        for (int nWorkers : new int[] { 2, 4, 8 }) {
+            DistributedLouvain louvain = new DistributedLouvain(nWorkers);
+            louvain.setMaxRounds(200);
+            assertTrue(louvain.detect(graph).hasConverged());
+        }
+    }
+
+    /**
+     * A worker failing while it reads its shard makes the detection fail at
+     * once, instead of leaving the others waiting for its messages.
+     */
+    @Test(timeout = 10000, expected = IllegalStateException.class)
+    public void failingWorkerStopsTheOthers() {
+        CompactGraph graph = TestGraphs.ringOfCliques(CLIQUES, CLIQUE_SIZE,
+                TestGraphs.shuffledIds(CLIQUES * CLIQUE_SIZE, new Random(42)));
+        // the last vertex belongs to the shard of the last worker
+        int broken = graph.getVertexCount() - 1;
+        AdjacencyGraph failing = new AdjacencyGraph() {
+            @Override
+            public int getVertexCount() {
+                return graph.getVertexCount();
+            }
+
+            @Override
+            public long getEntryCount() {
+                return graph.getEntryCount();
+            }
+
+            @Override
+            public Cursor cursor() {
+                Cursor cursor = graph.cursor();
+                return new Cursor() {
+                    @Override
+                    public void moveTo(int v) {
+                        if (v == broken)
+                            throw new IllegalStateException("unreadable row");
+                        cursor.moveTo(v);
+                    }
+
+                    @Override
+                    public boolean next() {
+                        return cursor.next();
+                    }
+
+                    @Override
+                    public int getTarget() {
+                        return cursor.getTarget();
+                    }
+
+                    @Override
+                    public double getWeight() {
+                        return cursor.getWeight();
+                    }
+                };
+            }
+        };
+        new DistributedLouvain(4).detect(failing);
+    }
+}
@@ -0,0 +1,105 @@
+package communitydetection.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import communitydetection.graphmanagement.CompactGraph;
+
+/**
+ * Checks the repulsion and the attraction used by <code>ForceKernels</code>,
+ * the vector ones when the tests run with the Vector API, against the scalar
+ * loops.
+ */
+public class ForceKernelsTest {
+
+    @Test
+    public void repulsionMatchesTheScalarLoop() {
+        Random random = new Random(49);
+        // sizes around the number of lanes, to cover the tail of the vector loop
+        for (int n : new int[] { 0, 1, 2, 3, 5, 7, 8, 9, 16, 17, 31, 100, 257 }) {
+            double side = 100;
+            double k2 = side * side / Math.max(1, n);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextDouble() * side;
+                y[i] = random.nextDouble() * side;
+            }
+            if (n > 3) {
+                // two vertices in the same place
+                x[3] = x[1];
+                y[3] = y[1];
+            }
+            double[] sdx = new double[n], sdy = new double[n];
+            double[] vdx = new double[n], vdy = new double[n];
+            for (int i = 0; i < n; i++) {
+                // the kernels add to the displacement
+                sdx[i] = vdx[i] = random.nextDouble();
+                sdy[i] = vdy[i] = random.nextDouble();
+            }
+            ForceKernels.scalarRepulsion(x, y, sdx, sdy, n, k2);
+            ForceKernels.repulsion(x, y, vdx, vdy, n, k2);
+
+            if (!VectorKernels.AVAILABLE) {
+                assertArrayEquals(sdx, vdx, 0);
+                assertArrayEquals(sdy, vdy, 0);
+                continue;
+            }
+            // the vector sums are in another order, so they differ in the last bits
+            double scale = 0;
+            for (int i = 0; i < n; i++) {
+                scale = Math.max(scale, Math.hypot(sdx[i], sdy[i]));
+            }
+            for (int i = 0; i < n; i++) {
+                assertEquals(sdx[i], vdx[i], 1e-12 * scale);
+                assertEquals(sdy[i], vdy[i], 1e-12 * scale);
+            }
+        }
+    }
+
+    @Test
+    public void attractionMatchesTheScalarLoop() {
+        Random random = new Random(50);
+        int n = 60;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = random.nextDouble() * 100;
+        }
+        // rows from empty to longer than the widest vector, some with a loop
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + v % 21;
+        }
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                targets[e] = e == offsets[v] && v % 3 == 0 ? v : random.nextInt(n);
+                weights[e] = 0.5 + random.nextDouble();
+            }
+        }
+        double[] sdx = new double[n], sdy = new double[n];
+        double[] vdx = new double[n], vdy = new double[n];
+        double[] cdx = new double[n], cdy = new double[n];
+        ForceKernels.scalarAttraction(offsets, targets, weights, x, y, sdx, sdy, n, 7);
+        ForceKernels.attraction(offsets, targets, weights, x, y, vdx, vdy, n, 7);
+        // the rows read through a cursor give the same forces
+        ForceKernels.attraction(new CompactGraph(offsets, targets, weights).cursor(), x, y, cdx, cdy, n, 7);
+        assertArrayEquals(sdx, cdx, 0);
+        assertArrayEquals(sdy, cdy, 0);
+
+        double scale = 0;
+        for (int i = 0; i < n; i++) {
+            scale = Math.max(scale, Math.hypot(sdx[i], sdy[i]));
+        }
+        double tolerance = VectorKernels.AVAILABLE ? 1e-12 * scale : 0;
+        assertArrayEquals(sdx, vdx, tolerance);
+        assertArrayEquals(sdy, vdy, tolerance);
+    }
+}
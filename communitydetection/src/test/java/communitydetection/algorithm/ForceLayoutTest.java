@@ -0,0 +1,106 @@
+package communitydetection.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import communitydetection.graphmanagement.AdjacencyGraph;
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphmanagement.CompressedGraph;
+import communitydetection.graphmanagement.TestGraphCreator;
+import communitydetection.graphnodes.Node;
+import communitydetection.graphnodes.SimpleNode;
+
+/**
+ * Checks the layouts of <code>ForceLayout</code> on graphs with a planted
+ * community structure.
+ */
+public class ForceLayoutTest {
+
+    private static final double SIDE = 1000;
+
+    @Test
+    public void verticesStayInTheFrame() {
+        CompactGraph graph = new CompactGraph(new TestGraphCreator(4, 30, 8, 1).lpartition());
+        ForceLayout layout = new ForceLayout(50, SIDE, SIDE / 2);
+        layout.setSeed(51);
+        double[][] position = layout.apply(graph);
+        for (int i = 0; i < graph.getVertexCount(); i++) {
+            assertTrue(position[0][i] >= 0 && position[0][i] <= SIDE);
+            assertTrue(position[1][i] >= 0 && position[1][i] <= SIDE / 2);
+        }
+    }
+
+    /**
+     * The vertices of a community end up closer to each other than to the
+     * vertices of the other communities.
+     */
+    @Test
+    public void communitiesAreCloserInside() {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(4, 30, 10, 0.5)
+                .lpartition();
+        CompactGraph graph = new CompactGraph(network);
+        ForceLayout layout = new ForceLayout(100, SIDE, SIDE);
+        layout.setSeed(52);
+        double[][] position = layout.apply(graph);
+
+        double inside = 0;
+        double outside = 0;
+        int nInside = 0;
+        int nOutside = 0;
+        for (int i = 0; i < graph.getVertexCount(); i++) {
+            for (int j = i + 1; j < graph.getVertexCount(); j++) {
+                double d = Math.hypot(position[0][i] - position[0][j], position[1][i] - position[1][j]);
+                if (group(graph, i) == group(graph, j)) {
+                    inside += d;
+                    nInside++;
+                } else {
+                    outside += d;
+                    nOutside++;
+                }
+            }
+        }
+        assertTrue(inside / nInside < 0.75 * (outside / nOutside));
+    }
+
+    /**
+     * A <code>CompressedGraph</code> gives the layout of the rows of the
+     * <code>CompactGraph</code> it was made from, read through a cursor; the
+     * arrays may be read by the vector attraction, which sums in another
+     * order.
+     */
+    @Test
+    public void compressedGraphGivesTheSameLayout() {
+        CompactGraph graph = new CompactGraph(new TestGraphCreator(4, 30, 8, 1).lpartition());
+        AdjacencyGraph rows = new AdjacencyGraph() {
+            @Override
+            public int getVertexCount() {
+                return graph.getVertexCount();
+            }
+
+            @Override
+            public long getEntryCount() {
+                return graph.getEntryCount();
+            }
+
+            @Override
+            public Cursor cursor() {
+                return graph.cursor();
+            }
+        };
+        ForceLayout layout = new ForceLayout(50, SIDE, SIDE);
+        layout.setSeed(53);
+        double[][] expected = layout.apply(rows);
+        layout.setSeed(53);
+        double[][] found = layout.apply(new CompressedGraph(graph, CompressedGraph.WeightEncoding.DOUBLE));
+        assertArrayEquals(expected[0], found[0], 0);
+        assertArrayEquals(expected[1], found[1], 0);
+    }
+
+    private static int group(CompactGraph graph, int i) {
+        return ((SimpleNode) graph.getVertex(i)).getId() / 30;
+    }
+}
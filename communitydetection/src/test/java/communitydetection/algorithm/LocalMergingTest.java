@@ -0,0 +1,347 @@
+package communitydetection.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import communitydetection.graphmanagement.CompactGraph;
+import communitydetection.graphmanagement.CompressedGraph;
+import communitydetection.graphmanagement.GraphReduction;
+import communitydetection.graphmanagement.TestGraphCreator;
+import communitydetection.graphmanagement.TestGraphs;
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+import communitydetection.graphnodes.SimpleNode;
+
+/**
+ * Checks <code>LocalMerging</code> against the local moving phase working on
+ * the jgrapht graph of the communities, as <code>Louvain</code> did before.
+ */
+public class LocalMergingTest {
+
+    /**
+     * With the same order of visit the merges, and so the partitions and their
+     * modularity, are the same of the jgrapht version, sweep after sweep.
+     */
+    @Test
+    public void sweepsMatchTheGraphOfTheCommunities() {
+        Random rng = new Random(41);
+        for (double resolution : new double[] { 1, 0.5, 2 }) {
+            DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = TestGraphs.weightedGraph(rng, 8, 40,
+                    8, 3, 0.5, 1.5);
+            double m = Louvain.initEdgesWeight(network);
+            CompactGraph compact = new CompactGraph(network);
+            int n = compact.getVertexCount();
+
+            LocalMerging kernel = new LocalMerging(n);
+            kernel.reset(compact, resolution);
+            kernel.listCommunities(false);
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net = communityGraph(network, compact);
+            List<Community> order = new ArrayList<>(net.vertexSet());
+            order.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+
+            int sweeps = 0;
+            while (true) {
+                int merged = kernel.sweep(m);
+                assertEquals(referenceSweep(net, order, m, resolution), merged);
+                assertSamePartition(kernel, compact, net);
+                assertEquals(modularity(network, net, m, resolution), kernel.modularity(m), 1e-9);
+                if (merged == 0)
+                    break;
+                sweeps++;
+            }
+            assertTrue(sweeps > 0);
+        }
+    }
+
+    /**
+     * Merges given from outside, as the warm start does, keep the modularity of
+     * the jgrapht version.
+     */
+    @Test
+    public void mergesMatchTheGraphOfTheCommunities() {
+        Random rng = new Random(42);
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = TestGraphs.weightedGraph(rng, 8, 40, 8,
+                3, 0.5, 1.5);
+        double m = Louvain.initEdgesWeight(network);
+        CompactGraph compact = new CompactGraph(network);
+        int n = compact.getVertexCount();
+
+        LocalMerging kernel = new LocalMerging(n);
+        kernel.reset(compact, 1);
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net = communityGraph(network, compact);
+        Community[] communityOf = net.vertexSet().toArray(new Community[0]);
+        for (Community c : net.vertexSet()) {
+            communityOf[c.getId()] = c;
+        }
+        for (int i = 0; i < n / 2; i++) {
+            int source = kernel.communityOf(rng.nextInt(n));
+            int destination = kernel.communityOf(rng.nextInt(n));
+            if (source == destination)
+                continue;
+            kernel.merge(source, destination);
+            merge(net, communityOf[source], communityOf[destination]);
+        }
+        assertSamePartition(kernel, compact, net);
+        assertEquals(modularity(network, net, m, 1), kernel.modularity(m), 1e-9);
+    }
+
+    /**
+     * On a graph with a clear structure <code>Louvain</code> finds a partition
+     * at least as good as the planted one.
+     */
+    @Test
+    public void louvainFindsThePlantedPartition() {
+        // a few runs in a hundred end in a local optimum a little below the planted partition
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(4, 32, 12, 1)
+                .lpartition(new Random(43));
+        Louvain louvain = new Louvain(5);
+        louvain.setSeed(43);
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> found = louvain.apply(network);
+        double m = Louvain.initEdgesWeight(network);
+
+        int covered = 0;
+        for (Community c : found.vertexSet()) {
+            covered += c.getNodes().size();
+        }
+        assertEquals(network.vertexSet().size(), covered);
+        assertTrue(modularity(network, found, m, 1) >= modularity(network, planted(network, 4, 32), m, 1) - 0.02);
+    }
+
+    /**
+     * <code>Louvain</code> reads the rows of a <code>CompressedGraph</code>
+     * through its cursor, without copying them, and reports the modularity of
+     * the partition it returns.
+     */
+    @Test
+    public void louvainReadsACompressedGraph() {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(4, 32, 12, 1)
+                .lpartition(new Random(44));
+        double m = Louvain.initEdgesWeight(network);
+        CompactGraph compact = new CompactGraph(network);
+        Louvain louvain = new Louvain(5);
+        louvain.setSeed(44);
+        DetectionResult result = louvain.detect(new CompressedGraph(compact, CompressedGraph.WeightEncoding.DOUBLE));
+
+        LocalMerging kernel = new LocalMerging(compact.getVertexCount());
+        kernel.reset(compact, 1);
+        int[] label = result.getCommunities();
+        for (int i = 0; i < label.length; i++) {
+            kernel.merge(kernel.communityOf(i), kernel.communityOf(label[i]));
+        }
+        assertEquals(kernel.modularity(m), result.getModularity(), 1e-12);
+        assertTrue(result.getModularity() >= modularity(network, planted(network, 4, 32), m, 1) - 0.02);
+    }
+
+    /**
+     * Sweeping the graph folded by the reduction gives, in the same order of
+     * visit, the partition of the sweeps on the original graph after merging
+     * the folded vertices into their representatives, as <code>Louvain</code>
+     * did before, and its modularity.
+     */
+    @Test
+    public void foldedGraphMatchesTheMerges() {
+        for (boolean mergeTwins : new boolean[] { false, true }) {
+            for (double resolution : new double[] { 1, 2 }) {
+                CompactGraph compact = new CompactGraph(leavesAndTwins(new Random(36)));
+                double m = compact.getEntryCount() / 2.0;
+
+                Louvain louvain = new Louvain(1);
+                louvain.setReduction(true, mergeTwins);
+                louvain.setResolution(resolution);
+                louvain.setSeed(37);
+                DetectionResult result = louvain.detect(compact);
+
+                GraphReduction reduction = new GraphReduction(compact, resolution <= 1, mergeTwins);
+                // leaves stay alone with a resolution larger than 1
+                assertEquals(resolution > 1 && !mergeTwins, reduction.getFoldedCount() == 0);
+                LocalMerging kernel = new LocalMerging(compact.getVertexCount());
+                kernel.reset(compact, resolution);
+                for (int i = 0; i < compact.getVertexCount(); i++) {
+                    kernel.merge(kernel.communityOf(i), kernel.communityOf(reduction.getRepresentative(i)));
+                }
+                kernel.listCommunities(true);
+                kernel.shuffle(new Random(37));
+                while (kernel.sweep(m) > 0) {
+                }
+                int[] label = result.getCommunities();
+                for (int i = 0; i < label.length; i++) {
+                    assertEquals(kernel.communityOf(i), kernel.communityOf(label[i]));
+                    assertEquals(label[i], label[kernel.communityOf(i)]);
+                }
+                assertEquals(kernel.modularity(m), result.getModularity(), 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Creates a graph with a planted structure where a node in four has a leaf
+     * and a node in ten a twin, with unit weights so that every sum of weights
+     * is exact.
+     */
+    private static DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> leavesAndTwins(Random rng) {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(4, 32, 8, 1)
+                .lpartition(rng);
+        int id = network.vertexSet().size();
+        for (Node node : new ArrayList<>(network.vertexSet())) {
+            int i = ((SimpleNode) node).getId();
+            if (i % 4 == 0) {
+                Node leaf = new SimpleNode(id++);
+                network.addVertex(leaf);
+                network.addEdge(node, leaf);
+            }
+            if (i % 10 == 0 && network.degreeOf(node) >= 2) {
+                Node twin = new SimpleNode(id++);
+                network.addVertex(twin);
+                for (Node neighbour : Graphs.neighborListOf(network, node)) {
+                    if (neighbour != twin)
+                        network.addEdge(twin, neighbour);
+                }
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Creates the graph of the planted communities of a graph made by
+     * <code>TestGraphCreator</code>.
+     */
+    private static DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> planted(
+            AbstractGraph<Node, DefaultWeightedEdge> network, int l, int g) {
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> planted = new DefaultUndirectedWeightedGraph<>(
+                DefaultWeightedEdge.class);
+        Community[] groups = new Community[l];
+        for (Node node : network.vertexSet()) {
+            int group = ((SimpleNode) node).getId() / g;
+            if (groups[group] == null) {
+                groups[group] = new Community(node, group);
+                planted.addVertex(groups[group]);
+            } else {
+                groups[group].addNode(node);
+            }
+        }
+        return planted;
+    }
+
+    /**
+     * Creates the graph with a community for every vertex, with the index of
+     * the vertex in the compact graph as id.
+     */
+    private static DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityGraph(
+            AbstractGraph<Node, DefaultWeightedEdge> network, CompactGraph compact) {
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net = new DefaultUndirectedWeightedGraph<>(
+                DefaultWeightedEdge.class);
+        IdentityHashMap<Node, Community> communities = new IdentityHashMap<>();
+        for (int i = 0; i < compact.getVertexCount(); i++) {
+            Community c = new Community(compact.getVertex(i), i);
+            communities.put(compact.getVertex(i), c);
+            net.addVertex(c);
+        }
+        for (DefaultWeightedEdge e : network.edgeSet()) {
+            Community s = communities.get(network.getEdgeSource(e));
+            Community t = communities.get(network.getEdgeTarget(e));
+            net.setEdgeWeight(net.addEdge(s, t), network.getEdgeWeight(e));
+        }
+        return net;
+    }
+
+    /**
+     * Visits the communities in the given order, merging each one into the
+     * neighbour with the largest positive gain, as the jgrapht version did.
+     *
+     * @return The number of merges
+     */
+    private static int referenceSweep(DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net,
+            List<Community> order, double m, double resolution) {
+        List<Community> kept = new ArrayList<>();
+        for (Community c : order) {
+            Community best = null;
+            double bestGain = 0;
+            for (Community d : Graphs.neighborListOf(net, c)) {
+                double gain = net.getEdgeWeight(net.getEdge(c, d)) / m
+                        - resolution * (d.getTotalWeightedDegree() * c.getTotalWeightedDegree()) / (2 * m * m);
+                if (gain > bestGain) {
+                    best = d;
+                    bestGain = gain;
+                }
+            }
+            if (best == null)
+                kept.add(c);
+            else
+                merge(net, c, best);
+        }
+        int merged = order.size() - kept.size();
+        order.clear();
+        order.addAll(kept);
+        return merged;
+    }
+
+    /**
+     * Moves a community into another one, as the jgrapht version did.
+     */
+    private static void merge(DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net, Community source,
+            Community destination) {
+        for (Community d : Graphs.neighborListOf(net, source)) {
+            if (d == destination)
+                continue;
+            double w = net.getEdgeWeight(net.getEdge(source, d));
+            DefaultWeightedEdge e = net.getEdge(destination, d);
+            if (e == null)
+                net.setEdgeWeight(net.addEdge(destination, d), w);
+            else
+                net.setEdgeWeight(e, net.getEdgeWeight(e) + w);
+        }
+        DefaultWeightedEdge between = net.getEdge(source, destination);
+        destination.addNode(source);
+        destination.setTotalWeightedDegree(destination.getTotalWeightedDegree() + source.getTotalWeightedDegree()
+                - (between == null ? 0 : net.getEdgeWeight(between)));
+        net.removeVertex(source);
+    }
+
+    private static void assertSamePartition(LocalMerging kernel, CompactGraph compact,
+            DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> net) {
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < compact.getVertexCount(); i++) {
+            index.put(compact.getVertex(i), i);
+        }
+        int covered = 0;
+        for (Community c : net.vertexSet()) {
+            for (Node node : c.getNodes()) {
+                assertEquals(c.getId(), kernel.communityOf(index.get(node)));
+                covered++;
+            }
+        }
+        assertEquals(compact.getVertexCount(), covered);
+    }
+
+    /**
+     * The modularity of a partition computed on the jgrapht graph, with the
+     * degrees of the vertices, as the jgrapht version did.
+     */
+    private static double modularity(AbstractGraph<Node, DefaultWeightedEdge> network,
+            AbstractGraph<Community, DefaultWeightedEdge> net, double m, double resolution) {
+        double modularity = 0;
+        for (Community community : net.vertexSet()) {
+            List<Node> nodes = community.getNodes();
+            for (Node a : nodes) {
+                for (Node b : nodes) {
+                    modularity -= resolution * a.getTotalWeightedDegree() * b.getTotalWeightedDegree() / (2 * m);
+                    DefaultWeightedEdge e = network.getEdge(a, b);
+                    if (e != null)
+                        modularity += network.getEdgeWeight(e);
+                }
+            }
+        }
+        return modularity / (2 * m);
+    }
+}
@@ -0,0 +1,67 @@
+package communitydetection.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import communitydetection.graphmanagement.DiskGraph;
+import communitydetection.graphmanagement.TestGraphs;
+
+/**
+ * Checks that <code>OutOfCoreLouvain</code> finds the same communities whether
+ * the graphs of the communities are written on disk or kept in memory.
+ */
+public class OutOfCoreLouvainTest {
+
+    private static final int CLIQUES = 20;
+    private static final int CLIQUE_SIZE = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * On a ring of cliques, numbered at random so that every clique is spread
+     * over the whole file, the levels written on disk give the partition of
+     * the levels in memory: a community for each clique.
+     */
+    @Test
+    public void diskAndMemoryFindTheSameCommunities() throws Exception {
+        int n = CLIQUES * CLIQUE_SIZE;
+        int[] id = TestGraphs.shuffledIds(n, new Random(39));
+        File work = folder.newFolder("work");
+        try (DiskGraph graph = DiskGraph.build(folder.newFile("ring.graph"), n, consumer -> {
+            for (int c = 0; c < CLIQUES; c++) {
+                int first = c * CLIQUE_SIZE;
+                for (int i = 0; i < CLIQUE_SIZE; i++) {
+                    for (int j = i + 1; j < CLIQUE_SIZE; j++) {
+                        consumer.accept(id[first + i], id[first + j], 1);
+                    }
+                }
+                // the ring links the last vertex of a clique to the first of the next one
+                consumer.accept(id[first + CLIQUE_SIZE - 1], id[(first + CLIQUE_SIZE) % n], 1);
+            }
+        })) {
+            DetectionResult memory = new OutOfCoreLouvain(null, Long.MAX_VALUE).detect(graph);
+            DetectionResult disk = new OutOfCoreLouvain(work, 100).detect(graph);
+
+            assertArrayEquals(memory.getCommunities(), disk.getCommunities());
+            assertEquals(memory.getModularity(), disk.getModularity(), 1e-12);
+            assertTrue(disk.hasConverged());
+            // every clique is a community: 45 / 46 - 20 * (1 / 20)^2
+            assertEquals(0.92826, disk.getModularity(), 1e-5);
+            int[] community = disk.getCommunities();
+            for (int v = 0; v < n; v++) {
+                assertEquals(community[id[v / CLIQUE_SIZE * CLIQUE_SIZE]], community[id[v]]);
+                assertTrue(community[id[v]] < CLIQUES);
+            }
+        }
+        assertEquals(0, work.list().length);
+    }
+}
@@ -0,0 +1,122 @@
+package communitydetection.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks which partitions a <code>PartitionPublisher</code> delivers to a
+ * subscriber slower than the algorithm.
+ */
+public class PartitionPublisherTest {
+
+    @Test
+    public void slowSubscriberGetsEveryRestartAndTheLatestSweep() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PartitionPublisher publisher = new PartitionPublisher(executor);
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            publisher.consume(partial -> {
+                received.add(partial.getStage() + " " + partial.getRestart() + " " + partial.getSweep());
+                if (received.size() == 1) {
+                    blocked.countDown();
+                    await(release);
+                }
+            });
+
+            publisher.accept(partition(PartialPartition.Stage.SWEEP, 0, 1));
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            // published while the subscriber is still busy with the first one
+            for (int restart = 0; restart < 3; restart++) {
+                for (int sweep = 2; sweep <= 4; sweep++) {
+                    publisher.accept(partition(PartialPartition.Stage.SWEEP, restart, sweep));
+                }
+                publisher.accept(partition(PartialPartition.Stage.RESTART, restart, 4));
+            }
+            publisher.accept(partition(PartialPartition.Stage.SWEEP, 3, 1));
+            publisher.accept(partition(PartialPartition.Stage.SWEEP, 3, 2));
+            release.countDown();
+            publisher.close();
+
+            assertTrue(publisher.consume(partial -> received.add("late")).get(10, TimeUnit.SECONDS) == null);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            List<String> expected = new ArrayList<>();
+            expected.add("SWEEP 0 1");
+            expected.add("RESTART 0 4");
+            expected.add("RESTART 1 4");
+            expected.add("RESTART 2 4");
+            expected.add("SWEEP 3 2");
+            assertEquals(expected, received);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void requestsAreHonoured() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PartitionPublisher publisher = new PartitionPublisher(executor);
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch subscribed = new CountDownLatch(1);
+            Flow.Subscription[] subscription = new Flow.Subscription[1];
+            publisher.subscribe(new Flow.Subscriber<PartialPartition>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription[0] = s;
+                    subscribed.countDown();
+                }
+
+                @Override
+                public void onNext(PartialPartition item) {
+                    received.add(item.getRestart());
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+            for (int restart = 0; restart < 4; restart++) {
+                publisher.accept(partition(PartialPartition.Stage.RESTART, restart, 1));
+            }
+            subscription[0].request(2);
+            executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+            assertEquals(List.of(0, 1), received);
+            subscription[0].request(5);
+            executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+            assertEquals(List.of(0, 1, 2, 3), received);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PartialPartition partition(PartialPartition.Stage stage, int restart, int sweep) {
+        return new PartialPartition(stage, restart, sweep, 0, false, null, new int[0]);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package communitydetection.graphmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import communitydetection.graphnodes.Node;
+
+/**
+ * Checks that a <code>CompressedGraph</code> gives back the rows of the
+ * <code>CompactGraph</code> it was made from.
+ */
+public class CompressedGraphTest {
+
+    @Test
+    public void doublesAreExact() {
+        CompactGraph graph = weightedGraph(new Random(45));
+        assertSameRows(graph, new CompressedGraph(graph, CompressedGraph.WeightEncoding.DOUBLE), 0);
+    }
+
+    @Test
+    public void floatsAreRounded() {
+        CompactGraph graph = weightedGraph(new Random(46));
+        CompressedGraph compressed = new CompressedGraph(graph, CompressedGraph.WeightEncoding.FLOAT);
+        assertSameRows(graph, compressed, 1e-6);
+        // every weight is the nearest float
+        AdjacencyGraph.Cursor cursor = compressed.cursor();
+        for (int v = 0; v < compressed.getVertexCount(); v++) {
+            cursor.moveTo(v);
+            while (cursor.next()) {
+                assertEquals(cursor.getWeight(), (float) cursor.getWeight(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void quantisedWeightsAreWithinHalfAStep() {
+        CompactGraph graph = weightedGraph(new Random(47));
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double w : graph.getWeights()) {
+            min = Math.min(min, w);
+            max = Math.max(max, w);
+        }
+        CompressedGraph compressed = new CompressedGraph(graph, CompressedGraph.WeightEncoding.QUANTISED);
+        assertSameRows(graph, compressed, (max - min) / 255 / 2 + 1e-12);
+        assertTrue(compressed.getByteSize() < new CompressedGraph(graph, CompressedGraph.WeightEncoding.FLOAT)
+                .getByteSize());
+    }
+
+    @Test
+    public void equalWeightsAreNotStored() {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(4, 50, 10, 2)
+                .lpartition();
+        CompactGraph graph = new CompactGraph(network);
+        CompressedGraph doubles = new CompressedGraph(graph, CompressedGraph.WeightEncoding.DOUBLE);
+        CompressedGraph quantised = new CompressedGraph(graph, CompressedGraph.WeightEncoding.QUANTISED);
+        assertSameRows(graph, doubles, 0);
+        assertSameRows(graph, quantised, 0);
+        assertEquals(doubles.getByteSize(), quantised.getByteSize());
+    }
+
+    /**
+     * Loops, isolated vertices, neighbours before the vertex of the row and
+     * gaps needing several bytes.
+     */
+    @Test
+    public void unusualRowsSurvive() {
+        int n = 1 << 20;
+        int[][] edges = { { 0, 0 }, { 0, n - 1 }, { 5, 3 }, { 5, 5 }, { n - 1, 200000 }, { 300, 299 },
+                { 70000, 1 } };
+        double[] weights = { 2.5, 1, 0.125, 3, 7, 1e-3, 1e6 };
+        CompactGraph graph = fromEdges(n, edges, weights);
+        for (CompressedGraph.WeightEncoding encoding : CompressedGraph.WeightEncoding.values()) {
+            CompressedGraph compressed = new CompressedGraph(graph, encoding);
+            assertEquals(encoding, compressed.getWeightEncoding());
+            double tolerance = encoding == CompressedGraph.WeightEncoding.DOUBLE ? 0
+                    : encoding == CompressedGraph.WeightEncoding.FLOAT ? 1e6 * 1e-7 : 1e6 / 255 / 2;
+            assertSameRows(graph, compressed, tolerance);
+        }
+    }
+
+    @Test
+    public void emptyGraph() {
+        CompactGraph graph = new CompactGraph(new int[] { 0, 0, 0 }, new int[0], new double[0]);
+        CompressedGraph compressed = new CompressedGraph(graph, CompressedGraph.WeightEncoding.DOUBLE);
+        assertEquals(2, compressed.getVertexCount());
+        assertEquals(0, compressed.getEntryCount());
+        AdjacencyGraph.Cursor cursor = compressed.cursor();
+        cursor.moveTo(1);
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * A graph with a community structure, renumbered at random so that the
+     * neighbours are far from each other, and random weights.
+     */
+    private static CompactGraph weightedGraph(Random rng) {
+        CompactGraph graph = new CompactGraph(TestGraphs.weightedGraph(rng, 6, 60, 9, 3, 0.1, 10.1));
+        int[] order = new int[graph.getVertexCount()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        return graph.permute(order);
+    }
+
+    private static CompactGraph fromEdges(int n, int[][] edges, double[] weights) {
+        int[] offsets = new int[n + 1];
+        for (int[] e : edges) {
+            offsets[e[0] + 1]++;
+            if (e[0] != e[1])
+                offsets[e[1] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[offsets[n]];
+        double[] rowWeights = new double[offsets[n]];
+        for (int i = 0; i < edges.length; i++) {
+            int s = edges[i][0];
+            int t = edges[i][1];
+            targets[next[s]] = t;
+            rowWeights[next[s]++] = weights[i];
+            if (s != t) {
+                targets[next[t]] = s;
+                rowWeights[next[t]++] = weights[i];
+            }
+        }
+        return new CompactGraph(offsets, targets, rowWeights);
+    }
+
+    /**
+     * Compares the rows, sorted by neighbour, of two graphs.
+     */
+    private static void assertSameRows(CompactGraph expected, CompressedGraph actual, double tolerance) {
+        assertEquals(expected.getVertexCount(), actual.getVertexCount());
+        assertEquals(expected.getEntryCount(), actual.getEntryCount());
+        int[] offsets = expected.getOffsets();
+        int[] targets = expected.getTargets();
+        double[] weights = expected.getWeights();
+        AdjacencyGraph.Cursor cursor = actual.cursor();
+        long[] row = new long[0];
+        for (int v = 0; v < expected.getVertexCount(); v++) {
+            int degree = offsets[v + 1] - offsets[v];
+            if (row.length < degree)
+                row = new long[degree];
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                row[k - offsets[v]] = (long) targets[k] << 32 | k;
+            }
+            Arrays.sort(row, 0, degree);
+            cursor.moveTo(v);
+            for (int i = 0; i < degree; i++) {
+                assertTrue(cursor.next());
+                assertEquals((int) (row[i] >>> 32), cursor.getTarget());
+                assertEquals(weights[(int) row[i]], cursor.getWeight(), tolerance);
+            }
+            assertFalse(cursor.next());
+        }
+    }
+}
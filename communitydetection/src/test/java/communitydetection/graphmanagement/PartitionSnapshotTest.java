@@ -0,0 +1,157 @@
+package communitydetection.graphmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import communitydetection.graphnodes.Community;
+import communitydetection.graphnodes.Node;
+import communitydetection.graphnodes.SimpleNode;
+
+/**
+ * Checks a <code>PartitionSnapshot</code> against the graph of the communities
+ * built by <code>CompactGraph</code> from the same labels.
+ */
+public class PartitionSnapshotTest {
+
+    @Test
+    public void matchesTheGraphOfTheCommunities() {
+        Random rng = new Random(48);
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = weightedGraph(rng);
+        CompactGraph compact = new CompactGraph(network);
+        int n = compact.getVertexCount();
+        int[] label = new int[n];
+        for (int i = 0; i < n; i++) {
+            // the planted communities, some split in two
+            label[i] = ((SimpleNode) compact.getVertex(i)).getId() / 25 * 2 + rng.nextInt(i % 3 == 0 ? 2 : 1);
+        }
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet = compact.toCommunityGraph(label);
+        PartitionSnapshot snapshot = new PartitionSnapshot(network, communityNet, 7);
+
+        assertEquals(7, snapshot.getEpoch());
+        assertEquals(n, snapshot.getVertexCount());
+        assertEquals(communityNet.vertexSet().size(), snapshot.getCommunityCount());
+        List<Community> communities = new ArrayList<>(communityNet.vertexSet());
+        IdentityHashMap<Community, Integer> indexOf = new IdentityHashMap<>();
+        for (int c = 0; c < communities.size(); c++) {
+            indexOf.put(communities.get(c), c);
+        }
+
+        for (int c = 0; c < communities.size(); c++) {
+            Community community = communities.get(c);
+            List<Node> expected = community.getNodes();
+            assertEquals(expected.size(), snapshot.getCommunitySize(c));
+            assertEquals(identitySet(expected), identitySet(snapshot.getMembers(c)));
+            for (Node node : expected) {
+                assertEquals(c, snapshot.communityOf(node));
+            }
+            assertEquals(internalWeight(network, expected), snapshot.getInternalWeight(c), 1e-9);
+
+            List<Community> neighbours = Graphs.neighborListOf(communityNet, community);
+            assertEquals(neighbours.size(), snapshot.getNeighbourCount(c));
+            for (int i = 0; i < snapshot.getNeighbourCount(c); i++) {
+                Community neighbour = communities.get(snapshot.getNeighbour(c, i));
+                DefaultWeightedEdge link = communityNet.getEdge(community, neighbour);
+                assertTrue(link != null);
+                assertEquals(communityNet.getEdgeWeight(link), snapshot.getLinkWeight(c, i), 1e-9);
+                if (i > 0)
+                    assertTrue((float) snapshot.getLinkWeight(c, i - 1) >= (float) snapshot.getLinkWeight(c, i));
+            }
+            int[] top = snapshot.topNeighbours(c, 3);
+            assertEquals(Math.min(3, neighbours.size()), top.length);
+            for (int i = 0; i < top.length; i++) {
+                assertEquals(snapshot.getNeighbour(c, i), top[i]);
+            }
+        }
+
+        // the labels read back from the snapshot give the same partition
+        int[] back = new int[n];
+        for (int i = 0; i < n; i++) {
+            back[i] = snapshot.communityOf(compact.getVertex(i));
+        }
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> again = compact.toCommunityGraph(back);
+        assertEquals(communityNet.vertexSet().size(), again.vertexSet().size());
+        assertEquals(communityNet.edgeSet().size(), again.edgeSet().size());
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < Math.min(n, i + 40); j++) {
+                assertEquals(label[i] == label[j], back[i] == back[j]);
+            }
+        }
+    }
+
+    @Test
+    public void missingNodesAreAlone() {
+        Random rng = new Random(49);
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = weightedGraph(rng);
+        CompactGraph compact = new CompactGraph(network);
+        int[] label = new int[compact.getVertexCount()];
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> communityNet = compact.toCommunityGraph(label);
+        Community all = communityNet.vertexSet().iterator().next();
+        DefaultUndirectedWeightedGraph<Community, DefaultWeightedEdge> partial = new DefaultUndirectedWeightedGraph<>(
+                DefaultWeightedEdge.class);
+        Community some = new Community(all.getNodes().get(0), 0);
+        for (Node node : all.getNodes().subList(1, 10)) {
+            some.addNode(node);
+        }
+        partial.addVertex(some);
+
+        PartitionSnapshot snapshot = new PartitionSnapshot(network, partial, 0);
+        assertEquals(compact.getVertexCount() - 9, snapshot.getCommunityCount());
+        assertEquals(10, snapshot.getCommunitySize(0));
+        for (Node node : all.getNodes().subList(10, all.getNodes().size())) {
+            int c = snapshot.communityOf(node);
+            assertTrue(c >= 1);
+            assertEquals(1, snapshot.getCommunitySize(c));
+            assertEquals(Collections.singletonList(node), snapshot.getMembers(c));
+        }
+        assertEquals(-1, snapshot.communityOf(new SimpleNode(-1)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void membersAreBounded() {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = weightedGraph(new Random(50));
+        CompactGraph compact = new CompactGraph(network);
+        PartitionSnapshot snapshot = new PartitionSnapshot(network,
+                compact.toCommunityGraph(new int[compact.getVertexCount()]), 0);
+        snapshot.getMembers(0).get(compact.getVertexCount());
+    }
+
+    /**
+     * A graph with a community structure, random weights and a loop.
+     */
+    private static DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> weightedGraph(Random rng) {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = TestGraphs.weightedGraph(rng, 6, 25, 6,
+                2, 0.5, 1.5);
+        Node first = network.vertexSet().iterator().next();
+        network.setEdgeWeight(network.addEdge(first, first), 0.5 + rng.nextDouble());
+        return network;
+    }
+
+    private static double internalWeight(DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network,
+            List<Node> members) {
+        Set<Node> inside = identitySet(members);
+        double weight = 0;
+        for (DefaultWeightedEdge e : network.edgeSet()) {
+            if (inside.contains(network.getEdgeSource(e)) && inside.contains(network.getEdgeTarget(e)))
+                weight += network.getEdgeWeight(e);
+        }
+        return weight;
+    }
+
+    private static Set<Node> identitySet(List<Node> nodes) {
+        Set<Node> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(nodes);
+        return set;
+    }
+}
@@ -0,0 +1,104 @@
+package communitydetection.graphmanagement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import communitydetection.graphnodes.Node;
+import communitydetection.graphnodes.Node2D;
+
+/**
+ * Checks the graphs of <code>ProximityGraphBuilder</code> against the ones
+ * found comparing all the pairs of points.
+ */
+public class ProximityGraphBuilderTest {
+
+    private static final int N = 3000;
+
+    /**
+     * The points lie on a few vertical lines, so most of the splits of the tree
+     * fall among points with the same x, and some points are repeated.
+     */
+    private static List<Node2D> points(Random rng) {
+        List<Node2D> points = new ArrayList<>();
+        while (points.size() < N) {
+            Node2D point = new Node2D(rng.nextInt(30), 100 * rng.nextDouble());
+            points.add(point);
+            if (rng.nextInt(20) == 0)
+                points.add(new Node2D(point.getX(), point.getY()));
+        }
+        return points;
+    }
+
+    /**
+     * The neighbours of every point are at the distances of its
+     * <code>k</code> nearest points: no nearer point is missed, whichever of
+     * the equally distant ones is taken.
+     */
+    @Test
+    public void nearestNeighboursMatchBruteForce() {
+        List<Node2D> points = points(new Random(46));
+        int k = 6;
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> graph = new ProximityGraphBuilder(points)
+                .nearestNeighbours(k);
+        assertEquals(points.size(), graph.vertexSet().size());
+
+        double[] d = new double[points.size() - 1];
+        for (Node2D a : points) {
+            int count = 0;
+            for (Node2D b : points) {
+                if (b != a)
+                    d[count++] = distance(a, b);
+            }
+            Arrays.sort(d);
+            List<Node> neighbours = Graphs.neighborListOf(graph, a);
+            assertTrue(neighbours.size() >= k);
+            double[] found = new double[neighbours.size()];
+            for (int p = 0; p < found.length; p++) {
+                found[p] = distance(a, (Node2D) neighbours.get(p));
+            }
+            Arrays.sort(found);
+            // the own k nearest come first, the others have chosen this point
+            assertArrayEquals(Arrays.copyOf(d, k), Arrays.copyOf(found, k), 0);
+        }
+    }
+
+    /**
+     * Every pair of points within the radius is an edge, and no other pair.
+     */
+    @Test
+    public void radiusMatchesBruteForce() {
+        List<Node2D> points = points(new Random(47));
+        double radius = 2.5;
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> graph = new ProximityGraphBuilder(points)
+                .radius(radius);
+
+        long expected = 0;
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = i + 1; j < points.size(); j++) {
+                if (distance(points.get(i), points.get(j)) <= radius)
+                    expected++;
+            }
+        }
+        assertTrue(expected > points.size());
+        assertEquals(expected, graph.edgeSet().size());
+        for (DefaultWeightedEdge e : graph.edgeSet()) {
+            assertTrue(distance((Node2D) graph.getEdgeSource(e), (Node2D) graph.getEdgeTarget(e)) <= radius);
+        }
+    }
+
+    private static double distance(Node2D a, Node2D b) {
+        double dx = a.getX() - b.getX(), dy = a.getY() - b.getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,106 @@
+package communitydetection.graphmanagement;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import communitydetection.graphnodes.Node;
+
+/**
+ * The graphs shared by the tests.
+ */
+public class TestGraphs {
+
+    private TestGraphs() {
+    }
+
+    /**
+     * Creates a graph with the community structure of
+     * <code>TestGraphCreator</code> and weights drawn uniformly from a range, so
+     * that two sums of weights are almost never equal.
+     *
+     * @param rng       The source of the weights
+     * @param l         The number of communities
+     * @param g         The number of nodes of each community
+     * @param zIn       The expected number of neighbours of a node in its
+     *                  community
+     * @param zOut      The expected number of neighbours of a node in the other
+     *                  communities
+     * @param minWeight The smallest weight
+     * @param maxWeight The largest weight
+     * @return The graph; the id of a node divided by <code>g</code> is its
+     *         community
+     */
+    public static DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> weightedGraph(Random rng, int l, int g,
+            double zIn, double zOut, double minWeight, double maxWeight) {
+        DefaultUndirectedWeightedGraph<Node, DefaultWeightedEdge> network = new TestGraphCreator(l, g, zIn, zOut)
+                .lpartition();
+        for (DefaultWeightedEdge e : network.edgeSet()) {
+            network.setEdgeWeight(e, minWeight + (maxWeight - minWeight) * rng.nextDouble());
+        }
+        return network;
+    }
+
+    /**
+     * Creates a ring of cliques joined by single edges of weight 1: the last
+     * vertex of each clique is linked to the first vertex of the next one.
+     *
+     * @param cliques The number of cliques
+     * @param size    The number of vertices of each clique
+     * @param id      The index in the graph of every vertex, where the vertices
+     *                of a clique are consecutive; a permutation of the
+     *                indices from 0 to <code>cliques * size - 1</code>
+     * @return The graph
+     */
+    public static CompactGraph ringOfCliques(int cliques, int size, int[] id) {
+        int n = cliques * size;
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            // the clique and, for its first and last vertex, the ring
+            offsets[id[v] + 1] = size - 1 + (v % size == 0 || v % size == size - 1 ? 1 : 0);
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int v = 0; v < n; v++) {
+            int first = v / size * size;
+            for (int u = first; u < first + size; u++) {
+                if (u != v)
+                    targets[next[id[v]]++] = id[u];
+            }
+            if (v % size == size - 1)
+                targets[next[id[v]]++] = id[(v + 1) % n];
+            if (v % size == 0)
+                targets[next[id[v]]++] = id[(v - 1 + n) % n];
+        }
+        Arrays.fill(weights, 1);
+        return new CompactGraph(offsets, targets, weights);
+    }
+
+    /**
+     * Creates a random permutation of the indices from 0 to
+     * <code>n - 1</code>.
+     *
+     * @param n   The number of indices
+     * @param rng The source of randomness
+     * @return The permutation
+     */
+    public static int[] shuffledIds(int n, Random rng) {
+        int[] id = new int[n];
+        for (int i = 0; i < n; i++) {
+            id[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int t = id[i];
+            id[i] = id[j];
+            id[j] = t;
+        }
+        return id;
+    }
+}